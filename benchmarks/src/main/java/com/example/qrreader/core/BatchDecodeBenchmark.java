@@ -0,0 +1,84 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.DecoderResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks decoding an archive batch of sampled codes of one version and error correction
+ * level, one code at a time and through {@link ScQRDecoder#tryDecodeAll}, which checks the
+ * syndromes of all blocks together and only error corrects the damaged ones. One code in ten
+ * has a module flipped in each of a few columns, as smudges on a print would, and the batch is
+ * checked to decode to the fixture's payload either way before it is measured.
+ *
+ * Run it for the versions of interest, e.g. -p version=5,15,27 -p ecLevel=M -p mode=BYTE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchDecodeBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final ScQRDecoder decoder = new ScQRDecoder();
+
+    private int[] keyArr;
+    private List<BitMatrix> codes;
+
+    @Setup(Level.Trial)
+    public void setUp(ScrambledFixture fixture) {
+        keyArr = fixture.keyArr;
+        codes = new ArrayList<>(BATCH_SIZE);
+        int dimension = fixture.sampled.getHeight();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            BitMatrix code = fixture.sampled.clone();
+            if (i % 10 == 0) {
+                // Clear of the finder patterns and the format and version information
+                for (int x = 12; x < dimension - 12; x += 4) {
+                    code.flip(x, dimension / 2);
+                }
+            }
+            codes.add(code);
+        }
+
+        List<DecodeOutcome<DecoderResult>> outcomes = decoder.tryDecodeAll(codes, null, keyArr);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            DecodeOutcome<DecoderResult> single = decoder.tryDecode(CodeModules.of(codes.get(i)), null, keyArr);
+            if (!outcomes.get(i).isSuccess() || !single.isSuccess()
+                    || !fixture.payload.equals(outcomes.get(i).getResult().getText())
+                    || !fixture.payload.equals(single.getResult().getText())) {
+                throw new IllegalStateException("Code " + i + " of the batch does not decode to the payload");
+            }
+        }
+    }
+
+    @Benchmark
+    public void oneByOne(Blackhole blackhole) {
+        for (BitMatrix code : codes) {
+            blackhole.consume(decoder.tryDecode(CodeModules.of(code), null, keyArr));
+        }
+    }
+
+    @Benchmark
+    public List<DecodeOutcome<DecoderResult>> batch() {
+        return decoder.tryDecodeAll(codes, null, keyArr);
+    }
+}
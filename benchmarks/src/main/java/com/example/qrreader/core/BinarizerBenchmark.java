@@ -0,0 +1,73 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the hybrid binarizer against {@link ParallelHybridBinarizer} on document scans of
+ * 2 to 48 megapixels, on the common fork-join pool. The luminance is a seeded page of dark
+ * marks on paper with some sensor noise, and the parallel binarizer is checked to give exactly
+ * the black matrix of the hybrid one before it is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class BinarizerBenchmark {
+
+    @Param({"1600x1200", "5472x3648", "8000x6000"})
+    public String size;
+
+    private LuminanceSource luminance;
+
+    @Setup(Level.Trial)
+    public void setUp() throws NotFoundException {
+        int width = Integer.parseInt(size.substring(0, size.indexOf('x')));
+        int height = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+        byte[] page = new byte[width * height];
+        Random random = new Random(width);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // Marks of 12 pixels in a staggered grid, on paper which gets darker to the right
+                boolean mark = (x / 12 + y / 12) % 3 == 0;
+                int paper = 230 - 60 * x / width;
+                page[y * width + x] = (byte) Math.max(0, (mark ? 40 : paper) - random.nextInt(16));
+            }
+        }
+        luminance = new PlanarYUVLuminanceSource(page, width, height, 0, 0, width, height, false);
+
+        if (!hybrid().equals(parallelHybrid())) {
+            throw new IllegalStateException("The parallel binarizer differs from the hybrid binarizer");
+        }
+    }
+
+    @Benchmark
+    public BitMatrix hybrid() throws NotFoundException {
+        return new HybridBinarizer(luminance).getBlackMatrix();
+    }
+
+    @Benchmark
+    public BitMatrix parallelHybrid() throws NotFoundException {
+        return new ParallelHybridBinarizer(luminance).getBlackMatrix();
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.qrreader.core;
+
+import com.example.qrreader.service.DecodeMetrics;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ChecksumException;
+import com.google.zxing.FormatException;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.DecoderResult;
+import com.google.zxing.common.DetectorResult;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.common.reedsolomon.ReedSolomonException;
+import com.google.zxing.qrcode.detector.Detector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each stage of scanning a scrambled QR code on the output of the stage before it,
+ * and the whole scan end to end, both to a ZXing result and to a lean one without metadata.
+ * The end to end scan is also measured with every stage recorded in Micrometer meters, which
+ * shows the overhead of the decode metrics.
+ * Checking a sampled code against its expected payload, lazily decoding only a short prefix of
+ * it and decoding it to raw bytes are measured next to decoding the same sampled code.
+ * Reading the codewords straight off the sampled modules, with both masks removed as they are
+ * read, is measured next to unmasking the matrix and reading its codewords.
+ * Correcting blocks with too many errors for error correction alone, given which of their
+ * codewords are erased, is measured next to correcting blocks with a few errors.
+ *
+ * Stages which change their input in place work on a copy, and the copy is part of the
+ * measured time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeStageBenchmark {
+
+    private static final int PREFIX_CHARS = 16;
+
+    private final ScQRDecoder decoder = new ScQRDecoder();
+
+    private final DecodeMetrics metrics = new DecodeMetrics(new SimpleMeterRegistry());
+
+    @Benchmark
+    public BufferedImage imageDecode(ScrambledFixture fixture) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(fixture.png));
+    }
+
+    @Benchmark
+    public byte[] luminance(ScrambledFixture fixture) {
+        return new BufferedImageLuminanceSource(LuminanceConverter.toGray(fixture.image)).getMatrix();
+    }
+
+    @Benchmark
+    public BitMatrix hybridBinarizer(ScrambledFixture fixture) throws NotFoundException {
+        return new HybridBinarizer(fixture.luminance).getBlackMatrix();
+    }
+
+    @Benchmark
+    public BitMatrix globalHistogramBinarizer(ScrambledFixture fixture) throws NotFoundException {
+        return new GlobalHistogramBinarizer(fixture.luminance).getBlackMatrix();
+    }
+
+    @Benchmark
+    public DetectorResult detect(ScrambledFixture fixture) throws NotFoundException, FormatException {
+        return new Detector(fixture.blackMatrix).detect();
+    }
+
+    @Benchmark
+    public BitMatrix keyUnmask(ScrambledFixture fixture) throws FormatException {
+        BitMatrix bits = fixture.sampled.clone();
+        new BitMatrixParser(bits).unmask(fixture.keyArr);
+        return bits;
+    }
+
+    @Benchmark
+    public byte[] codewordExtraction(ScrambledFixture fixture) throws FormatException {
+        return fixture.unmaskedParser.readUnmaskedCodewords();
+    }
+
+    @Benchmark
+    public byte[] fusedCodewords(ScrambledFixture fixture) throws FormatException {
+        return SampledCodewords.read(CodeModules.of(fixture.sampled), fixture.keyArr).getCodewords();
+    }
+
+    @Benchmark
+    public void rsCorrectClean(ScrambledFixture fixture, Blackhole blackhole) throws ChecksumException {
+        correctAll(fixture.dataBlocks, blackhole);
+    }
+
+    @Benchmark
+    public void rsCorrectDamaged(ScrambledFixture fixture, Blackhole blackhole) throws ChecksumException {
+        correctAll(fixture.damagedBlocks, blackhole);
+    }
+
+    @Benchmark
+    public void rsCorrectErased(ScrambledFixture fixture, Blackhole blackhole) throws ReedSolomonException {
+        for (int b = 0; b < fixture.erasedBlocks.length; b++) {
+            DataBlock block = fixture.erasedBlocks[b];
+            byte[] blockCodewords = block.getCodewords();
+            int[] received = new int[blockCodewords.length];
+            for (int i = 0; i < received.length; i++) {
+                received[i] = blockCodewords[i] & 0xFF;
+            }
+            ErasureDecoder.decode(received, blockCodewords.length - block.getNumDataCodewords(), fixture.erasures[b]);
+            blackhole.consume(received);
+        }
+    }
+
+    @Benchmark
+    public DecoderResult bitstreamParse(ScrambledFixture fixture) throws FormatException {
+        return DecodedBitStreamParser.decode(fixture.dataBytes, fixture.qrVersion, fixture.ecLevel, null,
+                fixture.keyArr);
+    }
+
+    @Benchmark
+    public Result endToEnd(ScrambledFixture fixture) throws NotFoundException, ChecksumException, FormatException {
+        return new ScQRCodeReader().decode(new BinaryBitmap(new HybridBinarizer(fixture.luminance)), fixture.keyArr);
+    }
+
+    @Benchmark
+    public Result endToEndObserved(ScrambledFixture fixture)
+            throws NotFoundException, ChecksumException, FormatException {
+        return new ScQRCodeReader(true, metrics).decode(new BinaryBitmap(new HybridBinarizer(fixture.luminance)),
+                fixture.keyArr);
+    }
+
+    @Benchmark
+    public ScQRResult endToEndLean(ScrambledFixture fixture) {
+        return new ScQRCodeReader().tryDecode(new BinaryBitmap(new HybridBinarizer(fixture.luminance)), null,
+                fixture.keyArr, Set.of(), Long.MAX_VALUE).getResult();
+    }
+
+    @Benchmark
+    public VerifyResult verify(ScrambledFixture fixture) throws FormatException {
+        return decoder.verify(fixture.sampled.clone(), fixture.payload, null, fixture.keyArr);
+    }
+
+    @Benchmark
+    public DecoderResult decodeSampled(ScrambledFixture fixture) throws ChecksumException, FormatException {
+        return decoder.decode(fixture.sampled.clone(), fixture.keyArr);
+    }
+
+    @Benchmark
+    public DecoderResult decodeSampledFused(ScrambledFixture fixture) throws ChecksumException, FormatException {
+        return decoder.decode(CodeModules.of(fixture.sampled), null, fixture.keyArr);
+    }
+
+    @Benchmark
+    public String decodePrefix(ScrambledFixture fixture) throws ChecksumException, FormatException {
+        return decoder.decodeLazily(fixture.sampled.clone(), null, fixture.keyArr).readPrefix(PREFIX_CHARS);
+    }
+
+    @Benchmark
+    public ByteBuffer decodeBinary(ScrambledFixture fixture) throws ChecksumException, FormatException {
+        return decoder.decodeBinary(fixture.sampled.clone(), null, fixture.keyArr);
+    }
+
+    private void correctAll(DataBlock[] blocks, Blackhole blackhole) throws ChecksumException {
+        for (DataBlock block : blocks) {
+            byte[] codewordBytes = block.getCodewords().clone();
+            decoder.correctErrors(codewordBytes, block.getNumDataCodewords());
+            blackhole.consume(codewordBytes);
+        }
+    }
+}
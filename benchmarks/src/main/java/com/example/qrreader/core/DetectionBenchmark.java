@@ -0,0 +1,97 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.apache.commons.codec.binary.Hex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks scanning a photo whose code fills most of the frame, from 2 to 48 megapixels:
+ * binarized and searched at full resolution by the hybrid strategy, and located on the
+ * downsampled levels of {@link PyramidDetector}. The code is a version 10 one, turned by a few
+ * degrees so that it is not read as a synthetic image, with some sensor noise. Both ways are
+ * checked to decode it to its payload before they are measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class DetectionBenchmark {
+
+    private static final String PAYLOAD = "https://example.com/labels/0123456789?batch=pyramid";
+
+    @Param({"1600x1200", "4000x3000", "8000x6000"})
+    public String size;
+
+    private int[] keyArr;
+    private LuminanceSource luminance;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        int width = Integer.parseInt(size.substring(0, size.indexOf('x')));
+        int height = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+        keyArr = KeyUtil.hexToBinary(Hex.encodeHexString(ScrambledFixture.KEY.getBytes()));
+        BitMatrix modules = new ScQRCodeWriter(keyArr).encodeModules(PAYLOAD, ErrorCorrectionLevel.M,
+                Map.of(EncodeHintType.QR_VERSION, 10));
+        int dimension = modules.getWidth();
+
+        // The code spans 70% of the short side, turned by 4 degrees about the centre of the frame
+        double moduleSize = 0.7 * Math.min(width, height) / dimension;
+        double cos = Math.cos(Math.toRadians(4));
+        double sin = Math.sin(Math.toRadians(4));
+        byte[] photo = new byte[width * height];
+        Random random = new Random(width);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double dx = x - width / 2.0;
+                double dy = y - height / 2.0;
+                int moduleX = (int) Math.floor((cos * dx + sin * dy) / moduleSize + dimension / 2.0);
+                int moduleY = (int) Math.floor((cos * dy - sin * dx) / moduleSize + dimension / 2.0);
+                boolean dark = moduleX >= 0 && moduleX < dimension && moduleY >= 0 && moduleY < dimension
+                        && modules.get(moduleX, moduleY);
+                photo[y * width + x] = (byte) ((dark ? 50 : 210) - random.nextInt(24));
+            }
+        }
+        luminance = new PlanarYUVLuminanceSource(photo, width, height, 0, 0, width, height, false);
+
+        if (!decodesToPayload(fullResolution()) || !decodesToPayload(pyramid())) {
+            throw new IllegalStateException("The photo does not decode to its payload");
+        }
+    }
+
+    private static boolean decodesToPayload(DecodeOutcome<ScQRResult> outcome) {
+        return outcome.isSuccess() && PAYLOAD.equals(outcome.getResult().getText());
+    }
+
+    @Benchmark
+    public DecodeOutcome<ScQRResult> fullResolution() {
+        return new ScQRCodeReader().tryDecode(DecodeStrategy.HYBRID.toBitmap(luminance), null, keyArr, Set.of(),
+                Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public DecodeOutcome<ScQRResult> pyramid() {
+        return new ScQRCodeReader().tryDecodePyramid(luminance, null, keyArr, Set.of(), Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the conversion of an uploaded image to luminance: through ZXing, which reads the
+ * pixels with {@link BufferedImage#getRGB}, and through {@link LuminanceConverter}, whose kernels
+ * are also measured on their own, one pixel at a time and as the JVM runs them. The kernels use
+ * SIMD instructions only when the forks are started with the incubating Vector API:
+ *
+ * java -jar target/benchmarks.jar LuminanceBenchmark -jvmArgsAppend --add-modules=jdk.incubator.vector
+ *
+ * That every conversion gives exactly the luminance ZXing gives is checked by the tests of the
+ * application.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LuminanceBenchmark {
+
+    /**
+     * The pixel layouts which uploads decode to.
+     */
+    public enum Layout {
+        INT_RGB(BufferedImage.TYPE_INT_RGB),
+        INT_ARGB(BufferedImage.TYPE_INT_ARGB),
+        BGR(BufferedImage.TYPE_3BYTE_BGR),
+        ABGR(BufferedImage.TYPE_4BYTE_ABGR);
+
+        private final int imageType;
+
+        Layout(int imageType) {
+            this.imageType = imageType;
+        }
+    }
+
+    @Param({"INT_RGB", "INT_ARGB", "BGR", "ABGR"})
+    public Layout layout;
+
+    /* A small label photo, a phone camera preview and a full HD screenshot */
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String size;
+
+    private BufferedImage image;
+    private int pixelCount;
+    private int[] packed;
+    private byte[] interleaved;
+    private int pixelStride;
+    private byte[] luma;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int width = Integer.parseInt(size.substring(0, size.indexOf('x')));
+        int height = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+        image = new BufferedImage(width, height, layout.imageType);
+        Random random = new Random(width * 31L + layout.ordinal());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // Some fully transparent pixels, which read as white
+                int pixel = random.nextInt();
+                image.setRGB(x, y, random.nextInt(8) == 0 ? pixel & 0x00FFFFFF : pixel);
+            }
+        }
+        pixelCount = width * height;
+        if (image.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            packed = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        } else {
+            interleaved = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            pixelStride = interleaved.length / pixelCount;
+        }
+        luma = new byte[pixelCount];
+    }
+
+    @Benchmark
+    public byte[] zxing() {
+        return new BufferedImageLuminanceSource(image).getMatrix();
+    }
+
+    @Benchmark
+    public byte[] converter() {
+        return new BufferedImageLuminanceSource(LuminanceConverter.toGray(image)).getMatrix();
+    }
+
+    @Benchmark
+    public byte[] scalarKernel() {
+        boolean alpha = layout == Layout.INT_ARGB;
+        if (packed != null) {
+            LuminanceConverter.packedToLumaScalar(packed, 0, luma, 0, pixelCount, alpha);
+        } else {
+            LuminanceConverter.interleavedToLumaScalar(interleaved, 0, pixelStride, luma, 0, pixelCount);
+        }
+        return luma;
+    }
+
+    @Benchmark
+    public byte[] kernel() {
+        boolean alpha = layout == Layout.INT_ARGB;
+        if (packed != null) {
+            LumaKernel.packedToLuma(packed, 0, luma, 0, pixelCount, alpha);
+        } else {
+            LumaKernel.interleavedToLuma(interleaved, 0, pixelStride, luma, 0, pixelCount);
+        }
+        return luma;
+    }
+}
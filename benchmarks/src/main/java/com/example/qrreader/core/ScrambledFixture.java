@@ -0,0 +1,246 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.WriterException;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.detector.Detector;
+import org.apache.commons.codec.binary.Hex;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A scrambled QR code together with its intermediate form after every decode stage, so that
+ * each stage can be benchmarked on its own input.
+ *
+ * The versions stop at 27, the last whose key mask fits the 256-bit key.
+ *
+ * The fixture is generated from a seeded random payload which fills the requested version at
+ * the requested error correction level, so runs are repeatable and need no image files. The
+ * code is encoded and scrambled by {@link ScQRCodeWriter}, then rendered with a quiet zone
+ * into an RGB image and a PNG file.
+ */
+@State(Scope.Benchmark)
+public class ScrambledFixture {
+
+    /**
+     * The kinds of payload, which select the QR encoding mode.
+     */
+    public enum PayloadMode {
+        NUMERIC("0123456789"),
+        ALPHANUMERIC("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:"),
+        BYTE("abcdefghijklmnopqrstuvwxyz0123456789 .,-@");
+
+        private final String alphabet;
+
+        PayloadMode(String alphabet) {
+            this.alphabet = alphabet;
+        }
+    }
+
+    // The key shipped in application.properties
+    static final String KEY = "t6w9z$C&F)J@NcRfUjXnZr4u7x!A%D*G";
+
+    private static final int MODULE_PIXELS = 4;
+    private static final int QUIET_ZONE = 4;
+    private static final int MAX_SEEDS = 16;
+
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9", "10",
+            "11", "12", "13", "14", "15", "16", "17", "18", "19", "20",
+            "21", "22", "23", "24", "25", "26", "27"})
+    public int version;
+
+    @Param({"L", "M", "Q", "H"})
+    public ErrorCorrectionLevel ecLevel;
+
+    @Param({"NUMERIC", "ALPHANUMERIC", "BYTE"})
+    public PayloadMode mode;
+
+    int[] keyArr;
+    ScQRCodeWriter writer;
+    String payload;
+    byte[] png;
+    BufferedImage image;
+    LuminanceSource luminance;
+    BitMatrix blackMatrix;
+    BitMatrix sampled;
+    BitMatrixParser unmaskedParser;
+    Version qrVersion;
+    byte[] codewords;
+    DataBlock[] dataBlocks;
+    DataBlock[] damagedBlocks;
+    DataBlock[] erasedBlocks;
+    int[][] erasures;
+    byte[] dataBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        keyArr = KeyUtil.hexToBinary(Hex.encodeHexString(KEY.getBytes()));
+        writer = new ScQRCodeWriter(keyArr);
+        qrVersion = Version.getVersionForNumber(version);
+
+        // A few payloads fool the finder pattern search; move on to the next seed for those
+        Exception failure = null;
+        for (int seed = 0; seed < MAX_SEEDS; seed++) {
+            try {
+                build(new Random(((version * 31L + ecLevel.ordinal()) * 31 + mode.ordinal()) * 31 + seed));
+                return;
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+        throw new IllegalStateException("No decodable fixture for version " + version + ", " + ecLevel
+                + ", " + mode, failure);
+    }
+
+    private void build(Random random) throws Exception {
+        payload = fillingPayload(random);
+        image = render(encode(payload));
+        png = toPng(image);
+        luminance = new BufferedImageLuminanceSource(LuminanceConverter.toGray(image));
+        blackMatrix = new HybridBinarizer(luminance).getBlackMatrix();
+        sampled = new Detector(blackMatrix).detect().getBits();
+
+        // The parser keeps the version it read before the key mask flipped the version bits
+        unmaskedParser = new BitMatrixParser(sampled.clone());
+        unmaskedParser.unmask(keyArr);
+        codewords = unmaskedParser.readUnmaskedCodewords();
+        dataBlocks = DataBlock.getDataBlocks(codewords, qrVersion, ecLevel);
+        damagedBlocks = damage(DataBlock.getDataBlocks(codewords, qrVersion, ecLevel), random);
+        erasedBlocks = DataBlock.getDataBlocks(codewords, qrVersion, ecLevel);
+        erasures = erase(erasedBlocks, random);
+
+        int totalBytes = 0;
+        for (DataBlock dataBlock : dataBlocks) {
+            totalBytes += dataBlock.getNumDataCodewords();
+        }
+        dataBytes = new byte[totalBytes];
+        int offset = 0;
+        for (DataBlock dataBlock : dataBlocks) {
+            System.arraycopy(dataBlock.getCodewords(), 0, dataBytes, offset, dataBlock.getNumDataCodewords());
+            offset += dataBlock.getNumDataCodewords();
+        }
+
+        // Every stage must see a code the reader can actually decode
+        Result result = new ScQRCodeReader().decode(new BinaryBitmap(new HybridBinarizer(luminance)), keyArr);
+        if (!payload.equals(result.getText())) {
+            throw new IllegalStateException("Fixture decoded to the wrong payload");
+        }
+    }
+
+    /*
+     * The longest payload from the mode's alphabet which still fits the version.
+     */
+    private String fillingPayload(Random random) throws WriterException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 7089; i++) {
+            text.append(mode.alphabet.charAt(random.nextInt(mode.alphabet.length())));
+        }
+        if (mode == PayloadMode.BYTE) {
+            // Make sure the encoder does not pick a denser mode
+            text.setCharAt(0, 'a');
+        }
+        int low = 1;
+        int high = text.length();
+        while (low < high) {
+            int length = (low + high + 1) >>> 1;
+            if (fits(text.substring(0, length))) {
+                low = length;
+            } else {
+                high = length - 1;
+            }
+        }
+        return text.substring(0, low);
+    }
+
+    private boolean fits(String text) {
+        try {
+            encode(text);
+            return true;
+        } catch (WriterException e) {
+            return false;
+        }
+    }
+
+    private BitMatrix encode(String text) throws WriterException {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.QR_VERSION, version);
+        return writer.encodeModules(text, ecLevel, hints);
+    }
+
+    private static BufferedImage render(BitMatrix modules) {
+        int dimension = modules.getWidth();
+        int size = (dimension + 2 * QUIET_ZONE) * MODULE_PIXELS;
+        BufferedImage rendered = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[size];
+        for (int y = 0; y < size; y++) {
+            int moduleY = y / MODULE_PIXELS - QUIET_ZONE;
+            for (int x = 0; x < size; x++) {
+                int moduleX = x / MODULE_PIXELS - QUIET_ZONE;
+                boolean dark = moduleX >= 0 && moduleX < dimension && moduleY >= 0 && moduleY < dimension
+                        && modules.get(moduleX, moduleY);
+                row[x] = dark ? 0x000000 : 0xFFFFFF;
+            }
+            rendered.setRGB(0, y, size, 1, row, 0, size);
+        }
+        return rendered;
+    }
+
+    private static byte[] toPng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    /*
+     * Damages all but two of the error correction codewords' worth of codewords of each block, too
+     * many for error correction alone, and returns their positions as erasures
+     */
+    private static int[][] erase(DataBlock[] blocks, Random random) {
+        int[][] positions = new int[blocks.length][];
+        for (int b = 0; b < blocks.length; b++) {
+            byte[] blockCodewords = blocks[b].getCodewords();
+            int erased = blockCodewords.length - blocks[b].getNumDataCodewords() - 2;
+            positions[b] = new int[erased];
+            for (int i = 0; i < erased; i++) {
+                int position = (i * blockCodewords.length) / erased + random.nextInt(blockCodewords.length / erased);
+                blockCodewords[position] ^= (byte) (1 + random.nextInt(255));
+                positions[b][i] = position;
+            }
+        }
+        return positions;
+    }
+
+    /*
+     * Corrupts a quarter of the correctable codewords of every block, at seeded positions.
+     */
+    private static DataBlock[] damage(DataBlock[] blocks, Random random) {
+        for (DataBlock block : blocks) {
+            byte[] blockCodewords = block.getCodewords();
+            int ecCodewords = blockCodewords.length - block.getNumDataCodewords();
+            int errors = Math.max(1, ecCodewords / 8);
+            for (int i = 0; i < errors; i++) {
+                // Distinct positions, so that no error cancels another
+                int position = (i * blockCodewords.length) / errors + random.nextInt(blockCodewords.length / errors);
+                blockCodewords[position] ^= (byte) (1 + random.nextInt(255));
+            }
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from starting the application to its first successful scan, which is what
+ * a node started to scale out under load costs before it helps. Unlike the JMH benchmarks, every
+ * run starts a fresh JVM with the given command, and then uploads a scrambled label to it until
+ * the label is read.
+ *
+ * The command is anything which starts the application, and is passed a free port:
+ *
+ * java -cp target/benchmarks.jar com.example.qrreader.core.StartupBenchmark 10 \
+ *     java -XX:SharedArchiveFile=../target/qrreader-0.0.1-SNAPSHOT.jsa \
+ *     -jar ../target/qrreader-0.0.1-SNAPSHOT.jar --spring.profiles.active=startup
+ */
+public final class StartupBenchmark {
+
+    private static final String PAYLOAD = "STARTUP BENCHMARK";
+
+    private static final String BOUNDARY = "startup-benchmark-boundary";
+
+    private static final long TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    private StartupBenchmark() {
+    }
+
+    /**
+     * @param args the number of runs, followed by the command which starts the application
+     * @throws Exception if a run fails or times out
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: StartupBenchmark <runs> <command which starts the application...>");
+            System.exit(2);
+        }
+        int runs = Integer.parseInt(args[0]);
+        List<String> command = Arrays.asList(args).subList(1, args.length);
+        byte[] body = uploadBody(labelPng());
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+        long[] millis = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            millis[run] = timeToFirstScan(client, command, body);
+            System.out.printf("Run %d: first successful scan after %d ms%n", run + 1, millis[run]);
+        }
+        Arrays.sort(millis);
+        System.out.printf("Time to first successful scan over %d runs: min %d ms, median %d ms, max %d ms%n",
+                runs, millis[0], millis[runs / 2], millis[runs - 1]);
+    }
+
+    /*
+     * Starts the application and uploads the label until it is read, polling as fast as the
+     * application refuses connections.
+     */
+    private static long timeToFirstScan(HttpClient client, List<String> command, byte[] body)
+            throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> fullCommand = new ArrayList<>(command);
+        fullCommand.add("--server.port=" + port);
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/upload"))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(fullCommand)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try {
+            while (System.nanoTime() - start < TIMEOUT_NANOS) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("The application exited with " + process.exitValue());
+                }
+                try {
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() == 200 && response.body().contains("\"message\":\"" + PAYLOAD + "\"")) {
+                        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    }
+                } catch (ConnectException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(5);
+            }
+            throw new IllegalStateException(
+                    "No successful scan within " + TimeUnit.NANOSECONDS.toSeconds(TIMEOUT_NANOS) + " s");
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static byte[] labelPng() throws Exception {
+        int[] keyArr = KeyUtil.hexToBinary(Hex.encodeHexString(ScrambledFixture.KEY.getBytes()));
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        MatrixToImageWriter.writeToStream(
+                new ScQRCodeWriter(keyArr).encode(PAYLOAD, BarcodeFormat.QR_CODE, 300, 300), "PNG", png);
+        return png.toByteArray();
+    }
+
+    private static byte[] uploadBody(byte[] png) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"label.png\"\r\n"
+                + "Content-Type: image/png\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        body.write(png);
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return body.toByteArray();
+    }
+}
@@ -2,6 +2,7 @@ package com.example.qrreader;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 
 /**
  * Spring Application to generate QR Codes
@@ -11,10 +12,15 @@ public class QrreaderApplication {
 
 	/**
 	 * Main method, which starts the application on local server.
+	 * With qrreader.startup.exit set, it exits again once started, which is how the build
+	 * records the classes a startup loads for the class data sharing archive.
 	 * @param args Main method arguments
 	 */
     public static void main(String[] args) {
-        SpringApplication.run(QrreaderApplication.class, args);
+        ConfigurableApplicationContext context = SpringApplication.run(QrreaderApplication.class, args);
+        if (context.getEnvironment().getProperty("qrreader.startup.exit", Boolean.class, false)) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
 
 }
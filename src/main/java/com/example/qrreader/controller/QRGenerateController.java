@@ -0,0 +1,73 @@
+package com.example.qrreader.controller;
+
+import com.example.qrreader.service.QRGenerationService;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The controller class which accepts requests for bulk generation
+ * of scrambled QR code labels, masked with the same 256-bit key
+ * the reader uses.
+ */
+@RestController
+public class QRGenerateController {
+
+    private static final String APPLICATION_ZIP = "application/zip";
+
+    @Autowired
+    private QRGenerationService generationService;
+
+    /**
+     * Generates one PNG label per payload and streams them back as a ZIP file, in
+     * the order of the payloads.
+     *
+     * @param payloads JSON array of the label contents
+     * @param size The width and height of each label in pixels
+     * @param ecLevel The error correction level, L, M, Q or H
+     * @return The ZIP file, or 400 when the request asks for too much.
+     */
+    @PostMapping("/generate")
+    public ResponseEntity<StreamingResponseBody> generate(
+            @RequestBody List<String> payloads,
+            @RequestParam(value = "size", defaultValue = "300") int size,
+            @RequestParam(value = "ecLevel", defaultValue = "L") ErrorCorrectionLevel ecLevel) {
+        if (payloads.isEmpty() || payloads.size() > generationService.getMaxLabels()) {
+            throw new IllegalArgumentException(
+                    "Between 1 and " + generationService.getMaxLabels() + " labels can be generated at once!");
+        }
+        if (size < 1 || size > generationService.getMaxSize()) {
+            throw new IllegalArgumentException(
+                    "Label size must be between 1 and " + generationService.getMaxSize() + " pixels!");
+        }
+        StreamingResponseBody body = out -> generationService.writeZip(payloads, size, ecLevel, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, APPLICATION_ZIP)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename("labels.zip").build().toString())
+                .body(body);
+    }
+
+    /**
+     * Answers requests which ask for too much with 400 and the reason.
+     *
+     * @param e The exception describing what was wrong with the request
+     * @return The reason the request was refused.
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleBadRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Collections.singletonMap("message", e.getMessage()));
+    }
+}
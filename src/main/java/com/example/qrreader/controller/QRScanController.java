@@ -1,73 +1,269 @@
 package com.example.qrreader.controller;
 
-import com.example.qrreader.core.KeyUtil;
-import com.example.qrreader.core.ScQRCodeReader;
-import com.google.zxing.*;
-import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
-import com.google.zxing.common.HybridBinarizer;
-import org.apache.commons.codec.binary.Hex;
+import com.example.qrreader.core.VerifyResult;
+import com.example.qrreader.service.QRScanService;
+import com.example.qrreader.service.ScanRejectedException;
+import com.example.qrreader.service.ScanReport;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.env.Environment;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
+import javax.servlet.http.HttpServletRequest;
+import javax.imageio.stream.ImageInputStream;
 import java.io.IOException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * The controller class which accepts requests for QR Code
  * Reading. This class uses the 256-bit encryption key to
  * unmask secure QR codes.
+ *
+ * It is created at startup even when beans are initialized lazily, so that the
+ * first scan does not pay for setting up the scan path.
  */
+@Lazy(false)
 @RestController
 public class QRScanController {
 
     @Autowired
-    private Environment environment;
+    private QRScanService scanService;
 
     /**
      * This method is called when the QR image is uploaded by the user.
      * It scans the QR code and sends across the QR message as response.
      *
+     * Codes which carry binary data are scanned with format "binary", which answers
+     * with the raw bytes of the code as application/octet-stream, or with format
+     * "base64", which answers with the bytes base64-encoded as the message. A scan
+     * which ran in degraded mode is flagged with an X-Scan-Degraded header there.
+     * When no code can be read, the answer says why in its "reason" field.
+     *
+     * With an X-Scan-Timing: true header, the answer also says how long each stage of
+     * the scan took, which strategy decoded the code and what the image and code were:
+     * in its "timing" field, or as a Server-Timing header for format "binary".
+     *
+     * Scans in flight are limited per caller, the authenticated user or else the
+     * remote address, not per client identifier, which any caller can set.
+     *
      * @param file The QR code image
-     * @return The result of scan.
+     * @param format "text" (default), "binary" or "base64"
+     * @param clientId Optional client or tenant identifier, used to learn which
+     *                 decode strategies work best for that client's images
+     * @param timed Whether to answer with a timing breakdown of the scan
+     * @param request The request, whose caller admission control limits
+     * @return The result of scan, or 429 with a Retry-After header when the node is at capacity.
      */
     @PostMapping("/upload")
-    public ResponseEntity<?> handleFileUpload(@RequestParam("file") MultipartFile file) {
-        Map<String, String> resultMap = new HashMap<>();
+    public ResponseEntity<?> handleFileUpload(@RequestParam("file") MultipartFile file,
+                                              @RequestParam(value = "format", defaultValue = "text") String format,
+                                              @RequestHeader(value = "X-Client-Id", required = false) String clientId,
+                                              @RequestHeader(value = "X-Scan-Timing", defaultValue = "false") boolean timed,
+                                              HttpServletRequest request) {
+        Map<String, Object> resultMap = new HashMap<>();
         try {
-            String resultText = scanQR(file);
-            resultMap.put("message", resultText);
+            switch (format) {
+                case "text":
+                    scanQR(file, clientId, caller(request), timed, resultMap);
+                    break;
+                case "binary":
+                case "base64":
+                    ScanReport report = scanBinaryQR(file, clientId, caller(request), timed, resultMap);
+                    if (report == null) {
+                        break;
+                    }
+                    byte[] bytes = new byte[report.getBytes().remaining()];
+                    report.getBytes().duplicate().get(bytes);
+                    if ("binary".equals(format)) {
+                        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                                .header("X-Scan-Degraded", String.valueOf(report.isDegraded()));
+                        if (report.getTiming() != null) {
+                            response.header("Server-Timing", report.getTiming().toServerTiming());
+                        }
+                        return response.body(bytes);
+                    }
+                    resultMap.put("message", Base64.getEncoder().encodeToString(bytes));
+                    if (report.isDegraded()) {
+                        resultMap.put("degraded", "true");
+                    }
+                    break;
+                default:
+                    resultMap.put("message", "Unknown format: " + format);
+                    return ResponseEntity.badRequest().body(resultMap);
+            }
+        } catch (ScanRejectedException e) {
+            resultMap.put("message", "Too many scans, please retry later!");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(resultMap);
         } catch (Exception e) {
             resultMap.put("message", "QR code cannot be scanned!");
         }
         return ResponseEntity.ok(resultMap);
     }
 
+    /**
+     * This method is called when many QR images are uploaded at once, e.g. from an archive.
+     * The codes are located image by image and then decoded together, which costs less than
+     * uploading the images one by one when most of the codes are intact. An image in which
+     * no code is found right away is scanned like an upload of its own. Admission control turns
+     * images away one at a time, so the others are still scanned.
+     *
+     * @param files The QR code images
+     * @param clientId Optional client or tenant identifier, as for a single upload
+     * @param request The request, whose caller admission control limits
+     * @return For each image in order, its result as a single upload answers it, with a
+     *         Retry-After header if any image was turned away; 400 if there are too many images.
+     */
+    @PostMapping("/upload/batch")
+    public ResponseEntity<?> handleBatchUpload(@RequestParam("files") MultipartFile[] files,
+                                               @RequestHeader(value = "X-Client-Id", required = false) String clientId,
+                                               HttpServletRequest request) {
+        if (files.length > scanService.getMaxBatchImages()) {
+            return ResponseEntity.badRequest().body(
+                    Map.of("message", "At most " + scanService.getMaxBatchImages() + " images per batch!"));
+        }
+        List<ScanReport> reports = scanService.scanBatch(Arrays.asList(files), clientId, caller(request));
+        List<Map<String, Object>> results = new ArrayList<>(reports.size());
+        long retryAfterSeconds = -1;
+        for (ScanReport report : reports) {
+            Map<String, Object> resultMap = new HashMap<>();
+            if (report == null) {
+                resultMap.put("message", "QR code cannot be scanned!");
+            } else if (report.isRejected()) {
+                resultMap.put("message", "Too many scans, please retry later!");
+                resultMap.put("rejected", "true");
+                retryAfterSeconds = Math.max(retryAfterSeconds, report.getRetryAfterSeconds());
+            } else if (report.isSuccess()) {
+                resultMap.put("message", report.getText());
+            } else {
+                putFailure(report, resultMap);
+            }
+            if (report != null && report.isDegraded()) {
+                resultMap.put("degraded", "true");
+            }
+            results.add(resultMap);
+        }
+        if (retryAfterSeconds >= 0) {
+            return ResponseEntity.ok().header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds)).body(results);
+        }
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * This method is called when a printed label is checked against the payload it
+     * should hold. It answers whether the label holds the payload and, as a print
+     * quality measure, how many codewords differ from the expected ones.
+     *
+     * @param file The QR code image
+     * @param expected The payload the QR code should hold
+     * @param request The request, whose caller admission control limits
+     * @return The result of the check, or 429 with a Retry-After header when the node is at capacity.
+     */
+    @PostMapping("/verify")
+    public ResponseEntity<?> handleVerify(@RequestParam("file") MultipartFile file,
+                                          @RequestParam("expected") String expected,
+                                          HttpServletRequest request) {
+        Map<String, String> resultMap = new HashMap<>();
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.getInputStream())) {
+            VerifyResult result = scanService.verify(input, expected, caller(request));
+            resultMap.put("verified", String.valueOf(result.isVerified()));
+            resultMap.put("codewordErrors", String.valueOf(result.getCodewordErrors()));
+            resultMap.put("maxBlockErrors", String.valueOf(result.getMaxBlockErrors()));
+            resultMap.put("correctableErrorsPerBlock", String.valueOf(result.getCorrectableErrorsPerBlock()));
+            if (!result.isVerified() && result.getDecodedText() != null) {
+                resultMap.put("message", result.getDecodedText());
+            }
+        } catch (ScanRejectedException e) {
+            resultMap.put("message", "Too many scans, please retry later!");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(resultMap);
+        } catch (Exception e) {
+            resultMap.put("verified", "false");
+            resultMap.put("message", "QR Image cannot be scanned!");
+        }
+        return ResponseEntity.ok(resultMap);
+    }
+
     /*
-     * Scans QR code file and returns the QR payload message.
+     * Scans QR code file and puts the QR payload message into the result map. Scans which ran
+     * in degraded mode are flagged, so that the client knows a retry later may succeed.
      */
-    private String scanQR(MultipartFile file) throws IOException {
-        BufferedImage image = ImageIO.read(file.getInputStream());
-        BufferedImageLuminanceSource bufferedImageLuminanceSource = new BufferedImageLuminanceSource(image);
-        HybridBinarizer hybridBinarizer = new HybridBinarizer(bufferedImageLuminanceSource);
-        BinaryBitmap binaryBitmap = new BinaryBitmap(hybridBinarizer);
-        ScQRCodeReader reader = new ScQRCodeReader();
-        String keyStr = environment.getProperty("key");
-        String keyAsHex = Hex.encodeHexString(keyStr.getBytes());
-        int[] keyArr = KeyUtil.hexToBinary(keyAsHex);
-        try {
-            Result result = reader.decode(binaryBitmap, keyArr);
-            return result.getText();
-        } catch (NotFoundException | ChecksumException | FormatException e) {
-            return "QR Image cannot be scanned!";
+    private void scanQR(MultipartFile file, String clientId, String caller, boolean timed,
+                        Map<String, Object> resultMap) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.getInputStream())) {
+            ScanReport report = scanService.scan(input, clientId, caller, timed);
+            if (report.isSuccess()) {
+                resultMap.put("message", report.getText());
+            } else {
+                putFailure(report, resultMap);
+            }
+            if (report.isDegraded()) {
+                resultMap.put("degraded", "true");
+            }
+            putTiming(report, resultMap);
+        }
+    }
+
+    /*
+     * Scans QR code file to the raw bytes of its byte segments. If the image holds no readable
+     * code, the failure is put into the result map instead and null is returned.
+     */
+    private ScanReport scanBinaryQR(MultipartFile file, String clientId, String caller, boolean timed,
+                                    Map<String, Object> resultMap) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.getInputStream())) {
+            ScanReport report = scanService.scanBinary(input, clientId, caller, timed);
+            putTiming(report, resultMap);
+            if (report.isSuccess()) {
+                return report;
+            }
+            putFailure(report, resultMap);
+            if (report.isDegraded()) {
+                resultMap.put("degraded", "true");
+            }
+            return null;
         }
+    }
+
+    /*
+     * Who admission control counts a request against: the authenticated user if there is one,
+     * and otherwise the remote address, neither of which the caller can choose.
+     */
+    private static String caller(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal != null ? "user:" + principal.getName() : "address:" + request.getRemoteAddr();
+    }
+
+    /*
+     * Puts the message of a scan which found no readable code into the result map, and why.
+     */
+    private static void putFailure(ScanReport report, Map<String, Object> resultMap) {
+        resultMap.put("message", "QR Image cannot be scanned!");
+        resultMap.put("reason", report.getStatus().name().toLowerCase());
+    }
 
+    /*
+     * Puts the timing breakdown of a scan which asked for one into the result map.
+     */
+    private static void putTiming(ScanReport report, Map<String, Object> resultMap) {
+        if (report.getTiming() != null) {
+            resultMap.put("timing", report.getTiming().toMap());
+        }
     }
 }
\ No newline at end of file
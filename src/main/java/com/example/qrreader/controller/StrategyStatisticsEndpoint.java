@@ -0,0 +1,49 @@
+package com.example.qrreader.controller;
+
+import com.example.qrreader.core.DecodeStrategy;
+import com.example.qrreader.service.StrategyStatistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * The actuator endpoint which exposes the decode strategy statistics
+ * the scan path uses to order its attempts, at /actuator/strategies.
+ *
+ * Resetting the statistics changes how every client's images are scanned,
+ * so the endpoint is an actuator one, which is only reachable once it is
+ * exposed, and is meant for a management port closed to clients.
+ */
+@Component
+@Endpoint(id = "strategies")
+public class StrategyStatisticsEndpoint {
+
+    @Autowired
+    private StrategyStatistics strategyStatistics;
+
+    /**
+     * Returns the success rate, mean cost and number of attempts of each
+     * decode strategy, over all clients and per client.
+     *
+     * @return The strategy statistics.
+     */
+    @ReadOperation
+    public Map<String, Map<DecodeStrategy, Map<String, Object>>> statistics() {
+        return strategyStatistics.snapshot();
+    }
+
+    /**
+     * Resets the strategy statistics, so that the order of attempts is learned afresh.
+     *
+     * @param client The client whose statistics are reset, or none to reset all statistics
+     */
+    @DeleteOperation
+    public void reset(@Nullable String client) {
+        strategyStatistics.reset(client);
+    }
+}
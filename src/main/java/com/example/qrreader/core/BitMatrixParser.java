@@ -7,8 +7,8 @@ import com.google.zxing.common.BitMatrix;
  * Modified BitMatrixParser with added logic to unmask the random masking
  * applied for secure QR codes.
  *
- * The unmasking  of random masks happens in readCodewords() method just after the removal of
- * the usual fixed QR code masks.
+ * The unmasking  of random masks happens in readCodewords() method together with the removal of
+ * the usual fixed QR code masks, with one matrix of both masks from {@link KeyMask}.
  *
  * The algorithm for random unmasking mirrors random masking algorithm to flip back the masks bits.
  * Description of random mask algorithm:
@@ -36,6 +36,7 @@ final class BitMatrixParser {
   private Version parsedVersion;
   private FormatInformation parsedFormatInfo;
   private boolean mirror;
+  private BitMatrix appliedMask;
 
   /**
    * @param bitMatrix {@link BitMatrix} to parse
@@ -159,37 +160,38 @@ final class BitMatrixParser {
    * @throws FormatException if the exact number of bytes expected is not read
    */
   byte[] readCodewords(int[] keyArr) throws FormatException {
+    unmask(keyArr);
+    return readUnmaskedCodewords();
+  }
+
+  /**
+   * <p>Removes the fixed QR code data mask and then the random key mask from the bit matrix.</p>
+   *
+   * @param keyArr the 256-bit key as an array of 0s and 1s
+   * @throws FormatException if the format information cannot be read
+   */
+  void unmask(int[] keyArr) throws FormatException {
 
     FormatInformation formatInfo = readFormatInformation();
+    // The key mask flips the version information too, so read it while it is intact
     Version version = readVersion();
 
-    // Get the data mask for the format used in this QR Code. This will exclude
-    // some bits from reading as we wind through the bit matrix.
-    DataMask dataMask = DataMask.values()[formatInfo.getDataMask()];
-    int dimension = bitMatrix.getHeight();
-    dataMask.unmaskBitMatrix(bitMatrix, dimension);
+    // Both masks only depend on the version, the data mask and the key, so they are removed
+    // together with one matrix of the modules which they flip
+    appliedMask = KeyMask.forKey(keyArr).get(version, formatInfo.getDataMask());
+    bitMatrix.xor(appliedMask);
+  }
 
-    //Unmasking the random mask
-    int sum = bitMatrix.getWidth() + bitMatrix.getHeight();
-    for (int i=0;i<dimension; i++) {
-      for (int j=0;j < dimension; j++) {
-        int noOfRounds = 1;
-        if (sum <= 42) {
-          noOfRounds = 5;
-        }
-        else if (sum <= 82) {
-          noOfRounds = 3;
-        }
-        else if (sum <= 122) {
-          noOfRounds = 2;
-        }
-        for (int count=0; count<noOfRounds;count++) {
-          if (keyArr[i+j+count*sum] == 1) {
-            bitMatrix.flip(i,j);
-          }
-        }
-      }
-    }
+  /**
+   * <p>Reads the codewords off a bit matrix from which {@link #unmask(int[])} has removed the masks.</p>
+   *
+   * @return bytes encoded within the QR Code
+   * @throws FormatException if the exact number of bytes expected is not read
+   */
+  byte[] readUnmaskedCodewords() throws FormatException {
+
+    Version version = readVersion();
+    int dimension = bitMatrix.getHeight();
     BitMatrix functionPattern = version.buildFunctionPattern();
 
     boolean readingUp = true;
@@ -237,12 +239,13 @@ final class BitMatrixParser {
    * Revert the mask removal done while reading the code words. The bit matrix should revert to its original state.
    */
   void remask() {
-    if (parsedFormatInfo == null) {
-      return; // We have no format information, and have no data mask
+    if (appliedMask == null) {
+      return; // Nothing was unmasked
     }
-    DataMask dataMask = DataMask.values()[parsedFormatInfo.getDataMask()];
-    int dimension = bitMatrix.getHeight();
-    dataMask.unmaskBitMatrix(bitMatrix, dimension);
+    // The key mask depends on R + C only, so it reads the same mirrored, and must be put back
+    // before the mirrored reading removes it again
+    bitMatrix.xor(appliedMask);
+    appliedMask = null;
   }
 
   /**
@@ -0,0 +1,99 @@
+package com.example.qrreader.core;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Reads bits most significant first from a byte array, like ZXing's BitSource, but through a
+ * 64-bit window which is refilled a whole word at a time. A read of up to 32 bits is then a
+ * shift and a mask, instead of a loop over the bytes the bits straddle.
+ *
+ * @see https://github.com/zxing/zxing/blob/master/core/src/main/java/com/google/zxing/common/BitSource.java
+ */
+final class BitReader {
+
+    private static final VarHandle LONG_BIG_ENDIAN =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final byte[] bytes;
+
+    /** The next byte to load into the window. */
+    private int nextByte;
+
+    /** The next bits to read are the lowest bitsInWindow bits of the window. */
+    private long window;
+    private int bitsInWindow;
+
+    /**
+     * @param bytes bytes from which this will read bits
+     */
+    BitReader(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return number of bits that can be read successfully
+     */
+    int available() {
+        return 8 * (bytes.length - nextByte) + bitsInWindow;
+    }
+
+    /**
+     * @param numBits number of bits to read
+     * @return int representing the bits read. The bits will appear as the least-significant bits of the int
+     * @throws IllegalArgumentException if numBits isn't in [1,32] or more than is available
+     */
+    int readBits(int numBits) {
+        if (numBits < 1 || numBits > 32 || numBits > available()) {
+            throw new IllegalArgumentException(String.valueOf(numBits));
+        }
+        if (bitsInWindow < numBits) {
+            refill();
+        }
+        bitsInWindow -= numBits;
+        return (int) ((window >>> bitsInWindow) & ((1L << numBits) - 1));
+    }
+
+    /**
+     * Reads whole bytes, four at a time.
+     *
+     * @param result the array to fill with the bytes read
+     * @throws IllegalArgumentException if fewer bits are available
+     */
+    void readBytes(byte[] result) {
+        if (8L * result.length > available()) {
+            throw new IllegalArgumentException(String.valueOf(result.length));
+        }
+        int i = 0;
+        for (; i + 4 <= result.length; i += 4) {
+            int word = readBits(32);
+            result[i] = (byte) (word >>> 24);
+            result[i + 1] = (byte) (word >>> 16);
+            result[i + 2] = (byte) (word >>> 8);
+            result[i + 3] = (byte) word;
+        }
+        for (; i < result.length; i++) {
+            result[i] = (byte) readBits(8);
+        }
+    }
+
+    /*
+     * Tops the window up with as many whole bytes as fit, in a single load where the array allows.
+     */
+    private void refill() {
+        int bytesToLoad = (64 - bitsInWindow) >> 3;
+        if (nextByte + 8 <= bytes.length) {
+            long word = (long) LONG_BIG_ENDIAN.get(bytes, nextByte);
+            // A shift by 64 would be a shift by 0, so a full load replaces the window
+            window = bytesToLoad == 8 ? word : (window << (8 * bytesToLoad)) | (word >>> (64 - 8 * bytesToLoad));
+            bitsInWindow += 8 * bytesToLoad;
+            nextByte += bytesToLoad;
+        } else {
+            for (; bytesToLoad > 0 && nextByte < bytes.length; bytesToLoad--) {
+                window = (window << 8) | (bytes[nextByte++] & 0xFF);
+                bitsInWindow += 8;
+            }
+        }
+    }
+}
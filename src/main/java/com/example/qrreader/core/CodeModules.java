@@ -0,0 +1,92 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * The modules of a located code, which {@link SampledCodewords} reads in codeword order. They
+ * are either a matrix the detector sampled, or read off the image one module at a time, see
+ * {@link ModuleGrid}, in which case they may also tell how clearly each module was read.
+ */
+interface CodeModules {
+
+    /**
+     * @return the number of modules along each side of the code
+     */
+    int getDimension();
+
+    /**
+     * @param x the column of the module, from the left
+     * @param y the row of the module, from the top
+     * @return true if the module is dark, as sampled, with no mask removed
+     */
+    boolean isDark(int x, int y);
+
+    /**
+     * @return true if {@link #getConfidence(int, int)} tells how clearly each module was read
+     */
+    default boolean hasConfidence() {
+        return false;
+    }
+
+    /**
+     * @param x the column of the module, from the left
+     * @param y the row of the module, from the top
+     * @return how far the luminance of the module was from the threshold it was read against, 0 to
+     *         255; 255 if that is not known
+     */
+    default int getConfidence(int x, int y) {
+        return 255;
+    }
+
+    /**
+     * @return the modules read mirrored, as the modules of the code would be if it was printed
+     *         from behind, column for row
+     */
+    default CodeModules transposed() {
+        CodeModules modules = this;
+        return new CodeModules() {
+            @Override
+            public int getDimension() {
+                return modules.getDimension();
+            }
+
+            @Override
+            public boolean isDark(int x, int y) {
+                return modules.isDark(y, x);
+            }
+
+            @Override
+            public boolean hasConfidence() {
+                return modules.hasConfidence();
+            }
+
+            @Override
+            public int getConfidence(int x, int y) {
+                return modules.getConfidence(y, x);
+            }
+
+            @Override
+            public CodeModules transposed() {
+                return modules;
+            }
+        };
+    }
+
+    /**
+     * @param bits the sampled modules, a black bit being a dark module
+     * @return the modules of the matrix, which is read but not modified
+     */
+    static CodeModules of(BitMatrix bits) {
+        return new CodeModules() {
+            @Override
+            public int getDimension() {
+                return bits.getHeight();
+            }
+
+            @Override
+            public boolean isDark(int x, int y) {
+                return bits.get(x, y);
+            }
+        };
+    }
+}
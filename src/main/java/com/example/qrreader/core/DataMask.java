@@ -1,7 +1,5 @@
 package com.example.qrreader.core;
 
-import com.google.zxing.common.BitMatrix;
-
 /**
  * Encapsulates data masks for the data bits in a QR code.
  * @see https://github.com/zxing/zxing/blob/master/core/src/main/java/com/google/zxing/qrcode/decoder/DataMask.java
@@ -97,22 +95,10 @@ enum DataMask {
 
 
   /**
-   * <p>Implementations of this method reverse the data masking process applied to a QR Code and
-   * make its bits ready to read.</p>
-   *
-   * @param bits representation of QR Code bits
-   * @param dimension dimension of QR Code, represented by bits, being unmasked
+   * @param i the row of the module
+   * @param j the column of the module
+   * @return whether the data mask flips the module
    */
-  final void unmaskBitMatrix(BitMatrix bits, int dimension) {
-    for (int i = 0; i < dimension; i++) {
-      for (int j = 0; j < dimension; j++) {
-        if (isMasked(i, j)) {
-          bits.flip(j, i);
-        }
-      }
-    }
-  }
-
   abstract boolean isMasked(int i, int j);
 
 }
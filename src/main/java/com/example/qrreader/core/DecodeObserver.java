@@ -0,0 +1,115 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+/**
+ * Receives the time spent in each stage of a scan and what was learnt about each decoded code,
+ * for export as metrics. The core decoder has no metrics dependency of its own; the application
+ * plugs an implementation into {@link ScQRCodeReader} and {@link ScQRCodeRacer}.
+ *
+ * Callbacks arrive on the decoding thread, from many threads at once, and once per stage of
+ * every scan, so implementations must be thread-safe and cheap.
+ */
+public interface DecodeObserver {
+
+    /**
+     * An observer which ignores everything.
+     */
+    DecodeObserver NOOP = new DecodeObserver() {
+    };
+
+    /**
+     * The timed stages of a scan, in order.
+     */
+    enum Stage {
+        /** Decoding the uploaded file into pixels. */
+        IMAGE_READ,
+        /** Converting the pixels to luminance. */
+        LUMINANCE,
+        /** Thresholding the luminance to black and white. */
+        BINARIZATION,
+        /** Locating the code and sampling its modules. */
+        DETECTION,
+        /**
+         * Reading version and format information, removing the key mask and reading the codewords.
+         * Codes located on a downsampled image have their modules read off the image here, as the
+         * codewords are read.
+         */
+        UNMASK,
+        /** Reed-Solomon error correction of all blocks. */
+        ERROR_CORRECTION,
+        /** Parsing the corrected data codewords into the payload. */
+        BITSTREAM
+    }
+
+    /**
+     * Called when a stage starts. Every call is followed by {@link #stageFinished} for the same
+     * stage on the same thread, before the next stage starts.
+     *
+     * @param stage the stage
+     */
+    default void stageStarted(Stage stage) {
+    }
+
+    /**
+     * Called when a stage has finished, whether it succeeded or not.
+     *
+     * @param stage the stage
+     * @param nanos how long it took
+     */
+    default void stageFinished(Stage stage, long nanos) {
+    }
+
+    /**
+     * Called when a code was decoded.
+     *
+     * @param versionNumber the version of the code, 1 to 40
+     * @param ecLevel the error correction level of the code
+     * @param mirrored whether the code was read mirrored
+     * @param correctedErrors the number of codewords error correction had to correct
+     */
+    default void codeDecoded(int versionNumber, ErrorCorrectionLevel ecLevel, boolean mirrored, int correctedErrors) {
+    }
+
+    /**
+     * Called when a decode strategy found and decoded the code of a scan.
+     *
+     * @param strategy the strategy which succeeded
+     */
+    default void strategySucceeded(DecodeStrategy strategy) {
+    }
+
+    /**
+     * @param first the observer called first
+     * @param second the observer called second
+     * @return an observer which passes everything on to both observers
+     */
+    static DecodeObserver combine(DecodeObserver first, DecodeObserver second) {
+        return new DecodeObserver() {
+            @Override
+            public void stageStarted(Stage stage) {
+                first.stageStarted(stage);
+                second.stageStarted(stage);
+            }
+
+            @Override
+            public void stageFinished(Stage stage, long nanos) {
+                first.stageFinished(stage, nanos);
+                second.stageFinished(stage, nanos);
+            }
+
+            @Override
+            public void codeDecoded(int versionNumber, ErrorCorrectionLevel ecLevel, boolean mirrored,
+                                    int correctedErrors) {
+                first.codeDecoded(versionNumber, ecLevel, mirrored, correctedErrors);
+                second.codeDecoded(versionNumber, ecLevel, mirrored, correctedErrors);
+            }
+
+            @Override
+            public void strategySucceeded(DecodeStrategy strategy) {
+                first.strategySucceeded(strategy);
+                second.strategySucceeded(strategy);
+            }
+        };
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.ChecksumException;
+import com.google.zxing.FormatException;
+import com.google.zxing.ReaderException;
+
+/**
+ * The outcome of a decode attempt which does not throw on expected failures: either the
+ * decoded result, or why and in which stage the attempt failed.
+ *
+ * Failing to read a code is normal for photos which are blurry or hold no code at all, so
+ * callers which route or count failures can do so by status instead of catching exceptions.
+ *
+ * @param <T> the type of the decoded result
+ */
+public final class DecodeOutcome<T> {
+
+    /**
+     * Why a decode attempt failed.
+     */
+    public enum Status {
+        /** The code was decoded. */
+        OK,
+        /** No code was found in the image. */
+        NOT_FOUND,
+        /** A code was found, but its version, format information or bit stream is invalid. */
+        FORMAT,
+        /** A code was read, but some of its error correction blocks could not be corrected. */
+        CHECKSUM,
+        /** A code was read, but none of its error correction blocks could be corrected, as happens with a wrong key. */
+        WRONG_KEY,
+        /** The deadline of the attempt passed before it finished. */
+        TIMEOUT
+    }
+
+    /**
+     * The stage of decoding in which an attempt failed.
+     */
+    public enum Stage {
+        BINARIZATION,
+        DETECTION,
+        FORMAT_INFORMATION,
+        ERROR_CORRECTION,
+        BITSTREAM
+    }
+
+    private static final DecodeOutcome<?>[][] FAILURES = new DecodeOutcome<?>[Status.values().length][];
+
+    static {
+        for (Status status : Status.values()) {
+            FAILURES[status.ordinal()] = new DecodeOutcome<?>[Stage.values().length + 1];
+            if (status == Status.OK) {
+                continue;
+            }
+            for (int stage = 0; stage <= Stage.values().length; stage++) {
+                FAILURES[status.ordinal()][stage] = new DecodeOutcome<>(status,
+                        stage < Stage.values().length ? Stage.values()[stage] : null, null);
+            }
+        }
+    }
+
+    private final Status status;
+    private final Stage failedStage;
+    private final T result;
+
+    private DecodeOutcome(Status status, Stage failedStage, T result) {
+        this.status = status;
+        this.failedStage = failedStage;
+        this.result = result;
+    }
+
+    /**
+     * @param result the decoded result
+     * @return a successful outcome holding the result
+     */
+    public static <T> DecodeOutcome<T> success(T result) {
+        return new DecodeOutcome<>(Status.OK, null, result);
+    }
+
+    /**
+     * Failed outcomes carry no result, so one shared instance serves each status and stage.
+     *
+     * @param status why the attempt failed, anything but {@link Status#OK}
+     * @param failedStage the stage which failed, or null if unknown
+     * @return the failed outcome
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> DecodeOutcome<T> failure(Status status, Stage failedStage) {
+        if (status == Status.OK) {
+            throw new IllegalArgumentException("Not a failure: " + status);
+        }
+        int stage = failedStage == null ? Stage.values().length : failedStage.ordinal();
+        return (DecodeOutcome<T>) FAILURES[status.ordinal()][stage];
+    }
+
+    /**
+     * Maps a failure of one of the throwing decode methods, whose stage is unknown.
+     *
+     * @param e the exception the decode method threw
+     * @return the failed outcome
+     */
+    public static <T> DecodeOutcome<T> failure(ReaderException e) {
+        if (e instanceof ChecksumException) {
+            return failure(Status.CHECKSUM, null);
+        }
+        if (e instanceof FormatException) {
+            return failure(Status.FORMAT, null);
+        }
+        return failure(Status.NOT_FOUND, null);
+    }
+
+    /**
+     * @return true if the code was decoded
+     */
+    public boolean isSuccess() {
+        return status == Status.OK;
+    }
+
+    /**
+     * @return {@link Status#OK}, or why the attempt failed
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the stage in which the attempt failed, or null if it succeeded or the stage is unknown
+     */
+    public Stage getFailedStage() {
+        return failedStage;
+    }
+
+    /**
+     * @return the decoded result, or null if the attempt failed
+     */
+    public T getResult() {
+        return result;
+    }
+
+    /**
+     * A code which was found says more than one which was not, and of found codes, one which
+     * could be read as far as error correction says more than one whose format was invalid.
+     *
+     * @param other another failed outcome of the same image
+     * @return whichever of the two outcomes says more about why the image could not be decoded
+     */
+    public DecodeOutcome<T> moreSpecific(DecodeOutcome<T> other) {
+        return other != null && rank(other.status) > rank(status) ? other : this;
+    }
+
+    private static int rank(Status status) {
+        switch (status) {
+            case WRONG_KEY:
+                return 4;
+            case CHECKSUM:
+                return 3;
+            case FORMAT:
+                return 2;
+            case NOT_FOUND:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return failedStage == null ? status.name() : status + " in " + failedStage;
+    }
+}
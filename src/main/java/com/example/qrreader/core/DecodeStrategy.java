@@ -0,0 +1,91 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+
+/**
+ * The binarizer and orientation variants which can be tried when a QR code image
+ * does not decode on the first attempt.
+ */
+public enum DecodeStrategy {
+
+    /**
+     * Local block thresholding, the default for camera images. Very large images are
+     * thresholded in parallel, see {@link ParallelHybridBinarizer}.
+     */
+    HYBRID,
+
+    /**
+     * A single global threshold, which copes better with low-contrast prints.
+     */
+    GLOBAL_HISTOGRAM {
+        @Override
+        public Binarizer binarizer(LuminanceSource luminance) {
+            return new GlobalHistogramBinarizer(luminance);
+        }
+    },
+
+    /**
+     * Light modules on a dark background.
+     */
+    INVERTED {
+        @Override
+        public LuminanceSource luminance(LuminanceSource source) {
+            return source.invert();
+        }
+    },
+
+    /**
+     * The image turned by 90 degrees, which helps the row-wise finder pattern scan on skewed photos.
+     */
+    ROTATED_90 {
+        @Override
+        public boolean supports(LuminanceSource source) {
+            return source.isRotateSupported();
+        }
+
+        @Override
+        public LuminanceSource luminance(LuminanceSource source) {
+            return source.rotateCounterClockwise();
+        }
+    };
+
+    /**
+     * @param source the luminance of the image to decode
+     * @return true if this strategy can be applied to the given source
+     */
+    public boolean supports(LuminanceSource source) {
+        return true;
+    }
+
+    /**
+     * Creates the bitmap this strategy decodes from. Binarization itself is deferred
+     * until the bitmap's black matrix is first requested.
+     *
+     * @param source the luminance of the image to decode
+     * @return the bitmap to decode
+     */
+    public BinaryBitmap toBitmap(LuminanceSource source) {
+        return new BinaryBitmap(binarizer(luminance(source)));
+    }
+
+    /**
+     * @param source the luminance of the image to decode
+     * @return the luminance this strategy binarizes: the source itself, or the source inverted
+     *         or turned, which the positions found in its bitmap refer to
+     */
+    public LuminanceSource luminance(LuminanceSource source) {
+        return source;
+    }
+
+    /**
+     * @param luminance the luminance to binarize, see {@link #luminance(LuminanceSource)}
+     * @return the binarizer of this strategy over it
+     */
+    public Binarizer binarizer(LuminanceSource luminance) {
+        return new ParallelHybridBinarizer(luminance);
+    }
+
+}
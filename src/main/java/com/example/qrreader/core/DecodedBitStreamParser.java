@@ -2,13 +2,12 @@ package com.example.qrreader.core;
 
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.FormatException;
-import com.google.zxing.common.BitSource;
 import com.google.zxing.common.CharacterSetECI;
 import com.google.zxing.common.DecoderResult;
 import com.google.zxing.common.StringUtils;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -27,6 +26,29 @@ final class DecodedBitStreamParser {
       "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:".toCharArray();
   private static final int GB2312_SUBSET = 1;
 
+  /**
+   * The three digits of each 10-bit numeric group, at three times its value. Two and one digit groups
+   * are the last two and the last digit of their value's entry.
+   */
+  static final char[] DIGIT_TRIPLES = new char[1000 * 3];
+
+  /**
+   * The two characters of each 11-bit alphanumeric group, at twice its value.
+   */
+  static final char[] ALPHANUMERIC_PAIRS = new char[45 * 45 * 2];
+
+  static {
+    for (int value = 0; value < 1000; value++) {
+      DIGIT_TRIPLES[3 * value] = (char) ('0' + value / 100);
+      DIGIT_TRIPLES[3 * value + 1] = (char) ('0' + (value / 10) % 10);
+      DIGIT_TRIPLES[3 * value + 2] = (char) ('0' + value % 10);
+    }
+    for (int value = 0; value < 45 * 45; value++) {
+      ALPHANUMERIC_PAIRS[2 * value] = ALPHANUMERIC_CHARS[value / 45];
+      ALPHANUMERIC_PAIRS[2 * value + 1] = ALPHANUMERIC_CHARS[value % 45];
+    }
+  }
+
   private DecodedBitStreamParser() {
   }
 
@@ -35,8 +57,9 @@ final class DecodedBitStreamParser {
                               ErrorCorrectionLevel ecLevel,
                               Map<DecodeHintType,?> hints,
                               int[] keyArr) throws FormatException {
-    BitSource bits = new BitSource(bytes);
+    BitReader bits = new BitReader(bytes);
     StringBuilder result = new StringBuilder(50);
+    char[] buffer = null;
     List<byte[]> byteSegments = new ArrayList<>(1);
     int symbolSequence = -1;
     int parityData = -1;
@@ -101,10 +124,12 @@ final class DecodedBitStreamParser {
             int count = bits.readBits(mode.getCharacterCountBits(version));
             switch (mode) {
               case NUMERIC:
-                decodeNumericSegment(bits, result, count);
+                buffer = ensureCapacity(buffer, count);
+                decodeNumericSegment(bits, result, count, buffer);
                 break;
               case ALPHANUMERIC:
-                decodeAlphanumericSegment(bits, result, count, fc1InEffect);
+                buffer = ensureCapacity(buffer, count);
+                decodeAlphanumericSegment(bits, result, count, fc1InEffect, buffer);
                 break;
               case BYTE:
                 decodeByteSegment(bits, result, count, currentCharacterSetECI, byteSegments, hints);
@@ -154,7 +179,7 @@ final class DecodedBitStreamParser {
   /**
    * See specification GBT 18284-2000
    */
-  private static void decodeHanziSegment(BitSource bits,
+  private static void decodeHanziSegment(BitReader bits,
                                          StringBuilder result,
                                          int count) throws FormatException {
     if (StringUtils.GB2312_CHARSET == null) {
@@ -190,7 +215,7 @@ final class DecodedBitStreamParser {
     result.append(new String(buffer, StringUtils.GB2312_CHARSET));
   }
 
-  private static void decodeKanjiSegment(BitSource bits,
+  private static void decodeKanjiSegment(BitReader bits,
                                          StringBuilder result,
                                          int count) throws FormatException {
     // Don't crash trying to read more bits than we have available.
@@ -221,7 +246,7 @@ final class DecodedBitStreamParser {
     result.append(new String(buffer, StringUtils.SHIFT_JIS_CHARSET));
   }
 
-  private static void decodeByteSegment(BitSource bits,
+  private static void decodeByteSegment(BitReader bits,
                                         StringBuilder result,
                                         int count,
                                         CharacterSetECI currentCharacterSetECI,
@@ -233,53 +258,140 @@ final class DecodedBitStreamParser {
     }
 
     byte[] readBytes = new byte[count];
-    for (int i = 0; i < count; i++) {
-      readBytes[i] = (byte) bits.readBits(8);
-    }
-    Charset encoding;
+    bits.readBytes(readBytes);
     if (currentCharacterSetECI == null) {
       // The spec isn't clear on this mode; see
       // section 6.4.5: t does not say which encoding to assuming
       // upon decoding. I have seen ISO-8859-1 used as well as
       // Shift_JIS -- without anything like an ECI designator to
       // give a hint.
-      encoding = StringUtils.guessCharset(readBytes, hints);
+      result.append(decodeWithoutECI(readBytes, hints));
     } else {
-      encoding = currentCharacterSetECI.getCharset();
+      result.append(new String(readBytes, currentCharacterSetECI.getCharset()));
     }
-    result.append(new String(readBytes, encoding));
     byteSegments.add(readBytes);
   }
 
-  private static char toAlphaNumericChar(int value) throws FormatException {
-    if (value >= ALPHANUMERIC_CHARS.length) {
-      throw FormatException.getFormatInstance();
+  /**
+   * Decodes the bytes of a byte segment which has no ECI. Unless a character set is hinted, pure ASCII
+   * and well-formed UTF-8 are recognised and decoded in a single pass; guessing the character set
+   * would pick ISO-8859-1 or UTF-8 for them and give the same text, after scanning the bytes against
+   * several character sets first. Anything else is decoded in the guessed character set.
+   *
+   * @param bytes the bytes of the segment
+   * @param hints decoding hints, may be null
+   * @return the text of the segment
+   */
+  static String decodeWithoutECI(byte[] bytes, Map<DecodeHintType,?> hints) {
+    if (hints == null || !hints.containsKey(DecodeHintType.CHARACTER_SET)) {
+      String text = decodeAsciiOrUTF8(bytes);
+      if (text != null) {
+        return text;
+      }
+    }
+    return new String(bytes, StringUtils.guessCharset(bytes, hints));
+  }
+
+  /*
+   * Validates and decodes the bytes as UTF-8 in one pass, or returns null at the first byte which is
+   * not well-formed UTF-8. Overlong forms, surrogates and code points above U+10FFFF are rejected.
+   */
+  private static String decodeAsciiOrUTF8(byte[] bytes) {
+    int i = 0;
+    while (i < bytes.length && bytes[i] >= 0) {
+      i++;
+    }
+    if (i == bytes.length) {
+      // Pure ASCII, which the JDK copies without decoding
+      return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+    char[] chars = new char[bytes.length];
+    for (int j = 0; j < i; j++) {
+      chars[j] = (char) bytes[j];
+    }
+    int length = i;
+    while (i < bytes.length) {
+      int b = bytes[i];
+      if (b >= 0) {
+        chars[length++] = (char) b;
+        i++;
+        continue;
+      }
+      int lead = b & 0xFF;
+      int codePoint;
+      int continuationBytes;
+      int minCodePoint;
+      if (lead >= 0xC2 && lead <= 0xDF) {
+        codePoint = lead & 0x1F;
+        continuationBytes = 1;
+        minCodePoint = 0x80;
+      } else if ((lead & 0xF0) == 0xE0) {
+        codePoint = lead & 0x0F;
+        continuationBytes = 2;
+        minCodePoint = 0x800;
+      } else if (lead >= 0xF0 && lead <= 0xF4) {
+        codePoint = lead & 0x07;
+        continuationBytes = 3;
+        minCodePoint = 0x10000;
+      } else {
+        return null;
+      }
+      if (i + continuationBytes >= bytes.length) {
+        return null;
+      }
+      for (int k = 1; k <= continuationBytes; k++) {
+        int continuation = bytes[i + k] & 0xFF;
+        if ((continuation & 0xC0) != 0x80) {
+          return null;
+        }
+        codePoint = (codePoint << 6) | (continuation & 0x3F);
+      }
+      if (codePoint < minCodePoint || codePoint > Character.MAX_CODE_POINT
+          || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+        return null;
+      }
+      if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+        chars[length++] = Character.highSurrogate(codePoint);
+        chars[length++] = Character.lowSurrogate(codePoint);
+      } else {
+        chars[length++] = (char) codePoint;
+      }
+      i += continuationBytes + 1;
     }
-    return ALPHANUMERIC_CHARS[value];
+    return new String(chars, 0, length);
   }
 
-  private static void decodeAlphanumericSegment(BitSource bits,
+  private static void decodeAlphanumericSegment(BitReader bits,
                                                 StringBuilder result,
                                                 int count,
-                                                boolean fc1InEffect) throws FormatException {
-    // Read two characters at a time
-    int start = result.length();
-    while (count > 1) {
-      if (bits.available() < 11) {
-        throw FormatException.getFormatInstance();
-      }
-      int nextTwoCharsBits = bits.readBits(11);
-      result.append(toAlphaNumericChar(nextTwoCharsBits / 45));
-      result.append(toAlphaNumericChar(nextTwoCharsBits % 45));
+                                                boolean fc1InEffect,
+                                                char[] buffer) throws FormatException {
+    // Don't crash trying to read more bits than we have available.
+    if (11 * (count / 2) + 6 * (count % 2) > bits.available()) {
+      throw FormatException.getFormatInstance();
+    }
+    int length = 0;
+    // Read four characters at a time, then two
+    while (count >= 4) {
+      int nextFourCharsBits = bits.readBits(22);
+      length = appendAlphanumericPair(buffer, length, nextFourCharsBits >>> 11);
+      length = appendAlphanumericPair(buffer, length, nextFourCharsBits & 0x7FF);
+      count -= 4;
+    }
+    if (count >= 2) {
+      length = appendAlphanumericPair(buffer, length, bits.readBits(11));
       count -= 2;
     }
     if (count == 1) {
       // special case: one character left
-      if (bits.available() < 6) {
+      int charBits = bits.readBits(6);
+      if (charBits >= ALPHANUMERIC_CHARS.length) {
         throw FormatException.getFormatInstance();
       }
-      result.append(toAlphaNumericChar(bits.readBits(6)));
+      buffer[length++] = ALPHANUMERIC_CHARS[charBits];
     }
+    int start = result.length();
+    result.append(buffer, 0, length);
     // See section 6.4.8.1, 6.4.8.2
     if (fc1InEffect) {
       // We need to massage the result a bit if in an FNC1 mode:
@@ -297,49 +409,79 @@ final class DecodedBitStreamParser {
     }
   }
 
-  private static void decodeNumericSegment(BitSource bits,
+  private static int appendAlphanumericPair(char[] buffer, int length, int twoCharsBits) throws FormatException {
+    if (twoCharsBits >= 45 * 45) {
+      throw FormatException.getFormatInstance();
+    }
+    buffer[length] = ALPHANUMERIC_PAIRS[2 * twoCharsBits];
+    buffer[length + 1] = ALPHANUMERIC_PAIRS[2 * twoCharsBits + 1];
+    return length + 2;
+  }
+
+  private static void decodeNumericSegment(BitReader bits,
                                            StringBuilder result,
-                                           int count) throws FormatException {
-    // Read three digits at a time
+                                           int count,
+                                           char[] buffer) throws FormatException {
+    // Don't crash trying to read more bits than we have available.
+    if (10 * (count / 3) + (count % 3 == 2 ? 7 : count % 3 == 1 ? 4 : 0) > bits.available()) {
+      throw FormatException.getFormatInstance();
+    }
+    int length = 0;
+    // Read nine digits at a time, then three
+    while (count >= 9) {
+      int nineDigitsBits = bits.readBits(30);
+      length = appendDigitTriple(buffer, length, nineDigitsBits >>> 20);
+      length = appendDigitTriple(buffer, length, (nineDigitsBits >>> 10) & 0x3FF);
+      length = appendDigitTriple(buffer, length, nineDigitsBits & 0x3FF);
+      count -= 9;
+    }
     while (count >= 3) {
       // Each 10 bits encodes three digits
-      if (bits.available() < 10) {
-        throw FormatException.getFormatInstance();
-      }
-      int threeDigitsBits = bits.readBits(10);
-      if (threeDigitsBits >= 1000) {
-        throw FormatException.getFormatInstance();
-      }
-      result.append(toAlphaNumericChar(threeDigitsBits / 100));
-      result.append(toAlphaNumericChar((threeDigitsBits / 10) % 10));
-      result.append(toAlphaNumericChar(threeDigitsBits % 10));
+      length = appendDigitTriple(buffer, length, bits.readBits(10));
       count -= 3;
     }
     if (count == 2) {
       // Two digits left over to read, encoded in 7 bits
-      if (bits.available() < 7) {
-        throw FormatException.getFormatInstance();
-      }
       int twoDigitsBits = bits.readBits(7);
       if (twoDigitsBits >= 100) {
         throw FormatException.getFormatInstance();
       }
-      result.append(toAlphaNumericChar(twoDigitsBits / 10));
-      result.append(toAlphaNumericChar(twoDigitsBits % 10));
+      buffer[length++] = DIGIT_TRIPLES[3 * twoDigitsBits + 1];
+      buffer[length++] = DIGIT_TRIPLES[3 * twoDigitsBits + 2];
     } else if (count == 1) {
       // One digit left over to read
-      if (bits.available() < 4) {
-        throw FormatException.getFormatInstance();
-      }
       int digitBits = bits.readBits(4);
       if (digitBits >= 10) {
         throw FormatException.getFormatInstance();
       }
-      result.append(toAlphaNumericChar(digitBits));
+      buffer[length++] = DIGIT_TRIPLES[3 * digitBits + 2];
+    }
+    result.append(buffer, 0, length);
+  }
+
+  private static int appendDigitTriple(char[] buffer, int length, int threeDigitsBits) throws FormatException {
+    if (threeDigitsBits >= 1000) {
+      throw FormatException.getFormatInstance();
+    }
+    int index = 3 * threeDigitsBits;
+    buffer[length] = DIGIT_TRIPLES[index];
+    buffer[length + 1] = DIGIT_TRIPLES[index + 1];
+    buffer[length + 2] = DIGIT_TRIPLES[index + 2];
+    return length + 3;
+  }
+
+  /*
+   * The characters of numeric and alphanumeric segments are decoded into one buffer, which grows to the
+   * longest such segment of the code.
+   */
+  private static char[] ensureCapacity(char[] buffer, int count) {
+    if (buffer == null || buffer.length < count) {
+      return new char[count];
     }
+    return buffer;
   }
 
-  private static int parseECIValue(BitSource bits) throws FormatException {
+  private static int parseECIValue(BitReader bits) throws FormatException {
     int firstByte = bits.readBits(8);
     if ((firstByte & 0x80) == 0) {
       // just one byte
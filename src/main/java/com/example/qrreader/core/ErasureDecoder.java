@@ -0,0 +1,186 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.common.reedsolomon.ReedSolomonException;
+
+import java.util.Arrays;
+
+/**
+ * Reed-Solomon error and erasure correction of a block whose unreliable codewords are known.
+ *
+ * The ZXing decoder only corrects errors, whose positions it has to find, and spends two error
+ * correction codewords on each. A codeword with a module read close to the binarization
+ * threshold is the likeliest to be wrong, and marked as an erasure it costs only one: a block
+ * with e errors and f erasures is corrected as long as 2e + f is at most the number of error
+ * correction codewords. The erasure locator seeds Berlekamp-Massey, which finds the errors on
+ * top of the erasures, and Forney's formula gives the value to correct at both. Callers keep
+ * {@link #SPARE_CHECK_SYMBOLS} of them unused.
+ */
+final class ErasureDecoder {
+
+    /**
+     * Codewords with a module whose luminance was closer to its threshold than this, see
+     * {@link CodeModules#getConfidence(int, int)}, are uncertain and may be erased.
+     */
+    static final int UNCERTAIN_CONFIDENCE = 16;
+
+    /**
+     * Error correction codewords which a correction with erasures should leave unused, so that a
+     * block of noise, as a block read with the wrong key is, is not corrected into some other block.
+     */
+    static final int SPARE_CHECK_SYMBOLS = 2;
+
+    private static final int[] EXP = SyndromeBatch.EXP;
+    private static final int[] LOG = SyndromeBatch.LOG;
+
+    private ErasureDecoder() {
+    }
+
+    /**
+     * @param confidences the confidence of each codeword of a block, that of its least certain module
+     * @param ecCodewords the number of error correction codewords at the end of the block
+     * @return the positions of the uncertain codewords, least certain first, and no more than can be
+     *         erased; empty if there are none
+     */
+    static int[] findErasures(byte[] confidences, int ecCodewords) {
+        int maxErasures = Math.max(0, ecCodewords - SPARE_CHECK_SYMBOLS);
+        int[] erasures = new int[maxErasures];
+        int count = 0;
+        for (int confidence = 0; confidence < UNCERTAIN_CONFIDENCE && count < maxErasures; confidence++) {
+            for (int i = 0; i < confidences.length && count < maxErasures; i++) {
+                if ((confidences[i] & 0xFF) == confidence) {
+                    erasures[count++] = i;
+                }
+            }
+        }
+        return Arrays.copyOf(erasures, count);
+    }
+
+    /**
+     * @param received data and error correction codewords, corrected in place
+     * @param ecCodewords the number of error correction codewords at the end of the block
+     * @param erasures the distinct positions of the codewords which are likely wrong, see
+     *                 {@link #findErasures(byte[], int)}
+     * @return the number of errors found besides the erasures, each of which cost two error
+     *         correction codewords
+     * @throws ReedSolomonException if the block holds more errors than can be corrected
+     */
+    static int decode(int[] received, int ecCodewords, int[] erasures) throws ReedSolomonException {
+        int length = received.length;
+        int[] syndromes = new int[ecCodewords];
+        boolean noError = true;
+        for (int i = 0; i < ecCodewords; i++) {
+            // The received polynomial at alpha^i, highest degree first
+            int syndrome = 0;
+            for (int codeword : received) {
+                syndrome = multiply(syndrome, EXP[i]) ^ codeword;
+            }
+            syndromes[i] = syndrome;
+            if (syndrome != 0) {
+                noError = false;
+            }
+        }
+        if (noError) {
+            return 0;
+        }
+
+        // Lowest degree first. The codeword at position p has locator alpha^(length - 1 - p)
+        int size = 2 * ecCodewords + 2;
+        int[] locator = new int[size];
+        locator[0] = 1;
+        int erased = erasures.length;
+        for (int k = 0; k < erased; k++) {
+            int x = EXP[length - 1 - erasures[k]];
+            for (int j = k + 1; j > 0; j--) {
+                locator[j] ^= multiply(locator[j - 1], x);
+            }
+        }
+
+        // Berlekamp-Massey from the erasure locator, over the syndromes the erasures leave unused
+        int[] previous = locator.clone();
+        int[] next = new int[size];
+        int errata = erased;
+        for (int r = erased; r < ecCodewords; r++) {
+            System.arraycopy(previous, 0, previous, 1, size - 1);
+            previous[0] = 0;
+            int discrepancy = 0;
+            for (int j = 0; j <= Math.min(errata, r); j++) {
+                discrepancy ^= multiply(locator[j], syndromes[r - j]);
+            }
+            if (discrepancy == 0) {
+                continue;
+            }
+            for (int j = 0; j < size; j++) {
+                next[j] = locator[j] ^ multiply(discrepancy, previous[j]);
+            }
+            if (2 * errata <= r + erased) {
+                int inverse = EXP[(255 - LOG[discrepancy]) % 255];
+                for (int j = 0; j < size; j++) {
+                    previous[j] = multiply(locator[j], inverse);
+                }
+                errata = r + 1 + erased - errata;
+            }
+            int[] swap = locator;
+            locator = next;
+            next = swap;
+        }
+        if (2 * errata - erased > ecCodewords || locator[errata] == 0) {
+            throw new ReedSolomonException("Too many errors and erasures");
+        }
+        for (int j = errata + 1; j < size; j++) {
+            if (locator[j] != 0) {
+                throw new ReedSolomonException("Bad errata locator");
+            }
+        }
+
+        // The errata evaluator, the syndromes times the locator, mod x^ecCodewords
+        int[] evaluator = new int[ecCodewords];
+        for (int i = 0; i < ecCodewords; i++) {
+            for (int j = 0; j <= Math.min(i, errata); j++) {
+                evaluator[i] ^= multiply(syndromes[i - j], locator[j]);
+            }
+        }
+
+        // Chien search for the roots of the locator, which are the inverses of the errata locators
+        int found = 0;
+        for (int position = 0; position < length; position++) {
+            int power = length - 1 - position;
+            int inversePower = (255 - power) % 255;
+            if (evaluate(locator, errata, inversePower) != 0) {
+                continue;
+            }
+            // The formal derivative keeps the odd terms only
+            int derivative = 0;
+            for (int j = 1; j <= errata; j += 2) {
+                derivative ^= multiply(locator[j], EXP[inversePower * (j - 1) % 255]);
+            }
+            if (derivative == 0) {
+                throw new ReedSolomonException("Repeated errata locator");
+            }
+            // Forney, for generator base 0: X * evaluator(1/X) / locator'(1/X)
+            int magnitude = multiply(EXP[power], evaluate(evaluator, ecCodewords - 1, inversePower));
+            received[position] ^= multiply(magnitude, EXP[(255 - LOG[derivative]) % 255]);
+            found++;
+        }
+        if (found != errata) {
+            throw new ReedSolomonException("Errata locator degree does not match number of roots");
+        }
+        return errata - erased;
+    }
+
+    /* The polynomial, lowest degree first, at alpha^power */
+    private static int evaluate(int[] coefficients, int degree, int power) {
+        int x = EXP[power];
+        int result = 0;
+        for (int j = degree; j >= 0; j--) {
+            result = multiply(result, x) ^ coefficients[j];
+        }
+        return result;
+    }
+
+    private static int multiply(int a, int b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return EXP[(LOG[a] + LOG[b]) % 255];
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.CharacterSetECI;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds the codewords which a payload encodes to at a given version and error correction
+ * level, block by block. The data bits are laid out as the ZXing encoder behind
+ * {@link ScQRCodeWriter} lays them out: a single segment in the densest mode the payload
+ * allows, with a UTF-8 ECI header for text outside ISO-8859-1. Unlike encoding a whole
+ * symbol, this needs neither the module matrix nor a data mask, and the error correction
+ * codewords come from a table-driven shift register instead of polynomial division, so
+ * checking a payload costs less than decoding one.
+ *
+ * @see https://github.com/zxing/zxing/blob/master/core/src/main/java/com/google/zxing/qrcode/encoder/Encoder.java
+ */
+final class ExpectedCodewords {
+
+    private static final String ALPHANUMERIC_CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+
+    // GF(256) with the QR code primitive polynomial x^8 + x^4 + x^3 + x^2 + 1
+    private static final int PRIMITIVE = 0x011D;
+    private static final int MAX_EC_CODEWORDS = 30;
+
+    private static final int[] EXP = new int[512];
+    private static final int[] LOG = new int[256];
+    private static final int[][] GENERATORS = new int[MAX_EC_CODEWORDS + 1][];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if (x >= 0x100) {
+                x ^= PRIMITIVE;
+            }
+        }
+        for (int i = 255; i < EXP.length; i++) {
+            EXP[i] = EXP[i - 255];
+        }
+        // (x - a^0)(x - a^1)...(x - a^(n-1)), coefficients from the highest degree down
+        int[] generator = {1};
+        GENERATORS[0] = generator;
+        for (int degree = 1; degree <= MAX_EC_CODEWORDS; degree++) {
+            int[] next = new int[degree + 1];
+            for (int i = 0; i < generator.length; i++) {
+                next[i] ^= generator[i];
+                next[i + 1] ^= multiply(generator[i], EXP[degree - 1]);
+            }
+            generator = next;
+            GENERATORS[degree] = generator;
+        }
+    }
+
+    private ExpectedCodewords() {
+    }
+
+    /**
+     * @param contents the payload
+     * @param version the version of the symbol
+     * @param ecLevel the error correction level of the symbol
+     * @return the data and then error correction codewords of each block, in the order of
+     * {@link DataBlock#getDataBlocks}, or null if the payload does not fit the version
+     */
+    static byte[][] encode(String contents, Version version, ErrorCorrectionLevel ecLevel) {
+        Mode mode = chooseMode(contents);
+        boolean latin1 = isLatin1(contents);
+        Charset encoding = latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8;
+
+        BitArray bits = new BitArray();
+        if (mode == Mode.BYTE && !latin1) {
+            bits.appendBits(Mode.ECI.getBits(), 4);
+            bits.appendBits(CharacterSetECI.UTF8.getValue(), 8);
+        }
+        bits.appendBits(mode.getBits(), 4);
+        int numLetters;
+        byte[] bytes = null;
+        if (mode == Mode.BYTE) {
+            bytes = contents.getBytes(encoding);
+            numLetters = bytes.length;
+        } else {
+            numLetters = contents.length();
+        }
+        int countBits = mode.getCharacterCountBits(version);
+        if (numLetters >= (1 << countBits)) {
+            return null;
+        }
+        bits.appendBits(numLetters, countBits);
+        switch (mode) {
+            case NUMERIC:
+                appendNumeric(contents, bits);
+                break;
+            case ALPHANUMERIC:
+                appendAlphanumeric(contents, bits);
+                break;
+            default:
+                for (byte b : bytes) {
+                    bits.appendBits(b & 0xFF, 8);
+                }
+                break;
+        }
+
+        Version.ECBlocks ecBlocks = version.getECBlocksForLevel(ecLevel);
+        int numDataBytes = version.getTotalCodewords() - ecBlocks.getTotalECCodewords();
+        if (bits.getSize() > numDataBytes * 8) {
+            return null;
+        }
+        byte[] data = terminate(bits, numDataBytes);
+
+        int ecCodewords = ecBlocks.getECCodewordsPerBlock();
+        byte[][] blocks = new byte[ecBlocks.getNumBlocks()][];
+        int block = 0;
+        int offset = 0;
+        for (Version.ECB ecBlock : ecBlocks.getECBlocks()) {
+            int dataCodewords = ecBlock.getDataCodewords();
+            for (int i = 0; i < ecBlock.getCount(); i++) {
+                byte[] codewords = new byte[dataCodewords + ecCodewords];
+                System.arraycopy(data, offset, codewords, 0, dataCodewords);
+                appendErrorCorrection(codewords, dataCodewords, ecCodewords);
+                blocks[block++] = codewords;
+                offset += dataCodewords;
+            }
+        }
+        return blocks;
+    }
+
+    /*
+     * Computes the remainder of the data polynomial times x^ecCodewords divided by the generator,
+     * one data codeword at a time, into the end of the block.
+     */
+    private static void appendErrorCorrection(byte[] codewords, int dataCodewords, int ecCodewords) {
+        int[] generator = GENERATORS[ecCodewords];
+        int[] remainder = new int[ecCodewords];
+        for (int i = 0; i < dataCodewords; i++) {
+            int factor = (codewords[i] & 0xFF) ^ remainder[0];
+            System.arraycopy(remainder, 1, remainder, 0, ecCodewords - 1);
+            remainder[ecCodewords - 1] = 0;
+            if (factor != 0) {
+                int logFactor = LOG[factor];
+                for (int j = 0; j < ecCodewords; j++) {
+                    int coefficient = generator[j + 1];
+                    if (coefficient != 0) {
+                        remainder[j] ^= EXP[LOG[coefficient] + logFactor];
+                    }
+                }
+            }
+        }
+        for (int j = 0; j < ecCodewords; j++) {
+            codewords[dataCodewords + j] = (byte) remainder[j];
+        }
+    }
+
+    private static int multiply(int a, int b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return EXP[LOG[a] + LOG[b]];
+    }
+
+    private static boolean isLatin1(String contents) {
+        for (int i = 0; i < contents.length(); i++) {
+            if (contents.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Numeric if all digits, alphanumeric if all from the alphanumeric set, otherwise byte mode,
+     * as Encoder.chooseMode() decides for payloads without a Shift_JIS hint.
+     */
+    private static Mode chooseMode(String contents) {
+        boolean hasNumeric = false;
+        boolean hasAlphanumeric = false;
+        for (int i = 0; i < contents.length(); i++) {
+            char c = contents.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasNumeric = true;
+            } else if (ALPHANUMERIC_CHARS.indexOf(c) >= 0) {
+                hasAlphanumeric = true;
+            } else {
+                return Mode.BYTE;
+            }
+        }
+        if (hasAlphanumeric) {
+            return Mode.ALPHANUMERIC;
+        }
+        if (hasNumeric) {
+            return Mode.NUMERIC;
+        }
+        return Mode.BYTE;
+    }
+
+    private static void appendNumeric(String contents, BitArray bits) {
+        int length = contents.length();
+        int i = 0;
+        while (i < length) {
+            int num1 = contents.charAt(i) - '0';
+            if (i + 2 < length) {
+                int num2 = contents.charAt(i + 1) - '0';
+                int num3 = contents.charAt(i + 2) - '0';
+                bits.appendBits(num1 * 100 + num2 * 10 + num3, 10);
+                i += 3;
+            } else if (i + 1 < length) {
+                int num2 = contents.charAt(i + 1) - '0';
+                bits.appendBits(num1 * 10 + num2, 7);
+                i += 2;
+            } else {
+                bits.appendBits(num1, 4);
+                i++;
+            }
+        }
+    }
+
+    private static void appendAlphanumeric(String contents, BitArray bits) {
+        int length = contents.length();
+        int i = 0;
+        while (i < length) {
+            int code1 = ALPHANUMERIC_CHARS.indexOf(contents.charAt(i));
+            if (i + 1 < length) {
+                int code2 = ALPHANUMERIC_CHARS.indexOf(contents.charAt(i + 1));
+                bits.appendBits(code1 * 45 + code2, 11);
+                i += 2;
+            } else {
+                bits.appendBits(code1, 6);
+                i++;
+            }
+        }
+    }
+
+    /*
+     * Appends the terminator, pads to a byte boundary and fills the remaining capacity with the
+     * alternating pad codewords 0xEC and 0x11.
+     */
+    private static byte[] terminate(BitArray bits, int numDataBytes) {
+        int capacity = numDataBytes * 8;
+        for (int i = 0; i < 4 && bits.getSize() < capacity; i++) {
+            bits.appendBit(false);
+        }
+        int numBitsInLastByte = bits.getSize() & 0x07;
+        if (numBitsInLastByte > 0) {
+            for (int i = numBitsInLastByte; i < 8; i++) {
+                bits.appendBit(false);
+            }
+        }
+        int numPaddingBytes = numDataBytes - bits.getSizeInBytes();
+        for (int i = 0; i < numPaddingBytes; i++) {
+            bits.appendBits((i & 0x01) == 0 ? 0xEC : 0x11, 8);
+        }
+        byte[] data = new byte[numDataBytes];
+        bits.toBytes(0, data, 0, numDataBytes);
+        return data;
+    }
+}
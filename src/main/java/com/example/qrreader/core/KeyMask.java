@@ -0,0 +1,138 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.FormatException;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The masks which {@link BitMatrixParser} removes from the codes of one key: for every version
+ * and data mask, the fixed data mask and the random key mask combined into one matrix, so that
+ * unmasking a code is an exclusive or of whole words instead of a flip of every module.
+ *
+ * Each mask is built when a code of its version and data mask is first unmasked. The masks of
+ * the key used last are kept, which is the one key an application decodes with; decoding with
+ * a different key builds the masks of that key anew.
+ *
+ * The rounds of the key mask index the key by R + C plus a multiple of twice the dimension, so
+ * with a 256-bit key only codes up to version {@link #maxVersion(int) 27} can be masked; larger
+ * codes are rejected.
+ */
+final class KeyMask {
+
+    private static final int DATA_MASKS = DataMask.values().length;
+
+    private static volatile KeyMask last;
+
+    private final int[] keyArr;
+
+    private final AtomicReferenceArray<BitMatrix> masks = new AtomicReferenceArray<>(41 * DATA_MASKS);
+
+    private KeyMask(int[] keyArr) {
+        this.keyArr = keyArr.clone();
+    }
+
+    /**
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @return the masks of the key
+     */
+    static KeyMask forKey(int[] keyArr) {
+        KeyMask keyMask = last;
+        if (keyMask == null || !Arrays.equals(keyMask.keyArr, keyArr)) {
+            keyMask = new KeyMask(keyArr);
+            last = keyMask;
+        }
+        return keyMask;
+    }
+
+    /**
+     * @param version the version of the code
+     * @param dataMask the data mask reference of the code's format information, 0 to 7
+     * @return the modules which the data mask and the key mask together flip; not to be modified
+     * @throws FormatException if the key mask of the version runs past the end of the key
+     */
+    BitMatrix get(Version version, int dataMask) throws FormatException {
+        if (!fits(keyArr.length, version.getDimensionForVersion())) {
+            throw FormatException.getFormatInstance();
+        }
+        int index = version.getVersionNumber() * DATA_MASKS + dataMask;
+        BitMatrix mask = masks.get(index);
+        if (mask == null) {
+            // Threads racing here build equal masks, and keep whichever was stored first
+            masks.compareAndSet(index, null, build(version.getDimensionForVersion(), DataMask.values()[dataMask]));
+            mask = masks.get(index);
+        }
+        return mask;
+    }
+
+    private BitMatrix build(int dimension, DataMask dataMask) {
+        boolean[] flips = diagonalFlips(keyArr, dimension);
+        BitMatrix mask = new BitMatrix(dimension);
+        for (int y = 0; y < dimension; y++) {
+            for (int x = 0; x < dimension; x++) {
+                if (dataMask.isMasked(y, x) != flips[x + y]) {
+                    mask.set(x, y);
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @param keyLength the number of bits of the key
+     * @return the highest version whose key mask stays within the key, 0 if none does
+     */
+    static int maxVersion(int keyLength) {
+        int version = 40;
+        while (version > 0 && !fits(keyLength, 17 + 4 * version)) {
+            version--;
+        }
+        return version;
+    }
+
+    /* Whether the last round on the last diagonal still indexes the key */
+    private static boolean fits(int keyLength, int dimension) {
+        int sum = 2 * dimension;
+        return 2 * dimension - 2 + (rounds(dimension) - 1) * sum < keyLength;
+    }
+
+    private static int rounds(int dimension) {
+        int sum = 2 * dimension;
+        if (sum <= 42) {
+            return 5;
+        } else if (sum <= 82) {
+            return 3;
+        } else if (sum <= 122) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * Whether the modules on each diagonal R + C of a code with the given dimension are flipped,
+     * after all rounds of the key mask.
+     *
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @param dimension the dimension of the code, of a version no higher than {@link #maxVersion(int)}
+     * @return the flip of each diagonal, indexed by R + C
+     * @throws IllegalArgumentException if the key mask runs past the end of the key
+     */
+    static boolean[] diagonalFlips(int[] keyArr, int dimension) {
+        if (!fits(keyArr.length, dimension)) {
+            throw new IllegalArgumentException("Codes of dimension " + dimension + " cannot be masked with a "
+                    + keyArr.length + "-bit key");
+        }
+        int sum = 2 * dimension;
+        int noOfRounds = rounds(dimension);
+        boolean[] flips = new boolean[2 * dimension - 1];
+        for (int diagonal = 0; diagonal < flips.length; diagonal++) {
+            for (int count = 0; count < noOfRounds; count++) {
+                if (keyArr[diagonal + count * sum] == 1) {
+                    flips[diagonal] = !flips[diagonal];
+                }
+            }
+        }
+        return flips;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.qrreader.core;
+
+/**
+ * The kernels which convert RGB pixels to luminance. This is the Java 11 version, which
+ * converts them one by one; the multi-release jar holds a version for JDK 17 and later in
+ * {@code META-INF/versions/17}, which uses the Vector API when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}.
+ */
+final class LumaKernel {
+
+    private LumaKernel() {
+    }
+
+    /**
+     * @return whether pixels are converted with SIMD instructions
+     */
+    static boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * @see LuminanceConverter#packedToLumaScalar
+     */
+    static void packedToLuma(int[] rgb, int rgbOffset, byte[] luma, int lumaOffset, int count, boolean alpha) {
+        LuminanceConverter.packedToLumaScalar(rgb, rgbOffset, luma, lumaOffset, count, alpha);
+    }
+
+    /**
+     * @see LuminanceConverter#interleavedToLumaScalar
+     */
+    static void interleavedToLuma(byte[] bgr, int bgrOffset, int pixelStride, byte[] luma, int lumaOffset, int count) {
+        LuminanceConverter.interleavedToLumaScalar(bgr, bgrOffset, pixelStride, luma, lumaOffset, count);
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.qrreader.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Converts decoded images to gray, with the same luminance as the ZXing
+ * {@code BufferedImageLuminanceSource} computes for them, but from their pixel arrays instead
+ * of through {@link BufferedImage#getRGB} one row at a time. The gray image is taken by the
+ * luminance source as it is.
+ *
+ * Packed RGB pixels, and the interleaved BGR pixels which colour PNG and JPEG uploads decode
+ * to, are converted by {@link LumaKernel}, which uses SIMD instructions on JDKs started with the
+ * incubating Vector API.
+ */
+public final class LuminanceConverter {
+
+    /* Where red, green, blue and alpha are in each pixel of the interleaved image types */
+    private static final int[] BGR_OFFSETS = {2, 1, 0};
+    private static final int[] ABGR_OFFSETS = {3, 2, 1, 0};
+
+    private LuminanceConverter() {
+    }
+
+    /**
+     * @param image the decoded image
+     * @return the image converted to {@link BufferedImage#TYPE_BYTE_GRAY}, or the image itself if
+     *         it is gray already or its pixels are laid out in a way which is not converted here
+     */
+    public static BufferedImage toGray(BufferedImage image) {
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+                return fromPacked(image, false);
+            case BufferedImage.TYPE_INT_ARGB:
+                return fromPacked(image, true);
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                return fromInterleaved(image);
+            default:
+                return image;
+        }
+    }
+
+    private static BufferedImage fromPacked(BufferedImage image, boolean alpha) {
+        WritableRaster raster = image.getRaster();
+        if (isSubRaster(raster) || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+            return image;
+        }
+        int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+        int[] pixels = buffer.getData();
+        int offset = buffer.getOffset();
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage gray = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] luma = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+        if (stride == width) {
+            LumaKernel.packedToLuma(pixels, offset, luma, 0, width * height, alpha);
+        } else {
+            for (int y = 0; y < height; y++) {
+                LumaKernel.packedToLuma(pixels, offset + y * stride, luma, y * width, width, alpha);
+            }
+        }
+        return gray;
+    }
+
+    private static BufferedImage fromInterleaved(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        if (isSubRaster(raster) || !(raster.getSampleModel() instanceof ComponentSampleModel)) {
+            return image;
+        }
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        int pixelStride = sampleModel.getPixelStride();
+        if (!Arrays.equals(sampleModel.getBandOffsets(), pixelStride == 4 ? ABGR_OFFSETS : BGR_OFFSETS)) {
+            return image;
+        }
+        int stride = sampleModel.getScanlineStride();
+        DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+        byte[] pixels = buffer.getData();
+        int offset = buffer.getOffset();
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage gray = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] luma = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+        if (stride == width * pixelStride) {
+            LumaKernel.interleavedToLuma(pixels, offset, pixelStride, luma, 0, width * height);
+        } else {
+            for (int y = 0; y < height; y++) {
+                LumaKernel.interleavedToLuma(pixels, offset + y * stride, pixelStride, luma, y * width, width);
+            }
+        }
+        return gray;
+    }
+
+    /* Child rasters of sub-images share the pixel array of their parent at an offset */
+    private static boolean isSubRaster(WritableRaster raster) {
+        return raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                || raster.getParent() != null;
+    }
+
+    /**
+     * Converts packed pixels to luminance one by one. This is the kernel on JDKs without the
+     * Vector API, and for the pixels left over by the SIMD kernel.
+     *
+     * @param rgb pixels packed as 0xAARRGGBB
+     * @param rgbOffset the index of the first pixel
+     * @param luma the luminance, written one byte per pixel
+     * @param lumaOffset the index of the luminance of the first pixel
+     * @param count the number of pixels to convert
+     * @param alpha whether the pixels have an alpha channel; fully transparent pixels are white
+     */
+    static void packedToLumaScalar(int[] rgb, int rgbOffset, byte[] luma, int lumaOffset, int count,
+                                   boolean alpha) {
+        for (int i = 0; i < count; i++) {
+            int pixel = rgb[rgbOffset + i];
+            if (alpha && (pixel & 0xFF000000) == 0) {
+                luma[lumaOffset + i] = (byte) 0xFF;
+            } else {
+                luma[lumaOffset + i] = (byte) luma((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Converts interleaved pixels to luminance one by one, like {@link #packedToLumaScalar}.
+     *
+     * @param bgr pixels as blue, green and red bytes, or as alpha, blue, green and red bytes
+     * @param bgrOffset the index of the first pixel
+     * @param pixelStride 3 for pixels without alpha, 4 for pixels with alpha first
+     * @param luma the luminance, written one byte per pixel
+     * @param lumaOffset the index of the luminance of the first pixel
+     * @param count the number of pixels to convert
+     */
+    static void interleavedToLumaScalar(byte[] bgr, int bgrOffset, int pixelStride, byte[] luma, int lumaOffset,
+                                        int count) {
+        int blue = bgrOffset + pixelStride - 3;
+        for (int i = 0; i < count; i++, blue += pixelStride) {
+            if (pixelStride == 4 && bgr[blue - 1] == 0) {
+                luma[lumaOffset + i] = (byte) 0xFF;
+            } else {
+                luma[lumaOffset + i] = (byte) luma(bgr[blue + 2] & 0xFF, bgr[blue + 1] & 0xFF, bgr[blue] & 0xFF);
+            }
+        }
+    }
+
+    /* The ZXing weights: .299 R + .587 G + .114 B in fixed point, rounded */
+    private static int luma(int red, int green, int blue) {
+        return (306 * red + 601 * green + 117 * blue + 0x200) >> 10;
+    }
+}
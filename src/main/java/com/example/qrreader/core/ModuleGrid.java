@@ -0,0 +1,221 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.PerspectiveTransform;
+
+/**
+ * Where the modules of a located code are in the image: the perspective transform from module
+ * to image coordinates which the ZXing detector builds from the finder patterns and, if it
+ * found one, the bottom-right alignment pattern.
+ *
+ * Instead of sampling every module into a matrix, as the ZXing grid sampler does, the grid
+ * reads a module off the image only when {@link SampledCodewords} reads it, at the centre of
+ * the module, exactly where the grid sampler would.
+ */
+final class ModuleGrid {
+
+    /* The smallest region the hybrid binarizer thresholds, 5 blocks of 8 pixels */
+    private static final int MIN_REGION_DIMENSION = 40;
+
+    /**
+     * The pixels of an image, against the thresholds they are binarized with.
+     */
+    interface Pixels {
+
+        /**
+         * @param x the column of the pixel, within the image
+         * @param y the row of the pixel, within the image
+         * @return the luminance of the pixel less its threshold; the pixel is black if this is 0 or less
+         */
+        int contrast(int x, int y);
+    }
+
+    private final PerspectiveTransform transform;
+    private final int dimension;
+    private final ResultPoint[] points;
+
+    /**
+     * @param bottomLeft the centre of the bottom-left finder pattern
+     * @param topLeft the centre of the top-left finder pattern
+     * @param topRight the centre of the top-right finder pattern
+     * @param alignmentPattern the centre of the bottom-right alignment pattern, or null if none was found
+     * @param dimension the number of modules along each side of the code
+     */
+    ModuleGrid(ResultPoint bottomLeft, ResultPoint topLeft, ResultPoint topRight, ResultPoint alignmentPattern,
+               int dimension) {
+        this.dimension = dimension;
+        transform = createTransform(topLeft, topRight, bottomLeft, alignmentPattern, dimension);
+        points = alignmentPattern == null
+                ? new ResultPoint[]{bottomLeft, topLeft, topRight}
+                : new ResultPoint[]{bottomLeft, topLeft, topRight, alignmentPattern};
+    }
+
+    private static PerspectiveTransform createTransform(ResultPoint topLeft, ResultPoint topRight,
+                                                        ResultPoint bottomLeft, ResultPoint alignmentPattern,
+                                                        int dimension) {
+        float dimMinusThree = dimension - 3.5f;
+        float bottomRightX;
+        float bottomRightY;
+        float sourceBottomRight;
+        if (alignmentPattern != null) {
+            bottomRightX = alignmentPattern.getX();
+            bottomRightY = alignmentPattern.getY();
+            sourceBottomRight = dimMinusThree - 3.0f;
+        } else {
+            // Without an alignment pattern, make up the bottom-right corner
+            bottomRightX = topRight.getX() - topLeft.getX() + bottomLeft.getX();
+            bottomRightY = topRight.getY() - topLeft.getY() + bottomLeft.getY();
+            sourceBottomRight = dimMinusThree;
+        }
+        return PerspectiveTransform.quadrilateralToQuadrilateral(
+                3.5f, 3.5f,
+                dimMinusThree, 3.5f,
+                sourceBottomRight, sourceBottomRight,
+                3.5f, dimMinusThree,
+                topLeft.getX(), topLeft.getY(),
+                topRight.getX(), topRight.getY(),
+                bottomRightX, bottomRightY,
+                bottomLeft.getX(), bottomLeft.getY());
+    }
+
+    /**
+     * @return the number of modules along each side of the code
+     */
+    int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the finder patterns bottom left, top left and top right, and the alignment pattern
+     *         if one was found, as the ZXing detector returns them
+     */
+    ResultPoint[] getPoints() {
+        return points;
+    }
+
+    /**
+     * @return the outer corners of the code in the image, as x and y of the top left, top right,
+     *         bottom right and bottom left corner
+     */
+    float[] getCorners() {
+        float[] corners = {0, 0, dimension, 0, dimension, dimension, 0, dimension};
+        transform.transformPoints(corners);
+        return corners;
+    }
+
+    /**
+     * Thresholds the pixels the code covers, plus a module of margin, the way the hybrid
+     * binarizer thresholds a whole image. The 8x8 blocks start at the corner of that region,
+     * and each block is thresholded at the average of the blocks around it within the region
+     * only, so a pixel can get a different threshold than in the black matrix of the whole image.
+     *
+     * @param source the luminance of the image the grid is in
+     * @return the modules of the code, each read off the pixel at its centre when it is read, with
+     *         how far the pixel was from its threshold as its confidence
+     * @throws NotFoundException if the code reaches out of the image
+     */
+    CodeModules sample(LuminanceSource source) throws NotFoundException {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        float[] corners = getCorners();
+        float minX = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < corners.length; i += 2) {
+            minX = Math.min(minX, corners[i]);
+            maxX = Math.max(maxX, corners[i]);
+            minY = Math.min(minY, corners[i + 1]);
+            maxY = Math.max(maxY, corners[i + 1]);
+        }
+        float margin = Math.max(maxX - minX, maxY - minY) / dimension;
+        int left = clamp((int) (minX - margin), width - MIN_REGION_DIMENSION);
+        int top = clamp((int) (minY - margin), height - MIN_REGION_DIMENSION);
+        int right = Math.min(width, Math.max(left + MIN_REGION_DIMENSION, (int) Math.ceil(maxX + margin)));
+        int bottom = Math.min(height, Math.max(top + MIN_REGION_DIMENSION, (int) Math.ceil(maxY + margin)));
+        int regionWidth = right - left;
+        int regionHeight = bottom - top;
+
+        byte[] region = new byte[regionWidth * regionHeight];
+        byte[] row = new byte[width];
+        for (int y = 0; y < regionHeight; y++) {
+            row = source.getRow(top + y, row);
+            System.arraycopy(row, left, region, y * regionWidth, regionWidth);
+        }
+        int[] thresholds = ParallelHybridBinarizer.blockThresholds(region, regionWidth, regionHeight);
+        int blocksPerRow = (regionWidth + 7) >> 3;
+
+        return over((x, y) -> {
+            int regionX = Math.max(0, Math.min(x - left, regionWidth - 1));
+            int regionY = Math.max(0, Math.min(y - top, regionHeight - 1));
+            // Black at 0, as the hybrid binarizer has it
+            return (region[regionY * regionWidth + regionX] & 0xFF)
+                    - thresholds[(regionY >> 3) * blocksPerRow + (regionX >> 3)];
+        }, width, height);
+    }
+
+    /**
+     * @param pixels the pixels of the image
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return the modules of the code, each read off the pixel at its centre when it is read, with
+     *         how far the pixel was from its threshold as its confidence
+     * @throws NotFoundException if the code reaches out of the image by more than a pixel
+     */
+    CodeModules over(Pixels pixels, int width, int height) throws NotFoundException {
+        float[] corners = getCorners();
+        for (int i = 0; i < corners.length; i += 2) {
+            if (corners[i] < -1 || corners[i] > width + 1 || corners[i + 1] < -1 || corners[i + 1] > height + 1) {
+                throw NotFoundException.getNotFoundInstance();
+            }
+        }
+        float[] point = new float[2];
+        return new CodeModules() {
+            /* The module last read, as its confidence is asked for right after it is read */
+            private int lastX = -1;
+            private int lastY = -1;
+            private int lastContrast;
+
+            @Override
+            public int getDimension() {
+                return dimension;
+            }
+
+            @Override
+            public boolean isDark(int x, int y) {
+                return contrast(x, y) <= 0;
+            }
+
+            @Override
+            public boolean hasConfidence() {
+                return true;
+            }
+
+            @Override
+            public int getConfidence(int x, int y) {
+                return Math.min(255, Math.abs(contrast(x, y)));
+            }
+
+            private int contrast(int x, int y) {
+                if (x != lastX || y != lastY) {
+                    point[0] = x + 0.5f;
+                    point[1] = y + 0.5f;
+                    transform.transformPoints(point);
+                    // Like the grid sampler, nudge centres which are off the image by a pixel back onto it
+                    int pixelX = Math.max(0, Math.min((int) point[0], width - 1));
+                    int pixelY = Math.max(0, Math.min((int) point[1], height - 1));
+                    lastContrast = pixels.contrast(pixelX, pixelY);
+                    lastX = x;
+                    lastY = y;
+                }
+                return lastContrast;
+            }
+        };
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(value, Math.max(0, max)));
+    }
+}
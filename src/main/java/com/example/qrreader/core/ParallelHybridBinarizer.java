@@ -0,0 +1,265 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The ZXing {@link HybridBinarizer}, computed in bands of rows on a fork-join pool for large
+ * images, with exactly the same black matrix as a result.
+ *
+ * The hybrid binarizer takes the black point of every 8x8 block of pixels from its range of
+ * luminance, and thresholds each block at the average black point of the 5x5 blocks around it.
+ * Reading the blocks, which touches every pixel, and thresholding them both run in parallel
+ * bands, which write straight into the one black matrix. Only the black points of blocks without
+ * enough contrast depend on the blocks above and to their left, so they are settled in between,
+ * in order, one step per block.
+ *
+ * Images with fewer pixels than the threshold are binarized by the hybrid binarizer itself,
+ * on the calling thread.
+ *
+ * Each image gets a new black matrix, as with the hybrid binarizer, rather than one reused per
+ * thread or pool. The matrix is handed to the caller, and {@link com.google.zxing.BinaryBitmap}
+ * keeps it for as long as the bitmap lives, so a reused one would change under the readers of
+ * an earlier image. Clearing it between images would also touch as many words as allocating it.
+ */
+public final class ParallelHybridBinarizer extends GlobalHistogramBinarizer {
+
+    /**
+     * The number of pixels from which images are binarized in parallel by default.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4_000_000;
+
+    private static final int BLOCK_SIZE_POWER = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+    private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;
+    private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+    private static final int MIN_DYNAMIC_RANGE = 24;
+
+    /* Rows of blocks per band, 256 rows of pixels */
+    private static final int BAND_BLOCK_ROWS = 32;
+
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private BitMatrix matrix;
+
+    /**
+     * @param source the luminance to binarize, in parallel on the common pool from
+     *               {@link #DEFAULT_PARALLEL_THRESHOLD} pixels
+     */
+    public ParallelHybridBinarizer(LuminanceSource source) {
+        this(source, ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * @param source the luminance to binarize
+     * @param pool the pool to binarize large images on
+     * @param parallelThreshold the number of pixels from which images are binarized in parallel
+     */
+    public ParallelHybridBinarizer(LuminanceSource source, ForkJoinPool pool, int parallelThreshold) {
+        super(source);
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        if (matrix != null) {
+            return matrix;
+        }
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if ((long) width * height < parallelThreshold || width < MINIMUM_DIMENSION || height < MINIMUM_DIMENSION) {
+            matrix = new HybridBinarizer(source).getBlackMatrix();
+            return matrix;
+        }
+
+        byte[] luminances = source.getMatrix();
+        int subWidth = (width >> BLOCK_SIZE_POWER) + ((width & BLOCK_SIZE_MASK) != 0 ? 1 : 0);
+        int subHeight = (height >> BLOCK_SIZE_POWER) + ((height & BLOCK_SIZE_MASK) != 0 ? 1 : 0);
+        int[] blackPoints = new int[subWidth * subHeight];
+        BitMatrix newMatrix = new BitMatrix(width, height);
+
+        pool.invoke(new Band(0, subHeight, subHeight, (fromY, toY) ->
+                readBlocks(luminances, subWidth, width, height, blackPoints, fromY, toY)));
+        settleFlatBlocks(subWidth, subHeight, blackPoints);
+        pool.invoke(new Band(0, subHeight, subHeight, (fromY, toY) ->
+                thresholdBlocks(luminances, subWidth, subHeight, width, height, blackPoints, newMatrix, fromY, toY)));
+        matrix = newMatrix;
+        return matrix;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new ParallelHybridBinarizer(source, pool, parallelThreshold);
+    }
+
+    /*
+     * Stores the black point of every block in the rows from fromY to toY which has enough
+     * contrast, and the minimum luminance of every other block as -1 - minimum, to be settled
+     * once the blocks around it are.
+     */
+    private static void readBlocks(byte[] luminances, int subWidth, int width, int height, int[] blackPoints,
+                                   int fromY, int toY) {
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = fromY; y < toY; y++) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+                int sum = 0;
+                int min = 0xFF;
+                int max = 0;
+                for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE; yy++, offset += width) {
+                    for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                        int pixel = luminances[offset + xx] & 0xFF;
+                        sum += pixel;
+                        min = Math.min(min, pixel);
+                        max = Math.max(max, pixel);
+                    }
+                }
+                blackPoints[y * subWidth + x] = max - min > MIN_DYNAMIC_RANGE
+                        ? sum >> (BLOCK_SIZE_POWER * 2)
+                        : -1 - min;
+            }
+        }
+    }
+
+    /*
+     * Settles the black points of the blocks without enough contrast, in the order of the hybrid
+     * binarizer: half their minimum, unless the blocks above and to the left are darker.
+     */
+    private static void settleFlatBlocks(int subWidth, int subHeight, int[] blackPoints) {
+        for (int y = 0; y < subHeight; y++) {
+            for (int x = 0; x < subWidth; x++) {
+                int index = y * subWidth + x;
+                if (blackPoints[index] >= 0) {
+                    continue;
+                }
+                int min = -1 - blackPoints[index];
+                int average = min / 2;
+                if (y > 0 && x > 0) {
+                    int averageNeighborBlackPoint = (blackPoints[index - subWidth] + 2 * blackPoints[index - 1]
+                            + blackPoints[index - subWidth - 1]) / 4;
+                    if (min < averageNeighborBlackPoint) {
+                        average = averageNeighborBlackPoint;
+                    }
+                }
+                blackPoints[index] = average;
+            }
+        }
+    }
+
+    /*
+     * Thresholds the blocks in the rows from fromY to toY at the average black point of the 5x5
+     * blocks around them.
+     */
+    private static void thresholdBlocks(byte[] luminances, int subWidth, int subHeight, int width, int height,
+                                        int[] blackPoints, BitMatrix matrix, int fromY, int toY) {
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = fromY; y < toY; y++) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+                int threshold = averageBlackPoint(blackPoints, subWidth, subHeight, x, y);
+                for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE; yy++, offset += width) {
+                    for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                        // <= so that black pixels stay black even at a threshold of 0
+                        if ((luminances[offset + xx] & 0xFF) <= threshold) {
+                            matrix.set(xoffset + xx, yoffset + yy);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The thresholds the hybrid binarizer applies to each 8x8 block of pixels, the last blocks
+     * of a row or column being moved back to end at the edge of the image. Computed on the
+     * calling thread.
+     *
+     * @param luminances the luminance, row by row
+     * @param width the width of the image, at least 40
+     * @param height the height of the image, at least 40
+     * @return the threshold of every block, row by row, with (width + 7) / 8 blocks per row;
+     *         pixels at or below it are black
+     */
+    static int[] blockThresholds(byte[] luminances, int width, int height) {
+        int subWidth = (width + BLOCK_SIZE_MASK) >> BLOCK_SIZE_POWER;
+        int subHeight = (height + BLOCK_SIZE_MASK) >> BLOCK_SIZE_POWER;
+        int[] blackPoints = new int[subWidth * subHeight];
+        readBlocks(luminances, subWidth, width, height, blackPoints, 0, subHeight);
+        settleFlatBlocks(subWidth, subHeight, blackPoints);
+        int[] thresholds = new int[blackPoints.length];
+        for (int y = 0; y < subHeight; y++) {
+            for (int x = 0; x < subWidth; x++) {
+                thresholds[y * subWidth + x] = averageBlackPoint(blackPoints, subWidth, subHeight, x, y);
+            }
+        }
+        return thresholds;
+    }
+
+    /* The average black point of the 5x5 blocks around a block, moved inwards at the edges */
+    private static int averageBlackPoint(int[] blackPoints, int subWidth, int subHeight, int x, int y) {
+        int top = cap(y, subHeight - 3);
+        int left = cap(x, subWidth - 3);
+        int sum = 0;
+        for (int z = -2; z <= 2; z++) {
+            int row = (top + z) * subWidth + left;
+            sum += blackPoints[row - 2] + blackPoints[row - 1] + blackPoints[row]
+                    + blackPoints[row + 1] + blackPoints[row + 2];
+        }
+        return sum / 25;
+    }
+
+    private static int cap(int value, int max) {
+        return value < 2 ? 2 : Math.min(value, max);
+    }
+
+    /* The work on a band of rows of blocks */
+    private interface BandWork {
+        void run(int fromY, int toY);
+    }
+
+    /*
+     * Splits the rows of blocks in halves until they are small enough. The last row of blocks is
+     * moved up to end at the bottom of the image, so it overlaps the row above it; the two stay in
+     * one band, so that no two bands ever set bits in the same words of the matrix.
+     */
+    private static final class Band extends RecursiveAction {
+
+        private final int fromY;
+        private final int toY;
+        private final int subHeight;
+        private final BandWork work;
+
+        Band(int fromY, int toY, int subHeight, BandWork work) {
+            this.fromY = fromY;
+            this.toY = toY;
+            this.subHeight = subHeight;
+            this.work = work;
+        }
+
+        @Override
+        protected void compute() {
+            int middle = (fromY + toY) >>> 1;
+            if (middle == subHeight - 1) {
+                middle--;
+            }
+            if (toY - fromY <= BAND_BLOCK_ROWS || middle <= fromY) {
+                work.run(fromY, toY);
+            } else {
+                invokeAll(new Band(fromY, middle, subHeight, work), new Band(middle, toY, subHeight, work));
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.DetectorResult;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.detector.Detector;
+import com.google.zxing.qrcode.detector.FinderPattern;
+
+import java.util.Map;
+
+/**
+ * Locates a QR code on downsampled copies of a large image, and samples its modules from the
+ * full resolution luminance.
+ *
+ * The luminance is averaged over 2x2 pixels into a pyramid of levels at 1/2 and 1/4 of the
+ * resolution. Each level is binarized and searched for finder patterns on its own, coarsest
+ * first, and a level is only used if its finder patterns are at least
+ * {@link #MIN_MODULE_SIZE} pixels per module, so that the positions they give are still
+ * precise to a fraction of a module. The finder and alignment pattern positions are then
+ * scaled up to the full resolution, and each module is read there, as it is read in codeword
+ * order. Only the pixels around the code are thresholded, see
+ * {@link ModuleGrid#sample(LuminanceSource)}.
+ *
+ * Binarizing and searching a level costs a quarter or a sixteenth of doing so at full
+ * resolution, but downsampling still reads every pixel, so detection gets cheaper by a
+ * constant factor rather than independent of the resolution; see DetectionBenchmark.
+ */
+final class PyramidDetector {
+
+    /**
+     * The number of downsampled levels at most, at 1/2 and 1/4 of the resolution.
+     */
+    static final int MAX_LEVELS = 2;
+
+    /**
+     * The pixels per module, at the level it is detected on, below which a code is detected on
+     * the next finer level instead.
+     */
+    static final float MIN_MODULE_SIZE = 3.0f;
+
+    /* The smallest level worth searching: a version 1 code with its quiet zone at 3 pixels per module, and some */
+    private static final int MIN_LEVEL_DIMENSION = 120;
+
+    private final LuminanceSource source;
+    private final int levels;
+    private final byte[][] pyramid = new byte[MAX_LEVELS + 1][];
+
+    /**
+     * @param source the full resolution luminance of the image
+     */
+    PyramidDetector(LuminanceSource source) {
+        this.source = source;
+        int minDimension = Math.min(source.getWidth(), source.getHeight());
+        int count = 0;
+        while (count < MAX_LEVELS && minDimension >> (count + 1) >= MIN_LEVEL_DIMENSION) {
+            count++;
+        }
+        levels = count;
+    }
+
+    /**
+     * @return the number of downsampled levels, 0 if the image is too small to downsample
+     */
+    int getLevels() {
+        return levels;
+    }
+
+    /**
+     * Downsamples the luminance to the given level, if it has not been yet, and binarizes it
+     * with the hybrid binarizer.
+     *
+     * @param level 1 for half the resolution, up to {@link #getLevels()}
+     * @return the black matrix of the level
+     * @throws NotFoundException if the level cannot be binarized
+     */
+    BitMatrix binarize(int level) throws NotFoundException {
+        byte[] luminances = level(level);
+        int width = source.getWidth() >> level;
+        int height = source.getHeight() >> level;
+        return new HybridBinarizer(new PlanarYUVLuminanceSource(luminances, width, height, 0, 0, width, height,
+                false)).getBlackMatrix();
+    }
+
+    /**
+     * Locates the code on a binarized level, and scales its position up to full resolution.
+     *
+     * @param level the level the black matrix is of
+     * @param blackMatrix the black matrix of the level, see {@link #binarize(int)}
+     * @param hints decoding hints, may be null
+     * @return where the modules of the code are at full resolution
+     * @throws NotFoundException if no code is found on the level, or its modules are too small there
+     * @throws FormatException if the dimension of the code is invalid
+     */
+    ModuleGrid locate(int level, BitMatrix blackMatrix, Map<DecodeHintType, ?> hints)
+            throws NotFoundException, FormatException {
+        DetectorResult coarse = new Detector(blackMatrix).detect(hints);
+        ResultPoint[] coarsePoints = coarse.getPoints();
+        float moduleSize = 0;
+        for (int i = 0; i < 3; i++) {
+            moduleSize += ((FinderPattern) coarsePoints[i]).getEstimatedModuleSize() / 3;
+        }
+        if (moduleSize < MIN_MODULE_SIZE) {
+            // Too coarse to place the modules precisely
+            throw NotFoundException.getNotFoundInstance();
+        }
+
+        int scale = 1 << level;
+        ResultPoint[] points = new ResultPoint[coarsePoints.length];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new ResultPoint(coarsePoints[i].getX() * scale, coarsePoints[i].getY() * scale);
+        }
+        return new ModuleGrid(points[0], points[1], points[2], points.length > 3 ? points[3] : null,
+                coarse.getBits().getHeight());
+    }
+
+    private byte[] level(int level) {
+        if (pyramid[level] == null) {
+            int width = source.getWidth() >> (level - 1);
+            int height = source.getHeight() >> (level - 1);
+            pyramid[level] = level == 1 ? halve(source) : halve(level(level - 1), width, height);
+        }
+        return pyramid[level];
+    }
+
+    /* Averages every 2x2 pixels of the full resolution, reading it a row at a time */
+    private static byte[] halve(LuminanceSource source) {
+        int halfWidth = source.getWidth() >> 1;
+        int halfHeight = source.getHeight() >> 1;
+        byte[] half = new byte[halfWidth * halfHeight];
+        byte[] upper = new byte[source.getWidth()];
+        byte[] lower = new byte[source.getWidth()];
+        for (int y = 0; y < halfHeight; y++) {
+            upper = source.getRow(2 * y, upper);
+            lower = source.getRow(2 * y + 1, lower);
+            averageRows(upper, 0, lower, 0, half, y * halfWidth, halfWidth);
+        }
+        return half;
+    }
+
+    /* Averages every 2x2 pixels of a level */
+    private static byte[] halve(byte[] luminances, int width, int height) {
+        int halfWidth = width >> 1;
+        int halfHeight = height >> 1;
+        byte[] half = new byte[halfWidth * halfHeight];
+        for (int y = 0; y < halfHeight; y++) {
+            averageRows(luminances, 2 * y * width, luminances, (2 * y + 1) * width, half, y * halfWidth, halfWidth);
+        }
+        return half;
+    }
+
+    private static void averageRows(byte[] upper, int upperOffset, byte[] lower, int lowerOffset,
+                                    byte[] half, int halfOffset, int halfWidth) {
+        for (int x = 0; x < halfWidth; x++) {
+            int sum = (upper[upperOffset + 2 * x] & 0xFF) + (upper[upperOffset + 2 * x + 1] & 0xFF)
+                    + (lower[lowerOffset + 2 * x] & 0xFF) + (lower[lowerOffset + 2 * x + 1] & 0xFF);
+            half[halfOffset + x] = (byte) ((sum + 2) >> 2);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.FormatException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+/**
+ * The codewords of a code, read straight off its modules in one pass.
+ *
+ * {@link BitMatrixParser} removes the masks from a sampled matrix and then walks the matrix in
+ * codeword order. Here the format and version information are read first, and then every data
+ * module is read, in codeword order, and exclusive-ored with the combined data and key mask of
+ * {@link KeyMask} as it is read. Nothing is written back, so the modules are not copied or
+ * rewritten between detection and error correction, and a mirrored reading needs no remasking.
+ * Modules read off the image by a {@link ModuleGrid} are only sampled when they are read, and
+ * each codeword then also gets the confidence of its least certain module, so that error
+ * correction can erase the codewords which were read least clearly, see {@link ErasureDecoder}.
+ */
+final class SampledCodewords {
+
+    private final Version version;
+    private final ErrorCorrectionLevel ecLevel;
+    private final byte[] codewords;
+    private final byte[] confidences;
+
+    private SampledCodewords(Version version, ErrorCorrectionLevel ecLevel, byte[] codewords, byte[] confidences) {
+        this.version = version;
+        this.ecLevel = ecLevel;
+        this.codewords = codewords;
+        this.confidences = confidences;
+    }
+
+    /**
+     * @param modules the modules of the code
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @return the version, error correction level and unmasked codewords of the code
+     * @throws FormatException if the dimension is not that of a version, or the format or version
+     *                         information cannot be read
+     */
+    static SampledCodewords read(CodeModules modules, int[] keyArr) throws FormatException {
+        int dimension = modules.getDimension();
+        if (dimension < 21 || (dimension & 0x03) != 1) {
+            throw FormatException.getFormatInstance();
+        }
+        // The key mask flips the version information too, so both are read before it is removed
+        FormatInformation formatInfo = readFormatInformation(modules);
+        Version version = readVersion(modules);
+        BitMatrix mask = KeyMask.forKey(keyArr).get(version, formatInfo.getDataMask());
+        BitMatrix functionPattern = version.buildFunctionPattern();
+
+        boolean readingUp = true;
+        byte[] result = new byte[version.getTotalCodewords()];
+        byte[] confidences = modules.hasConfidence() ? new byte[result.length] : null;
+        int resultOffset = 0;
+        int currentByte = 0;
+        int currentConfidence = 255;
+        int bitsRead = 0;
+        // Columns in pairs from right to left, skipping the vertical timing pattern, alternately upwards and downwards
+        for (int j = dimension - 1; j > 0; j -= 2) {
+            if (j == 6) {
+                j--;
+            }
+            for (int count = 0; count < dimension; count++) {
+                int i = readingUp ? dimension - 1 - count : count;
+                for (int col = 0; col < 2; col++) {
+                    int x = j - col;
+                    if (functionPattern.get(x, i)) {
+                        continue;
+                    }
+                    currentByte <<= 1;
+                    if (modules.isDark(x, i) != mask.get(x, i)) {
+                        currentByte |= 1;
+                    }
+                    if (confidences != null) {
+                        currentConfidence = Math.min(currentConfidence, modules.getConfidence(x, i));
+                    }
+                    if (++bitsRead == 8) {
+                        if (confidences != null) {
+                            confidences[resultOffset] = (byte) currentConfidence;
+                            currentConfidence = 255;
+                        }
+                        result[resultOffset++] = (byte) currentByte;
+                        bitsRead = 0;
+                        currentByte = 0;
+                    }
+                }
+            }
+            readingUp = !readingUp;
+        }
+        if (resultOffset != version.getTotalCodewords()) {
+            throw FormatException.getFormatInstance();
+        }
+        return new SampledCodewords(version, formatInfo.getErrorCorrectionLevel(), result, confidences);
+    }
+
+    /* Both copies of the format information, as BitMatrixParser reads them */
+    private static FormatInformation readFormatInformation(CodeModules modules) throws FormatException {
+        int formatInfoBits1 = 0;
+        for (int i = 0; i < 6; i++) {
+            formatInfoBits1 = copyBit(modules, i, 8, formatInfoBits1);
+        }
+        // Skipping the timing pattern
+        formatInfoBits1 = copyBit(modules, 7, 8, formatInfoBits1);
+        formatInfoBits1 = copyBit(modules, 8, 8, formatInfoBits1);
+        formatInfoBits1 = copyBit(modules, 8, 7, formatInfoBits1);
+        for (int j = 5; j >= 0; j--) {
+            formatInfoBits1 = copyBit(modules, 8, j, formatInfoBits1);
+        }
+
+        int dimension = modules.getDimension();
+        int formatInfoBits2 = 0;
+        for (int j = dimension - 1; j >= dimension - 7; j--) {
+            formatInfoBits2 = copyBit(modules, 8, j, formatInfoBits2);
+        }
+        for (int i = dimension - 8; i < dimension; i++) {
+            formatInfoBits2 = copyBit(modules, i, 8, formatInfoBits2);
+        }
+
+        FormatInformation formatInfo = FormatInformation.decodeFormatInformation(formatInfoBits1, formatInfoBits2);
+        if (formatInfo == null) {
+            throw FormatException.getFormatInstance();
+        }
+        return formatInfo;
+    }
+
+    /* The version information top right, or else bottom left, from version 7 on */
+    private static Version readVersion(CodeModules modules) throws FormatException {
+        int dimension = modules.getDimension();
+        int provisionalVersion = (dimension - 17) / 4;
+        if (provisionalVersion <= 6) {
+            return Version.getVersionForNumber(provisionalVersion);
+        }
+
+        int ijMin = dimension - 11;
+        int versionBits = 0;
+        for (int j = 5; j >= 0; j--) {
+            for (int i = dimension - 9; i >= ijMin; i--) {
+                versionBits = copyBit(modules, i, j, versionBits);
+            }
+        }
+        Version version = Version.decodeVersionInformation(versionBits);
+        if (version != null && version.getDimensionForVersion() == dimension) {
+            return version;
+        }
+
+        versionBits = 0;
+        for (int i = 5; i >= 0; i--) {
+            for (int j = dimension - 9; j >= ijMin; j--) {
+                versionBits = copyBit(modules, i, j, versionBits);
+            }
+        }
+        version = Version.decodeVersionInformation(versionBits);
+        if (version != null && version.getDimensionForVersion() == dimension) {
+            return version;
+        }
+        throw FormatException.getFormatInstance();
+    }
+
+    private static int copyBit(CodeModules modules, int x, int y, int bits) {
+        return modules.isDark(x, y) ? (bits << 1) | 0x1 : bits << 1;
+    }
+
+    /**
+     * @return the version of the code
+     */
+    Version getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the error correction level of the code
+     */
+    ErrorCorrectionLevel getErrorCorrectionLevel() {
+        return ecLevel;
+    }
+
+    /**
+     * @return the codewords, interleaved as they are in the code, with both masks removed
+     */
+    byte[] getCodewords() {
+        return codewords;
+    }
+
+    /**
+     * @return for each codeword, interleaved as the codewords are, the lowest confidence of its
+     *         modules, 0 to 255 as an unsigned byte; null if the modules do not tell their confidence
+     */
+    byte[] getConfidences() {
+        return confidences;
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.ChecksumException;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.ResultMetadataType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decodes several {@link DecodeStrategy} variants of the same image concurrently on a
+ * shared pool and returns the first successful result.
+ *
+ * The attempts which lose the race are cancelled cooperatively: each one checks a shared
+ * flag between binarization, detection and decoding, and stops at the next stage boundary.
+ * The number of races running at the same time is bounded, so that racing cannot take
+ * the whole pool away from other requests. A request which finds no free race slot decodes
+ * its variants one after the other on the calling thread instead.
+ */
+public final class ScQRCodeRacer {
+
+    private final ExecutorService executor;
+    private final int maxConcurrentRaces;
+    private final Semaphore racePermits;
+    private final List<DecodeStrategy> strategies;
+    private final DecodeObserver observer;
+
+    /**
+     * @param executor the pool on which the variants are decoded
+     * @param maxConcurrentRaces how many races may run at the same time
+     * @param strategies the variants to race, in the order they are tried when no race slot is free
+     */
+    public ScQRCodeRacer(ExecutorService executor, int maxConcurrentRaces, List<DecodeStrategy> strategies) {
+        this(executor, maxConcurrentRaces, strategies, DecodeObserver.NOOP);
+    }
+
+    /**
+     * @param executor the pool on which the variants are decoded
+     * @param maxConcurrentRaces how many races may run at the same time
+     * @param strategies the variants to race, in the order they are tried when no race slot is free
+     * @param observer receives the time spent in each decode stage of every variant, and each decoded code
+     */
+    public ScQRCodeRacer(ExecutorService executor, int maxConcurrentRaces, List<DecodeStrategy> strategies,
+                         DecodeObserver observer) {
+        if (maxConcurrentRaces < 1 || strategies.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        this.executor = executor;
+        this.maxConcurrentRaces = maxConcurrentRaces;
+        this.racePermits = new Semaphore(maxConcurrentRaces);
+        this.strategies = List.copyOf(strategies);
+        this.observer = observer;
+    }
+
+    /**
+     * Decodes the image with all configured strategies and returns the first success.
+     *
+     * @param source the luminance of the image to decode
+     * @param hints decoding hints, may be null
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @param metadata the metadata the result should carry
+     * @return the first successfully decoded result
+     * @throws NotFoundException if no variant contains a QR code
+     * @throws ChecksumException if a QR code was found, but could not be error corrected
+     * @throws FormatException if a QR code was found, but could not be parsed
+     */
+    public ScQRResult race(LuminanceSource source, Map<DecodeHintType, ?> hints, int[] keyArr,
+                           Set<ResultMetadataType> metadata)
+            throws NotFoundException, ChecksumException, FormatException {
+        return race(source, hints, keyArr, metadata, observer);
+    }
+
+    /**
+     * Decodes the image with all configured strategies and returns the first success, reporting
+     * to the given observer instead of the one of the racer. Callbacks of concurrently decoded
+     * variants arrive on several threads at once.
+     *
+     * @param source the luminance of the image to decode
+     * @param hints decoding hints, may be null
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @param metadata the metadata the result should carry
+     * @param observer receives the decode stages of every variant, each decoded code and the winning strategy
+     * @return the first successfully decoded result
+     * @throws NotFoundException if no variant contains a QR code
+     * @throws ChecksumException if a QR code was found, but could not be error corrected
+     * @throws FormatException if a QR code was found, but could not be parsed
+     */
+    public ScQRResult race(LuminanceSource source, Map<DecodeHintType, ?> hints, int[] keyArr,
+                           Set<ResultMetadataType> metadata, DecodeObserver observer)
+            throws NotFoundException, ChecksumException, FormatException {
+        if (!racePermits.tryAcquire()) {
+            return decodeInTurn(source, hints, keyArr, metadata, observer);
+        }
+        try {
+            return decodeConcurrently(source, hints, keyArr, metadata, observer);
+        } finally {
+            racePermits.release();
+        }
+    }
+
+    /**
+     * @return how many races are running at this moment
+     */
+    public int getActiveRaces() {
+        return maxConcurrentRaces - racePermits.availablePermits();
+    }
+
+    private ScQRResult decodeConcurrently(LuminanceSource source, Map<DecodeHintType, ?> hints, int[] keyArr,
+                                          Set<ResultMetadataType> metadata, DecodeObserver observer)
+            throws NotFoundException, ChecksumException, FormatException {
+        AtomicBoolean finished = new AtomicBoolean();
+        CompletionService<ScQRResult> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<ScQRResult>> futures = new ArrayList<>(strategies.size());
+        List<DecodeStrategy> submitted = new ArrayList<>(strategies.size());
+        try {
+            for (DecodeStrategy strategy : strategies) {
+                if (strategy.supports(source)) {
+                    futures.add(completionService.submit(() -> new ScQRCodeReader(true, observer)
+                            .decodeNow(strategy.toBitmap(source), hints, keyArr, metadata, finished::get)));
+                    submitted.add(strategy);
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            // The pool is shutting down; whatever was submitted still gets its chance
+            if (futures.isEmpty()) {
+                return decodeInTurn(source, hints, keyArr, metadata, observer);
+            }
+        }
+
+        ReaderException failure = null;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Future<ScQRResult> done = completionService.take();
+                try {
+                    ScQRResult result = done.get();
+                    observer.strategySucceeded(submitted.get(futures.indexOf(done)));
+                    return result;
+                } catch (ExecutionException e) {
+                    failure = moreSpecific(failure, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw NotFoundException.getNotFoundInstance();
+        } finally {
+            finished.set(true);
+            for (Future<ScQRResult> future : futures) {
+                future.cancel(true);
+            }
+        }
+        throw rethrow(failure);
+    }
+
+    private ScQRResult decodeInTurn(LuminanceSource source, Map<DecodeHintType, ?> hints, int[] keyArr,
+                                    Set<ResultMetadataType> metadata, DecodeObserver observer)
+            throws NotFoundException, ChecksumException, FormatException {
+        ScQRCodeReader reader = new ScQRCodeReader(true, observer);
+        ReaderException failure = null;
+        for (DecodeStrategy strategy : strategies) {
+            if (!strategy.supports(source)) {
+                continue;
+            }
+            try {
+                ScQRResult result = reader.decodeNow(strategy.toBitmap(source), hints, keyArr, metadata, () -> false);
+                observer.strategySucceeded(strategy);
+                return result;
+            } catch (NotFoundException | ChecksumException | FormatException e) {
+                failure = moreSpecific(failure, e);
+            }
+        }
+        throw rethrow(failure);
+    }
+
+    /*
+     * A checksum failure says more than a format failure, which says more than not finding
+     * a code at all. Report the most specific failure of all attempts.
+     */
+    private static ReaderException moreSpecific(ReaderException current, Throwable candidate)
+            throws NotFoundException, ChecksumException, FormatException {
+        if (!(candidate instanceof ReaderException)) {
+            if (candidate instanceof RuntimeException) {
+                throw (RuntimeException) candidate;
+            }
+            throw new IllegalStateException(candidate);
+        }
+        ReaderException next = (ReaderException) candidate;
+        if (current == null || rank(next) > rank(current)) {
+            return next;
+        }
+        return current;
+    }
+
+    /*
+     * Throws the failure if it is a checksum or format failure, and otherwise returns
+     * the not-found failure for the caller to throw.
+     */
+    private static NotFoundException rethrow(ReaderException failure) throws ChecksumException, FormatException {
+        if (failure instanceof ChecksumException) {
+            throw (ChecksumException) failure;
+        }
+        if (failure instanceof FormatException) {
+            throw (FormatException) failure;
+        }
+        return NotFoundException.getNotFoundInstance();
+    }
+
+    private static int rank(ReaderException e) {
+        if (e instanceof ChecksumException) {
+            return 2;
+        }
+        if (e instanceof FormatException) {
+            return 1;
+        }
+        return 0;
+    }
+
+}
@@ -8,8 +8,12 @@ import com.google.zxing.qrcode.QRCodeReader;
 import com.google.zxing.qrcode.decoder.QRCodeDecoderMetaData;
 import com.google.zxing.qrcode.detector.Detector;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
 
 /**
  * Enhanced QR Code Reader which makes reading QR code possible only
@@ -21,7 +25,31 @@ public class ScQRCodeReader extends QRCodeReader {
 
     private static final ResultPoint[] NO_POINTS = new ResultPoint[0];
 
-    private final ScQRDecoder decoder = new ScQRDecoder();
+    private static final BooleanSupplier NEVER_CANCELLED = () -> false;
+
+    private final ScQRDecoder decoder;
+
+    private final DecodeObserver observer;
+
+    public ScQRCodeReader() {
+        this(true);
+    }
+
+    /**
+     * @param tryMirrored whether the decoder retries a failed code as a mirrored one
+     */
+    public ScQRCodeReader(boolean tryMirrored) {
+        this(tryMirrored, DecodeObserver.NOOP);
+    }
+
+    /**
+     * @param tryMirrored whether the decoder retries a failed code as a mirrored one
+     * @param observer receives the time spent in each decode stage, and each decoded code
+     */
+    public ScQRCodeReader(boolean tryMirrored, DecodeObserver observer) {
+        decoder = new ScQRDecoder(tryMirrored, observer);
+        this.observer = observer;
+    }
 
     private static BitMatrix extractPureBits(BitMatrix image) throws NotFoundException {
 
@@ -127,6 +155,64 @@ public class ScQRCodeReader extends QRCodeReader {
         return (x - leftTopBlack[0]) / 7.0f;
     }
 
+    /*
+     * Cheap check whether the image holds an axis-aligned, non-rotated symbol surrounded by a quiet
+     * zone, as screenshots and rendered PNGs do. Such images can be read by extractPureBits(),
+     * which skips finder pattern detection and perspective sampling. Only the corners of the
+     * symbol are looked at: the three finder patterns must sit exactly where an upright square
+     * symbol would have them.
+     */
+    private static boolean looksPure(BitMatrix image) {
+        int[] leftTopBlack = image.getTopLeftOnBit();
+        int[] rightBottomBlack = image.getBottomRightOnBit();
+        if (leftTopBlack == null || rightBottomBlack == null) {
+            return false;
+        }
+        int left = leftTopBlack[0];
+        int top = leftTopBlack[1];
+        int bottom = rightBottomBlack[1];
+        // The bottom-right module may be white, so take the symbol to be square
+        int right = left + (bottom - top);
+        if (left == 0 || top == 0 || right >= image.getWidth() - 1 || bottom >= image.getHeight() - 1) {
+            // No quiet zone
+            return false;
+        }
+        float moduleSize;
+        try {
+            moduleSize = moduleSize(leftTopBlack, image);
+        } catch (NotFoundException e) {
+            return false;
+        }
+        if (moduleSize < 1.0f || right - left + 1 < 21 * moduleSize) {
+            return false;
+        }
+        float finderSize = 7 * moduleSize;
+        return isFinderPatternAt(image, left, top, moduleSize)
+                && isFinderPatternAt(image, right + 1 - finderSize, top, moduleSize)
+                && isFinderPatternAt(image, left, bottom + 1 - finderSize, moduleSize);
+    }
+
+    /*
+     * Samples the centres of the 7x7 modules starting at the given corner and compares them with
+     * the finder pattern: a black ring, a white ring and a black 3x3 core. A couple of modules may
+     * differ, to allow for anti-aliased edges.
+     */
+    private static boolean isFinderPatternAt(BitMatrix image, float left, float top, float moduleSize) {
+        int mismatches = 0;
+        for (int row = 0; row < 7; row++) {
+            int y = (int) (top + (row + 0.5f) * moduleSize);
+            for (int col = 0; col < 7; col++) {
+                int x = (int) (left + (col + 0.5f) * moduleSize);
+                boolean ring = row == 0 || row == 6 || col == 0 || col == 6;
+                boolean core = row >= 2 && row <= 4 && col >= 2 && col <= 4;
+                if (image.get(x, y) != (ring || core) && ++mismatches > 2) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     @Override
     public Result decode(BinaryBitmap image) throws NotFoundException, ChecksumException, FormatException {
         return decodeNow(image, null, null);
@@ -138,22 +224,416 @@ public class ScQRCodeReader extends QRCodeReader {
 
     public final Result decodeNow(BinaryBitmap image, Map<DecodeHintType, ?> hints, int[] keyArr)
             throws NotFoundException, ChecksumException, FormatException {
+        return decodeNow(image, hints, keyArr, NEVER_CANCELLED);
+    }
+
+    /**
+     * Decodes the image like {@link #decodeNow(BinaryBitmap, Map, int[])}, but polls the given flag
+     * between binarization, detection and decoding. This lets a caller which races several variants
+     * of the same image stop the losing attempts at the next stage boundary.
+     *
+     * @param image the image to decode
+     * @param hints decoding hints, may be null
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @param cancelled returns true once the result of this attempt is no longer needed
+     * @return the decoded result
+     * @throws NotFoundException if no QR code is found, or if the attempt was cancelled
+     */
+    public final Result decodeNow(BinaryBitmap image, Map<DecodeHintType, ?> hints, int[] keyArr,
+                                  BooleanSupplier cancelled)
+            throws NotFoundException, ChecksumException, FormatException {
+        return decodeNow(image, hints, keyArr, cancelled, ScQRCodeReader::toResult);
+    }
+
+    /**
+     * Decodes the image like {@link #decodeNow(BinaryBitmap, Map, int[], BooleanSupplier)}, but to a
+     * lean result which only carries the requested metadata.
+     *
+     * @param image the image to decode
+     * @param hints decoding hints, may be null
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @param metadata the metadata to keep, see {@link #tryDecode(BinaryBitmap, Map, int[], Set, long)}
+     * @param cancelled returns true once the result of this attempt is no longer needed
+     * @return the decoded result
+     * @throws NotFoundException if no QR code is found, or if the attempt was cancelled
+     */
+    public final ScQRResult decodeNow(BinaryBitmap image, Map<DecodeHintType, ?> hints, int[] keyArr,
+                                      Set<ResultMetadataType> metadata, BooleanSupplier cancelled)
+            throws NotFoundException, ChecksumException, FormatException {
+        return decodeNow(image, hints, keyArr, cancelled, leanResult(metadata));
+    }
+
+    private <T> T decodeNow(BinaryBitmap image, Map<DecodeHintType, ?> hints, int[] keyArr,
+                            BooleanSupplier cancelled, ResultBuilder<T> resultBuilder)
+            throws NotFoundException, ChecksumException, FormatException {
         DecoderResult decoderResult;
         ResultPoint[] points;
+        BitMatrix blackMatrix = binarize(image);
+        checkCancelled(cancelled);
         if (hints != null && hints.containsKey(DecodeHintType.PURE_BARCODE)) {
-            BitMatrix bits = extractPureBits(image.getBlackMatrix());
-            decoderResult = decoder.decode(bits, hints, keyArr);
+            BitMatrix bits = samplePureBits(blackMatrix);
+            checkCancelled(cancelled);
+            decoderResult = decoder.decode(CodeModules.of(bits), hints, keyArr);
             points = NO_POINTS;
         } else {
-            DetectorResult detectorResult = new Detector(image.getBlackMatrix()).detect(hints);
-            decoderResult = decoder.decode(detectorResult.getBits(), hints, keyArr);
+            decoderResult = null;
+            points = NO_POINTS;
+            if (looksPure(blackMatrix)) {
+                // Synthetic image: try reading the modules off directly, detection is the fallback
+                try {
+                    decoderResult = decoder.decode(CodeModules.of(samplePureBits(blackMatrix)), hints, keyArr);
+                } catch (NotFoundException | FormatException | ChecksumException e) {
+                    checkCancelled(cancelled);
+                }
+            }
+            if (decoderResult == null) {
+                DetectorResult detectorResult = detect(blackMatrix, hints);
+                checkCancelled(cancelled);
+                decoderResult = decoder.decode(CodeModules.of(detectorResult.getBits()), hints, keyArr);
+                points = detectorResult.getPoints();
+            }
+        }
+
+        return resultBuilder.build(decoderResult, points);
+    }
+
+    /**
+     * Decodes the image like {@link #decodeNow(BinaryBitmap, Map, int[])}, but reports expected
+     * failures as the outcome instead of throwing, with the stage which failed. See
+     * {@link ScQRDecoder#tryDecode(BitMatrix, Map, int[])}.
+     *
+     * @param image the image to decode
+     * @param hints decoding hints, may be null
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @return the decoded result, or why and in which stage decoding failed
+     */
+    public DecodeOutcome<Result> tryDecode(BinaryBitmap image, Map<DecodeHintType, ?> hints, int[] keyArr) {
+        return tryDecode(image, hints, keyArr, Long.MAX_VALUE);
+    }
+
+    /**
+     * Decodes the image like {@link #tryDecode(BinaryBitmap, Map, int[])}, but gives up with
+     * {@link DecodeOutcome.Status#TIMEOUT} once the deadline has passed. The deadline is checked
+     * between binarization, detection and decoding, and the timeout reports the stage which was
+     * running when it passed.
+     *
+     * @param image the image to decode
+     * @param hints decoding hints, may be null
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @param deadlineNanos the {@link System#nanoTime()} after which to give up, or
+     *                      {@link Long#MAX_VALUE} for no deadline
+     * @return the decoded result, or why and in which stage decoding failed
+     */
+    public DecodeOutcome<Result> tryDecode(BinaryBitmap image, Map<DecodeHintType, ?> hints, int[] keyArr,
+                                           long deadlineNanos) {
+        return tryDecode(image, null, hints, keyArr, deadlineNanos, ScQRCodeReader::toResult);
+    }
+
+    /**
+     * Decodes the image like {@link #tryDecode(BinaryBitmap, Map, int[], long)}, but to a lean
+     * result which only carries the requested metadata. Callers which only need the text pass an
+     * empty set, and no metadata map is built.
+     *
+     * @param image the image to decode
+     * @param hints decoding hints, may be null
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @param metadata the metadata to keep; byte segments, error correction level, structured append
+     *                 and symbology identifier are supported
+     * @param deadlineNanos the {@link System#nanoTime()} after which to give up, or
+     *                      {@link Long#MAX_VALUE} for no deadline
+     * @return the decoded result, or why and in which stage decoding failed
+     */
+    public DecodeOutcome<ScQRResult> tryDecode(BinaryBitmap image, Map<DecodeHintType, ?> hints, int[] keyArr,
+                                               Set<ResultMetadataType> metadata, long deadlineNanos) {
+        return tryDecode(image, null, hints, keyArr, deadlineNanos, leanResult(metadata));
+    }
+
+    /**
+     * Decodes the image like {@link #tryDecode(BinaryBitmap, Map, int[], Set, long)}, but if error
+     * correction fails on the modules the detector sampled, reads them again off the luminance,
+     * with how far each was from its threshold, so that the least clearly read codewords can be
+     * erased. See {@link ErasureDecoder}.
+     *
+     * @param image the image to decode
+     * @param luminance the luminance the image is binarized from, see
+     *                  {@link DecodeStrategy#luminance(LuminanceSource)}
+     * @param hints decoding hints, may be null
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @param metadata the metadata to keep, see {@link #tryDecode(BinaryBitmap, Map, int[], Set, long)}
+     * @param deadlineNanos the {@link System#nanoTime()} after which to give up, or
+     *                      {@link Long#MAX_VALUE} for no deadline
+     * @return the decoded result, or why and in which stage decoding failed
+     */
+    public DecodeOutcome<ScQRResult> tryDecode(BinaryBitmap image, LuminanceSource luminance,
+                                               Map<DecodeHintType, ?> hints, int[] keyArr,
+                                               Set<ResultMetadataType> metadata, long deadlineNanos) {
+        return tryDecode(image, luminance, hints, keyArr, deadlineNanos, leanResult(metadata));
+    }
+
+    private <T> DecodeOutcome<T> tryDecode(BinaryBitmap image, LuminanceSource luminance,
+                                           Map<DecodeHintType, ?> hints, int[] keyArr,
+                                           long deadlineNanos, ResultBuilder<T> resultBuilder) {
+        BitMatrix blackMatrix;
+        try {
+            blackMatrix = binarize(image);
+        } catch (NotFoundException e) {
+            return DecodeOutcome.failure(DecodeOutcome.Status.NOT_FOUND, DecodeOutcome.Stage.BINARIZATION);
+        }
+        if (isPast(deadlineNanos)) {
+            return DecodeOutcome.failure(DecodeOutcome.Status.TIMEOUT, DecodeOutcome.Stage.BINARIZATION);
+        }
+
+        boolean pure = hints != null && hints.containsKey(DecodeHintType.PURE_BARCODE);
+        DecodeOutcome<DecoderResult> pureOutcome = null;
+        if (pure || looksPure(blackMatrix)) {
+            BitMatrix bits = null;
+            try {
+                bits = samplePureBits(blackMatrix);
+            } catch (NotFoundException e) {
+                pureOutcome = DecodeOutcome.failure(DecodeOutcome.Status.NOT_FOUND, DecodeOutcome.Stage.DETECTION);
+            }
+            if (bits != null) {
+                pureOutcome = decoder.tryDecode(CodeModules.of(bits), hints, keyArr);
+                if (pureOutcome.isSuccess()) {
+                    return DecodeOutcome.success(resultBuilder.build(pureOutcome.getResult(), NO_POINTS));
+                }
+            }
+            if (pure) {
+                return DecodeOutcome.failure(pureOutcome.getStatus(), pureOutcome.getFailedStage());
+            }
+            // Synthetic image which could not be read off directly: detection is the fallback
+            if (isPast(deadlineNanos)) {
+                return DecodeOutcome.failure(DecodeOutcome.Status.TIMEOUT, pureOutcome.getFailedStage());
+            }
+        }
+
+        DecodeOutcome<DecoderResult> outcome;
+        ResultPoint[] points = NO_POINTS;
+        try {
+            DetectorResult detectorResult = detect(blackMatrix, hints);
+            if (isPast(deadlineNanos)) {
+                return DecodeOutcome.failure(DecodeOutcome.Status.TIMEOUT, DecodeOutcome.Stage.DETECTION);
+            }
+            outcome = decoder.tryDecode(CodeModules.of(detectorResult.getBits()), hints, keyArr);
             points = detectorResult.getPoints();
+            if (outcome.getStatus() == DecodeOutcome.Status.CHECKSUM && luminance != null
+                    && !isPast(deadlineNanos)) {
+                outcome = decodeWithConfidence(detectorResult, luminance, hints, keyArr, outcome);
+            }
+        } catch (NotFoundException e) {
+            outcome = DecodeOutcome.failure(DecodeOutcome.Status.NOT_FOUND, DecodeOutcome.Stage.DETECTION);
+        } catch (FormatException e) {
+            outcome = DecodeOutcome.failure(DecodeOutcome.Status.FORMAT, DecodeOutcome.Stage.DETECTION);
         }
+        if (outcome.isSuccess()) {
+            return DecodeOutcome.success(resultBuilder.build(outcome.getResult(), points));
+        }
+        outcome = outcome.moreSpecific(pureOutcome);
+        return DecodeOutcome.failure(outcome.getStatus(), outcome.getFailedStage());
+    }
 
-        // If the code was mirrored: swap the bottom-left and the top-right points.
-        if (decoderResult.getOther() instanceof com.google.zxing.qrcode.decoder.QRCodeDecoderMetaData) {
-            ((QRCodeDecoderMetaData) decoderResult.getOther()).applyMirroredCorrection(points);
+    /**
+     * Decodes a large image like {@link #tryDecode(BinaryBitmap, Map, int[], Set, long)}, but
+     * locates the code on downsampled copies of it, coarsest first, and samples its modules at
+     * full resolution. See {@link PyramidDetector}. The image is not binarized at full
+     * resolution, so callers fall back to the decode strategies if this fails.
+     *
+     * @param source the full resolution luminance of the image
+     * @param hints decoding hints, may be null
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @param metadata the metadata to keep, see {@link #tryDecode(BinaryBitmap, Map, int[], Set, long)}
+     * @param deadlineNanos the {@link System#nanoTime()} after which to give up, or
+     *                      {@link Long#MAX_VALUE} for no deadline
+     * @return the decoded result, or why and in which stage decoding failed; not found if the
+     *         image is too small to downsample
+     */
+    public DecodeOutcome<ScQRResult> tryDecodePyramid(LuminanceSource source, Map<DecodeHintType, ?> hints,
+                                                      int[] keyArr, Set<ResultMetadataType> metadata,
+                                                      long deadlineNanos) {
+        PyramidDetector pyramid = new PyramidDetector(source);
+        DecodeOutcome<DecoderResult> failure = null;
+        for (int level = pyramid.getLevels(); level > 0; level--) {
+            if (isPast(deadlineNanos)) {
+                // The coarser level was still being decoded, or nothing has started yet
+                return DecodeOutcome.failure(DecodeOutcome.Status.TIMEOUT,
+                        failure != null ? failure.getFailedStage() : DecodeOutcome.Stage.BINARIZATION);
+            }
+            DecodeOutcome<DecoderResult> outcome;
+            ResultPoint[] points = NO_POINTS;
+            try {
+                BitMatrix blackMatrix = binarizeLevel(pyramid, level);
+                if (isPast(deadlineNanos)) {
+                    return DecodeOutcome.failure(DecodeOutcome.Status.TIMEOUT, DecodeOutcome.Stage.BINARIZATION);
+                }
+                ModuleGrid grid = locateLevel(pyramid, level, blackMatrix, hints);
+                if (isPast(deadlineNanos)) {
+                    return DecodeOutcome.failure(DecodeOutcome.Status.TIMEOUT, DecodeOutcome.Stage.DETECTION);
+                }
+                // The modules are read off the full resolution luminance as the codewords are read
+                outcome = decoder.tryDecode(grid.sample(source), hints, keyArr);
+                points = grid.getPoints();
+            } catch (NotFoundException e) {
+                outcome = DecodeOutcome.failure(DecodeOutcome.Status.NOT_FOUND, DecodeOutcome.Stage.DETECTION);
+            } catch (FormatException e) {
+                outcome = DecodeOutcome.failure(DecodeOutcome.Status.FORMAT, DecodeOutcome.Stage.DETECTION);
+            }
+            if (outcome.isSuccess()) {
+                return DecodeOutcome.success(leanResult(metadata).build(outcome.getResult(), points));
+            }
+            // A finer level places the modules more precisely
+            failure = failure == null ? outcome : failure.moreSpecific(outcome);
+        }
+        if (failure == null) {
+            return DecodeOutcome.failure(DecodeOutcome.Status.NOT_FOUND, DecodeOutcome.Stage.DETECTION);
+        }
+        return DecodeOutcome.failure(failure.getStatus(), failure.getFailedStage());
+    }
+
+    /**
+     * Locates the QR code in the image without decoding it, so that the codes of many images can
+     * be decoded together by {@link #tryDecodeAll(List, Map, int[], Set)}. Synthetic images are
+     * read off directly, with detection as the fallback.
+     *
+     * @param image the image to locate the code in
+     * @param hints decoding hints, may be null
+     * @return the modules of the code and where it is, or why and in which stage it was not found
+     */
+    public DecodeOutcome<DetectorResult> tryLocate(BinaryBitmap image, Map<DecodeHintType, ?> hints) {
+        BitMatrix blackMatrix;
+        try {
+            blackMatrix = binarize(image);
+        } catch (NotFoundException e) {
+            return DecodeOutcome.failure(DecodeOutcome.Status.NOT_FOUND, DecodeOutcome.Stage.BINARIZATION);
+        }
+        boolean pure = hints != null && hints.containsKey(DecodeHintType.PURE_BARCODE);
+        if (pure || looksPure(blackMatrix)) {
+            try {
+                return DecodeOutcome.success(new DetectorResult(samplePureBits(blackMatrix), NO_POINTS));
+            } catch (NotFoundException e) {
+                if (pure) {
+                    return DecodeOutcome.failure(DecodeOutcome.Status.NOT_FOUND, DecodeOutcome.Stage.DETECTION);
+                }
+            }
+        }
+        try {
+            return DecodeOutcome.success(detect(blackMatrix, hints));
+        } catch (NotFoundException e) {
+            return DecodeOutcome.failure(DecodeOutcome.Status.NOT_FOUND, DecodeOutcome.Stage.DETECTION);
+        } catch (FormatException e) {
+            return DecodeOutcome.failure(DecodeOutcome.Status.FORMAT, DecodeOutcome.Stage.DETECTION);
         }
+    }
+
+    /**
+     * Decodes located codes together, see {@link ScQRDecoder#tryDecodeAll(List, Map, int[])}, to lean
+     * results like {@link #tryDecode(BinaryBitmap, Map, int[], Set, long)}.
+     *
+     * @param located the codes found by {@link #tryLocate(BinaryBitmap, Map)}
+     * @param hints decoding hints, may be null
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @param metadata the metadata to keep, see {@link #tryDecode(BinaryBitmap, Map, int[], Set, long)}
+     * @return for each code in order, the decoded result, or why and in which stage decoding failed
+     */
+    public List<DecodeOutcome<ScQRResult>> tryDecodeAll(List<DetectorResult> located, Map<DecodeHintType, ?> hints,
+                                                        int[] keyArr, Set<ResultMetadataType> metadata) {
+        List<BitMatrix> codes = new ArrayList<>(located.size());
+        for (DetectorResult detectorResult : located) {
+            codes.add(detectorResult.getBits());
+        }
+        List<DecodeOutcome<DecoderResult>> outcomes = decoder.tryDecodeAll(codes, hints, keyArr);
+        ResultBuilder<ScQRResult> resultBuilder = leanResult(metadata);
+        List<DecodeOutcome<ScQRResult>> results = new ArrayList<>(outcomes.size());
+        for (int i = 0; i < outcomes.size(); i++) {
+            DecodeOutcome<DecoderResult> outcome = outcomes.get(i);
+            results.add(outcome.isSuccess()
+                    ? DecodeOutcome.success(resultBuilder.build(outcome.getResult(), located.get(i).getPoints()))
+                    : DecodeOutcome.failure(outcome.getStatus(), outcome.getFailedStage()));
+        }
+        return results;
+    }
+
+    /*
+     * Reads the modules of a detected code again off the luminance, this time with how clearly
+     * each was read, which the sampled bits do not tell, and decodes them with erasures.
+     */
+    private DecodeOutcome<DecoderResult> decodeWithConfidence(DetectorResult detectorResult, LuminanceSource luminance,
+                                                              Map<DecodeHintType, ?> hints, int[] keyArr,
+                                                              DecodeOutcome<DecoderResult> failure) {
+        ResultPoint[] points = detectorResult.getPoints();
+        ModuleGrid grid = new ModuleGrid(points[0], points[1], points[2], points.length > 3 ? points[3] : null,
+                detectorResult.getBits().getHeight());
+        try {
+            DecodeOutcome<DecoderResult> outcome = decoder.tryDecode(grid.sample(luminance), hints, keyArr);
+            return outcome.isSuccess() ? outcome : failure;
+        } catch (NotFoundException e) {
+            return failure;
+        }
+    }
+
+    /*
+     * The stages of locating a code, timed for the observer.
+     */
+    private BitMatrix binarize(BinaryBitmap image) throws NotFoundException {
+        observer.stageStarted(DecodeObserver.Stage.BINARIZATION);
+        long start = System.nanoTime();
+        try {
+            return image.getBlackMatrix();
+        } finally {
+            observer.stageFinished(DecodeObserver.Stage.BINARIZATION, System.nanoTime() - start);
+        }
+    }
+
+    private BitMatrix samplePureBits(BitMatrix blackMatrix) throws NotFoundException {
+        observer.stageStarted(DecodeObserver.Stage.DETECTION);
+        long start = System.nanoTime();
+        try {
+            return extractPureBits(blackMatrix);
+        } finally {
+            observer.stageFinished(DecodeObserver.Stage.DETECTION, System.nanoTime() - start);
+        }
+    }
+
+    private DetectorResult detect(BitMatrix blackMatrix, Map<DecodeHintType, ?> hints)
+            throws NotFoundException, FormatException {
+        observer.stageStarted(DecodeObserver.Stage.DETECTION);
+        long start = System.nanoTime();
+        try {
+            return new Detector(blackMatrix).detect(hints);
+        } finally {
+            observer.stageFinished(DecodeObserver.Stage.DETECTION, System.nanoTime() - start);
+        }
+    }
+
+    private BitMatrix binarizeLevel(PyramidDetector pyramid, int level) throws NotFoundException {
+        observer.stageStarted(DecodeObserver.Stage.BINARIZATION);
+        long start = System.nanoTime();
+        try {
+            return pyramid.binarize(level);
+        } finally {
+            observer.stageFinished(DecodeObserver.Stage.BINARIZATION, System.nanoTime() - start);
+        }
+    }
+
+    private ModuleGrid locateLevel(PyramidDetector pyramid, int level, BitMatrix blackMatrix,
+                                   Map<DecodeHintType, ?> hints) throws NotFoundException, FormatException {
+        observer.stageStarted(DecodeObserver.Stage.DETECTION);
+        long start = System.nanoTime();
+        try {
+            return pyramid.locate(level, blackMatrix, hints);
+        } finally {
+            observer.stageFinished(DecodeObserver.Stage.DETECTION, System.nanoTime() - start);
+        }
+    }
+
+    private static boolean isPast(long deadlineNanos) {
+        return deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos > 0;
+    }
+
+    /*
+     * Builds the result of a decoded code, with the metadata the ZXing QRCodeReader attaches.
+     */
+    private static Result toResult(DecoderResult decoderResult, ResultPoint[] points) {
+        applyMirroredCorrection(decoderResult, points);
 
         Result result = new Result(decoderResult.getText(), decoderResult.getRawBytes(), points, BarcodeFormat.QR_CODE);
         List<byte[]> byteSegments = decoderResult.getByteSegments();
@@ -174,10 +654,138 @@ public class ScQRCodeReader extends QRCodeReader {
         return result;
     }
 
+    /**
+     * Locates the QR code in the image like {@link #decodeNow(BinaryBitmap, Map, int[])}, but
+     * returns a cursor which only decodes as much of the payload as the caller reads. See
+     * {@link ScQRDecoder#decodeLazily(BitMatrix, Map, int[])}.
+     *
+     * @param image the image to decode
+     * @param hints decoding hints, may be null
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @return a cursor positioned before the first segment of the code
+     * @throws NotFoundException if no QR code is found
+     */
+    public SegmentCursor decodeLazily(BinaryBitmap image, Map<DecodeHintType, ?> hints, int[] keyArr)
+            throws NotFoundException, ChecksumException, FormatException {
+        return decodeBits(image, hints, bits -> decoder.decodeLazily(bits, hints, keyArr));
+    }
+
+    /**
+     * Locates the QR code in the image like {@link #decodeNow(BinaryBitmap, Map, int[])}, but
+     * returns the raw bytes of its byte segments instead of text. See
+     * {@link ScQRDecoder#decodeBinary(BitMatrix, Map, int[])}.
+     *
+     * @param image the image to decode
+     * @param hints decoding hints, may be null
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @return the concatenated bytes of the byte segments, as a read-only buffer
+     * @throws NotFoundException if no QR code is found
+     */
+    public ByteBuffer decodeBinary(BinaryBitmap image, Map<DecodeHintType, ?> hints, int[] keyArr)
+            throws NotFoundException, ChecksumException, FormatException {
+        return decodeBits(image, hints, bits -> decoder.decodeBinary(bits, hints, keyArr));
+    }
+
+    /*
+     * Reads the modules off a synthetic image directly, with detection as the fallback, and
+     * decodes them.
+     */
+    private <T> T decodeBits(BinaryBitmap image, Map<DecodeHintType, ?> hints, BitsDecoder<T> bitsDecoder)
+            throws NotFoundException, ChecksumException, FormatException {
+        BitMatrix blackMatrix = binarize(image);
+        if (hints != null && hints.containsKey(DecodeHintType.PURE_BARCODE)) {
+            return bitsDecoder.decode(samplePureBits(blackMatrix));
+        }
+        if (looksPure(blackMatrix)) {
+            try {
+                return bitsDecoder.decode(samplePureBits(blackMatrix));
+            } catch (NotFoundException | FormatException | ChecksumException e) {
+                // Detection is the fallback
+            }
+        }
+        DetectorResult detectorResult = detect(blackMatrix, hints);
+        return bitsDecoder.decode(detectorResult.getBits());
+    }
+
+    /**
+     * Checks whether the image holds a QR code with the expected payload, without decoding it
+     * when its codewords are close enough to the expected ones. See
+     * {@link ScQRDecoder#verify(BitMatrix, String, Map, int[])}.
+     *
+     * @param image the image to check
+     * @param expected the payload the code should hold
+     * @param hints decoding hints, may be null
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     * @return whether the code holds the expected payload, and how many codewords differ
+     * @throws NotFoundException if no QR code is found
+     * @throws FormatException if the version or format information of the code cannot be read
+     */
+    public VerifyResult verify(BinaryBitmap image, String expected, Map<DecodeHintType, ?> hints, int[] keyArr)
+            throws NotFoundException, FormatException {
+        BitMatrix blackMatrix = binarize(image);
+        if (hints != null && hints.containsKey(DecodeHintType.PURE_BARCODE)) {
+            return decoder.verify(samplePureBits(blackMatrix), expected, hints, keyArr);
+        }
+        VerifyResult pureResult = null;
+        if (looksPure(blackMatrix)) {
+            try {
+                pureResult = decoder.verify(samplePureBits(blackMatrix), expected, hints, keyArr);
+                if (pureResult.isVerified()) {
+                    return pureResult;
+                }
+            } catch (NotFoundException | FormatException e) {
+                // Detection is the fallback
+            }
+        }
+        try {
+            DetectorResult detectorResult = detect(blackMatrix, hints);
+            return decoder.verify(detectorResult.getBits(), expected, hints, keyArr);
+        } catch (NotFoundException | FormatException e) {
+            if (pureResult != null) {
+                return pureResult;
+            }
+            throw e;
+        }
+    }
+
+    private static ResultBuilder<ScQRResult> leanResult(Set<ResultMetadataType> metadata) {
+        return (decoderResult, points) -> {
+            applyMirroredCorrection(decoderResult, points);
+            return ScQRResult.of(decoderResult, points, metadata);
+        };
+    }
+
+    /*
+     * If the code was mirrored: swap the bottom-left and the top-right points.
+     */
+    private static void applyMirroredCorrection(DecoderResult decoderResult, ResultPoint[] points) {
+        if (decoderResult.getOther() instanceof com.google.zxing.qrcode.decoder.QRCodeDecoderMetaData) {
+            ((QRCodeDecoderMetaData) decoderResult.getOther()).applyMirroredCorrection(points);
+        }
+    }
+
+    private static void checkCancelled(BooleanSupplier cancelled) throws NotFoundException {
+        if (cancelled.getAsBoolean()) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+    }
+
     @Override
     public void reset() {
         // do nothing
     }
 
+    /*
+     * Decodes the modules of a located code.
+     */
+    private interface BitsDecoder<T> {
+        T decode(BitMatrix bits) throws NotFoundException, ChecksumException, FormatException;
+    }
 
+    /*
+     * Builds the result of a decoded code.
+     */
+    private interface ResultBuilder<T> {
+        T build(DecoderResult decoderResult, ResultPoint[] points);
+    }
 }
@@ -0,0 +1,198 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.Writer;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+import com.google.zxing.qrcode.encoder.QRCode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This object renders a scrambled QR Code as a BitMatrix 2D array of greyscale values.
+ *
+ * The code is encoded as a regular QR code, and then the random key mask is applied to its
+ * data modules: a module in row R and column C of a code with dimension D is flipped once for
+ * every round k in which bit {@code R + C + k * 2D} of the key is set. This is the mask which
+ * {@link BitMatrixParser} removes again. Contents which need a version above
+ * {@link #getMaxVersion()}, whose mask would run past the end of the key, cannot be encoded. The finder, timing and alignment patterns
+ * and the format and version information are left as they are, so that any QR detector can
+ * locate the code.
+ *
+ * The mask only depends on R + C, so it is compiled into the flip of each diagonal, once per
+ * version and when that version is first encoded. A writer can be shared between threads.
+ */
+public final class ScQRCodeWriter implements Writer {
+
+    private static final int QUIET_ZONE_SIZE = 4;
+
+    private final int[] keyArr;
+
+    private final AtomicReferenceArray<CompiledMask> masks = new AtomicReferenceArray<>(41);
+
+    /**
+     * @param keyArr the 256-bit key as an array of 0s and 1s
+     */
+    public ScQRCodeWriter(int[] keyArr) {
+        this.keyArr = keyArr;
+    }
+
+    /**
+     * @return the highest version whose codes can be masked with the key, 27 for a 256-bit key
+     */
+    public int getMaxVersion() {
+        return KeyMask.maxVersion(keyArr.length);
+    }
+
+    @Override
+    public BitMatrix encode(String contents, BarcodeFormat format, int width, int height)
+            throws WriterException {
+        return encode(contents, format, width, height, null);
+    }
+
+    @Override
+    public BitMatrix encode(String contents, BarcodeFormat format, int width, int height,
+                            Map<EncodeHintType, ?> hints) throws WriterException {
+        if (contents.isEmpty()) {
+            throw new IllegalArgumentException("Found empty contents");
+        }
+        if (format != BarcodeFormat.QR_CODE) {
+            throw new IllegalArgumentException("Can only encode QR_CODE, but got " + format);
+        }
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Requested dimensions are too small: " + width + 'x' + height);
+        }
+
+        ErrorCorrectionLevel errorCorrectionLevel = ErrorCorrectionLevel.L;
+        int quietZone = QUIET_ZONE_SIZE;
+        if (hints != null) {
+            if (hints.containsKey(EncodeHintType.ERROR_CORRECTION)) {
+                errorCorrectionLevel = ErrorCorrectionLevel.valueOf(hints.get(EncodeHintType.ERROR_CORRECTION).toString());
+            }
+            if (hints.containsKey(EncodeHintType.MARGIN)) {
+                quietZone = Integer.parseInt(hints.get(EncodeHintType.MARGIN).toString());
+            }
+        }
+
+        return renderResult(encodeModules(contents, errorCorrectionLevel, hints), width, height, quietZone);
+    }
+
+    /**
+     * Encodes and scrambles the contents, without rendering them.
+     *
+     * @param contents the contents to encode
+     * @param ecLevel the error correction level
+     * @param hints encoding hints, e.g. the character set or version, may be null; without a
+     *              character set, contents outside ISO-8859-1 are encoded as UTF-8
+     * @return the scrambled modules, one bit per module and without quiet zone
+     * @throws WriterException if the contents cannot be encoded, or only in a version whose mask
+     *                         runs past the end of the key
+     */
+    public BitMatrix encodeModules(String contents, ErrorCorrectionLevel ecLevel, Map<EncodeHintType, ?> hints)
+            throws WriterException {
+        QRCode code = Encoder.encode(contents, ecLevel, encodingHints(contents, hints));
+        if (code.getVersion().getVersionNumber() > getMaxVersion()) {
+            throw new WriterException("Contents need version " + code.getVersion().getVersionNumber()
+                    + ", but the key can only mask versions up to " + getMaxVersion());
+        }
+        ByteMatrix matrix = code.getMatrix();
+        CompiledMask mask = mask(code.getVersion().getVersionNumber());
+        BitMatrix functionPattern = mask.functionPattern;
+        boolean[] flips = mask.diagonalFlips;
+
+        int dimension = matrix.getWidth();
+        BitMatrix modules = new BitMatrix(dimension);
+        for (int y = 0; y < dimension; y++) {
+            for (int x = 0; x < dimension; x++) {
+                boolean dark = matrix.get(x, y) == 1;
+                if (flips[x + y] && !functionPattern.get(x, y)) {
+                    dark = !dark;
+                }
+                if (dark) {
+                    modules.set(x, y);
+                }
+            }
+        }
+        return modules;
+    }
+
+    /*
+     * Copies the hints, adding UTF-8 as character set when none is given and the contents do not fit
+     * the default ISO-8859-1. Codes which can use the default do not pay for an ECI header.
+     */
+    static Map<EncodeHintType, Object> encodingHints(String contents, Map<EncodeHintType, ?> hints) {
+        Map<EncodeHintType, Object> encodingHints = new EnumMap<>(EncodeHintType.class);
+        if (hints != null) {
+            encodingHints.putAll(hints);
+        }
+        if (!encodingHints.containsKey(EncodeHintType.CHARACTER_SET)
+                && !StandardCharsets.ISO_8859_1.newEncoder().canEncode(contents)) {
+            encodingHints.put(EncodeHintType.CHARACTER_SET, StandardCharsets.UTF_8.name());
+        }
+        return encodingHints;
+    }
+
+    private CompiledMask mask(int versionNumber) {
+        CompiledMask mask = masks.get(versionNumber);
+        if (mask == null) {
+            // Threads racing here compile equal masks, and keep whichever was stored first
+            Version version = Version.getVersionForNumber(versionNumber);
+            masks.compareAndSet(versionNumber, null, new CompiledMask(version.buildFunctionPattern(),
+                    KeyMask.diagonalFlips(keyArr, version.getDimensionForVersion())));
+            mask = masks.get(versionNumber);
+        }
+        return mask;
+    }
+
+    /*
+     * Scales the modules up to the requested size with a quiet zone around them, as the ZXing
+     * QRCodeWriter does. Note that the input matrix uses 0 = white, 1 = black, and so does the output.
+     */
+    private static BitMatrix renderResult(BitMatrix modules, int width, int height, int quietZone) {
+        int inputWidth = modules.getWidth();
+        int inputHeight = modules.getHeight();
+        int qrWidth = inputWidth + (quietZone * 2);
+        int qrHeight = inputHeight + (quietZone * 2);
+        int outputWidth = Math.max(width, qrWidth);
+        int outputHeight = Math.max(height, qrHeight);
+
+        int multiple = Math.min(outputWidth / qrWidth, outputHeight / qrHeight);
+        // Padding includes both the quiet zone and the extra white pixels to accommodate the requested
+        // dimensions.
+        int leftPadding = (outputWidth - (inputWidth * multiple)) / 2;
+        int topPadding = (outputHeight - (inputHeight * multiple)) / 2;
+
+        BitMatrix output = new BitMatrix(outputWidth, outputHeight);
+
+        for (int inputY = 0, outputY = topPadding; inputY < inputHeight; inputY++, outputY += multiple) {
+            for (int inputX = 0, outputX = leftPadding; inputX < inputWidth; inputX++, outputX += multiple) {
+                if (modules.get(inputX, inputY)) {
+                    output.setRegion(outputX, outputY, multiple, multiple);
+                }
+            }
+        }
+
+        return output;
+    }
+
+    /*
+     * The function pattern of a version, whose modules the key mask leaves alone, and the flip of
+     * each diagonal.
+     */
+    private static final class CompiledMask {
+        final BitMatrix functionPattern;
+        final boolean[] diagonalFlips;
+
+        CompiledMask(BitMatrix functionPattern, boolean[] diagonalFlips) {
+            this.functionPattern = functionPattern;
+            this.diagonalFlips = diagonalFlips;
+        }
+    }
+}
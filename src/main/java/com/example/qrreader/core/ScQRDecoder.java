@@ -10,6 +10,10 @@ import com.google.zxing.common.reedsolomon.ReedSolomonDecoder;
 import com.google.zxing.common.reedsolomon.ReedSolomonException;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -21,9 +25,29 @@ import java.util.Map;
 public final class ScQRDecoder {
 
   private final ReedSolomonDecoder rsDecoder;
+  private final boolean tryMirrored;
+  private final DecodeObserver observer;
 
   public ScQRDecoder() {
+    this(true);
+  }
+
+  /**
+   * @param tryMirrored whether to retry with a mirrored reading of the code when the normal reading fails;
+   *                    turning this off halves the work spent on undecodable codes
+   */
+  public ScQRDecoder(boolean tryMirrored) {
+    this(tryMirrored, DecodeObserver.NOOP);
+  }
+
+  /**
+   * @param tryMirrored whether to retry with a mirrored reading of the code when the normal reading fails
+   * @param observer receives the time spent unmasking, error correcting and parsing, and each decoded code
+   */
+  public ScQRDecoder(boolean tryMirrored, DecodeObserver observer) {
     rsDecoder = new ReedSolomonDecoder(GenericGF.QR_CODE_FIELD_256);
+    this.tryMirrored = tryMirrored;
+    this.observer = observer;
   }
 
   public DecoderResult decode(boolean[][] image,int[]keyArr) throws ChecksumException, FormatException {
@@ -60,19 +84,289 @@ public final class ScQRDecoder {
    */
   public DecoderResult decode(BitMatrix bits, Map<DecodeHintType,?> hints,int[]keyArr)
       throws FormatException, ChecksumException {
+    return readWithMirrorRetry(bits, (parser, mirrored) -> {
+      DecoderResult result = decode(parser, hints, keyArr, mirrored);
+      if (mirrored) {
+        // Success! Notify the caller that the code was mirrored.
+        result.setOther(new QRCodeDecoderMetaData(true));
+      }
+      return result;
+    });
+  }
+
+  /**
+   * <p>Decodes a QR Code like {@link #decode(BitMatrix, Map, int[])}, but reports expected failures as the
+   * outcome instead of throwing. All error correction blocks are tried before a checksum failure is reported,
+   * until one of them is corrected: a code none of whose blocks can be corrected was most likely scrambled with
+   * another key, which is reported as {@link DecodeOutcome.Status#WRONG_KEY}.</p>
+   *
+   * @param bits booleans representing white/black QR Code modules
+   * @param hints decoding hints that should be used to influence decoding, may be null
+   * @param keyArr the 256-bit key as an array of 0s and 1s
+   * @return text and bytes encoded within the QR Code, or why and in which stage decoding failed
+   */
+  public DecodeOutcome<DecoderResult> tryDecode(BitMatrix bits, Map<DecodeHintType,?> hints, int[] keyArr) {
+    BitMatrixParser parser;
+    try {
+      parser = new BitMatrixParser(bits);
+    } catch (FormatException e) {
+      // Not the dimension of any version
+      return DecodeOutcome.failure(DecodeOutcome.Status.FORMAT, DecodeOutcome.Stage.FORMAT_INFORMATION);
+    }
+    DecodeOutcome<DecoderResult> outcome = tryDecode(parser, hints, keyArr, false);
+    if (outcome.isSuccess() || !tryMirrored) {
+      return outcome;
+    }
+
+    // As in readWithMirrorRetry(): only read the code mirrored if its format reads mirrored
+    try {
+      parser.remask();
+      parser.setMirror(true);
+      parser.readVersion();
+      parser.readFormatInformation();
+    } catch (FormatException e) {
+      return outcome;
+    }
+    parser.mirror();
+    DecodeOutcome<DecoderResult> mirroredOutcome = tryDecode(parser, hints, keyArr, true);
+    if (!mirroredOutcome.isSuccess()) {
+      // Report the failure of the original reading
+      return outcome;
+    }
+    mirroredOutcome.getResult().setOther(new QRCodeDecoderMetaData(true));
+    return mirroredOutcome;
+  }
+
+  /**
+   * <p>Decodes a QR Code like {@link #decode(BitMatrix, Map, int[])}, but reads its codewords straight off its
+   * modules, removing both masks as it reads them, see {@link SampledCodewords}. The modules are only read, so a
+   * mirrored reading reads them transposed instead of rewriting them. Blocks which error correction alone cannot
+   * correct are retried with the codewords of the least clearly read modules as erasures, if the modules tell how
+   * clearly they were read.</p>
+   *
+   * @param modules the modules of the code, sampled or read off the image
+   * @param hints decoding hints that should be used to influence decoding, may be null
+   * @param keyArr the 256-bit key as an array of 0s and 1s
+   * @return text and bytes encoded within the QR Code
+   * @throws FormatException if the QR Code cannot be decoded
+   * @throws ChecksumException if error correction fails
+   */
+  DecoderResult decode(CodeModules modules, Map<DecodeHintType,?> hints, int[] keyArr)
+      throws FormatException, ChecksumException {
+    try {
+      return decode(modules, hints, keyArr, false);
+    } catch (FormatException | ChecksumException e) {
+      if (!tryMirrored) {
+        throw e;
+      }
+      try {
+        DecoderResult result = decode(modules.transposed(), hints, keyArr, true);
+        result.setOther(new QRCodeDecoderMetaData(true));
+        return result;
+      } catch (FormatException | ChecksumException ignored) {
+        // Throw the exception from the original reading
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * <p>Decodes a QR Code like {@link #tryDecode(BitMatrix, Map, int[])}, but reads its codewords straight off its
+   * modules, see {@link #decode(CodeModules, Map, int[])}.</p>
+   *
+   * @param modules the modules of the code, sampled or read off the image
+   * @param hints decoding hints that should be used to influence decoding, may be null
+   * @param keyArr the 256-bit key as an array of 0s and 1s
+   * @return text and bytes encoded within the QR Code, or why and in which stage decoding failed
+   */
+  DecodeOutcome<DecoderResult> tryDecode(CodeModules modules, Map<DecodeHintType,?> hints, int[] keyArr) {
+    DecodeOutcome<DecoderResult> outcome = tryDecode(modules, hints, keyArr, false);
+    if (outcome.isSuccess() || !tryMirrored) {
+      return outcome;
+    }
+    // A mirrored reading whose format information cannot be read fails right away
+    DecodeOutcome<DecoderResult> mirroredOutcome = tryDecode(modules.transposed(), hints, keyArr, true);
+    if (!mirroredOutcome.isSuccess()) {
+      // Report the failure of the original reading
+      return outcome;
+    }
+    mirroredOutcome.getResult().setOther(new QRCodeDecoderMetaData(true));
+    return mirroredOutcome;
+  }
+
+  /**
+   * <p>Decodes many QR Codes like {@link #tryDecode(BitMatrix, Map, int[])}, for batch workloads whose codes
+   * mostly share a version and error-correction level. The blocks of all codes are grouped by their number of
+   * codewords and checked together, see {@link SyndromeBatch}, and only the blocks which hold errors are error
+   * corrected. Codes which cannot be read or corrected this way are decoded one by one, mirrored if need be, to
+   * report why they failed.</p>
+   *
+   * @param codes booleans representing white/black modules of each QR Code, which are not modified
+   * @param hints decoding hints that should be used to influence decoding, may be null
+   * @param keyArr the 256-bit key as an array of 0s and 1s
+   * @return for each code in order, its text and bytes, or why and in which stage decoding failed
+   */
+  public List<DecodeOutcome<DecoderResult>> tryDecodeAll(List<BitMatrix> codes, Map<DecodeHintType,?> hints,
+                                                         int[] keyArr) {
+    int size = codes.size();
+    SampledCodewords[] read = new SampledCodewords[size];
+    DataBlock[][] dataBlocks = new DataBlock[size][];
+    Map<Integer, BlockGroup> groups = new LinkedHashMap<>();
+    long start = stageStarted(DecodeObserver.Stage.UNMASK);
+    try {
+      for (int i = 0; i < size; i++) {
+        try {
+          read[i] = SampledCodewords.read(CodeModules.of(codes.get(i)), keyArr);
+        } catch (FormatException e) {
+          continue;
+        }
+        dataBlocks[i] = DataBlock.getDataBlocks(read[i].getCodewords(), read[i].getVersion(),
+            read[i].getErrorCorrectionLevel());
+        for (DataBlock dataBlock : dataBlocks[i]) {
+          int length = dataBlock.getCodewords().length;
+          int ecCodewords = length - dataBlock.getNumDataCodewords();
+          groups.computeIfAbsent((length << 8) | ecCodewords, key -> new BlockGroup(ecCodewords)).add(dataBlock, i);
+        }
+      }
+    } finally {
+      stageFinished(DecodeObserver.Stage.UNMASK, start);
+    }
+
+    start = stageStarted(DecodeObserver.Stage.ERROR_CORRECTION);
+    boolean[] failed = new boolean[size];
+    int[] correctedErrors = new int[size];
+    try {
+      for (BlockGroup group : groups.values()) {
+        byte[][] blocks = new byte[group.blocks.size()][];
+        for (int b = 0; b < blocks.length; b++) {
+          blocks[b] = group.blocks.get(b).getCodewords();
+        }
+        boolean[] damaged = SyndromeBatch.findDamaged(blocks, group.ecCodewords);
+        for (int b = 0; b < blocks.length; b++) {
+          int code = group.codes.get(b);
+          if (!damaged[b] || failed[code]) {
+            continue;
+          }
+          int blockErrors = tryCorrectErrors(blocks[b], group.blocks.get(b).getNumDataCodewords());
+          if (blockErrors < 0) {
+            failed[code] = true;
+          } else {
+            correctedErrors[code] += blockErrors;
+          }
+        }
+      }
+    } finally {
+      stageFinished(DecodeObserver.Stage.ERROR_CORRECTION, start);
+    }
+
+    List<DecodeOutcome<DecoderResult>> outcomes = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      DecodeOutcome<DecoderResult> outcome = null;
+      if (read[i] != null && !failed[i]) {
+        outcome = tryParse(dataBlocks[i], read[i].getVersion(), read[i].getErrorCorrectionLevel(), hints, keyArr,
+            correctedErrors[i]);
+      }
+      if (outcome == null || !outcome.isSuccess()) {
+        outcome = tryDecode(CodeModules.of(codes.get(i)), hints, keyArr);
+      }
+      outcomes.add(outcome);
+    }
+    return outcomes;
+  }
+
+  /*
+   * Parses the data codewords of corrected blocks.
+   */
+  private DecodeOutcome<DecoderResult> tryParse(DataBlock[] dataBlocks, Version version, ErrorCorrectionLevel ecLevel,
+                                                Map<DecodeHintType,?> hints, int[] keyArr, int correctedErrors) {
+    int totalBytes = 0;
+    for (DataBlock dataBlock : dataBlocks) {
+      totalBytes += dataBlock.getNumDataCodewords();
+    }
+    byte[] resultBytes = new byte[totalBytes];
+    int resultOffset = 0;
+    for (DataBlock dataBlock : dataBlocks) {
+      System.arraycopy(dataBlock.getCodewords(), 0, resultBytes, resultOffset, dataBlock.getNumDataCodewords());
+      resultOffset += dataBlock.getNumDataCodewords();
+    }
+
+    long start = stageStarted(DecodeObserver.Stage.BITSTREAM);
+    DecoderResult result;
+    try {
+      result = DecodedBitStreamParser.decode(resultBytes, version, ecLevel, hints, keyArr);
+    } catch (FormatException e) {
+      return DecodeOutcome.failure(DecodeOutcome.Status.FORMAT, DecodeOutcome.Stage.BITSTREAM);
+    } finally {
+      stageFinished(DecodeObserver.Stage.BITSTREAM, start);
+    }
+    observer.codeDecoded(version.getVersionNumber(), ecLevel, false, correctedErrors);
+    return DecodeOutcome.success(result);
+  }
+
+  /**
+   * <p>Reads a QR Code up to its first segment header and returns a cursor which decodes the rest on
+   * demand. Only the first error correction block is corrected up front; the cursor corrects further
+   * blocks as it reads into them, so a caller which only needs the start of the payload does not pay
+   * for error correcting and parsing the whole code.</p>
+   *
+   * @param bits booleans representing white/black QR Code modules
+   * @param hints decoding hints, e.g. the character set of byte segments, may be null
+   * @param keyArr the 256-bit key as an array of 0s and 1s
+   * @return a cursor positioned before the first segment
+   * @throws FormatException if the QR Code cannot be read
+   * @throws ChecksumException if the first block cannot be error corrected, e.g. because of a wrong key
+   */
+  public SegmentCursor decodeLazily(BitMatrix bits, Map<DecodeHintType,?> hints, int[] keyArr)
+      throws FormatException, ChecksumException {
+    return readWithMirrorRetry(bits, (parser, mirrored) -> {
+      Version version = parser.readVersion();
+      ErrorCorrectionLevel ecLevel = parser.readFormatInformation().getErrorCorrectionLevel();
+      byte[] codewords = parser.readCodewords(keyArr);
+      return new SegmentCursor(this, DataBlock.getDataBlocks(codewords, version, ecLevel), version, hints);
+    });
+  }
+
+  /**
+   * <p>Decodes the raw bytes of the byte segments of a QR Code, for codes which carry binary data. No
+   * character set is guessed and no text is built, and segments in other modes are skipped.</p>
+   *
+   * @param bits booleans representing white/black QR Code modules
+   * @param hints decoding hints that should be used to influence decoding, may be null
+   * @param keyArr the 256-bit key as an array of 0s and 1s
+   * @return the concatenated bytes of the byte segments, as a read-only buffer
+   * @throws FormatException if the QR Code cannot be decoded
+   * @throws ChecksumException if error correction fails
+   */
+  public ByteBuffer decodeBinary(BitMatrix bits, Map<DecodeHintType,?> hints, int[] keyArr)
+      throws FormatException, ChecksumException {
+    return decodeLazily(bits, hints, keyArr).readByteSegments();
+  }
+
+  /*
+   * Reads the code, and if that fails and mirrored codes are tried, reads it once more mirrored.
+   */
+  private <T> T readWithMirrorRetry(BitMatrix bits, ParserTask<T> task)
+      throws FormatException, ChecksumException {
 
     // Construct a parser and read version, error-correction level
     BitMatrixParser parser = new BitMatrixParser(bits);
     FormatException fe = null;
     ChecksumException ce = null;
     try {
-      return decode(parser, hints,keyArr);
+      return task.read(parser, false);
     } catch (FormatException e) {
       fe = e;
     } catch (ChecksumException e) {
       ce = e;
     }
 
+    if (!tryMirrored) {
+      if (fe != null) {
+        throw fe;
+      }
+      throw ce;
+    }
+
     try {
 
       // Revert the bit matrix
@@ -96,12 +390,7 @@ public final class ScQRDecoder {
       // Prepare for a mirrored reading.
       parser.mirror();
 
-      DecoderResult result = decode(parser, hints,keyArr);
-
-      // Success! Notify the caller that the code was mirrored.
-      result.setOther(new QRCodeDecoderMetaData(true));
-
-      return result;
+      return task.read(parser, true);
 
     } catch (FormatException | ChecksumException e) {
       // Throw the exception from the original reading
@@ -112,15 +401,192 @@ public final class ScQRDecoder {
     }
   }
 
-  private DecoderResult decode(BitMatrixParser parser, Map<DecodeHintType,?> hints,int[] keyArr)
-      throws FormatException, ChecksumException {
+  /**
+   * <p>Checks whether a QR Code holds the expected payload. The payload is encoded at the version and
+   * error-correction level of the code, and its codewords are compared with the ones read from the code,
+   * block by block. If no block differs in more codewords than it can correct, Reed-Solomon decoding could
+   * only restore the expected data, so the code is verified without error correction or bit stream parsing.
+   * Otherwise the code is decoded to tell a different payload from the same payload in other segments.</p>
+   *
+   * @param bits booleans representing white/black QR Code modules
+   * @param expected the payload the code should hold
+   * @param hints decoding hints used if the code has to be decoded, may be null
+   * @param keyArr the 256-bit key as an array of 0s and 1s
+   * @return whether the code holds the expected payload, and how many codewords differ
+   * @throws FormatException if the version or format information cannot be read
+   */
+  public VerifyResult verify(BitMatrix bits, String expected, Map<DecodeHintType,?> hints, int[] keyArr)
+      throws FormatException {
+    BitMatrixParser parser = new BitMatrixParser(bits);
     Version version = parser.readVersion();
     ErrorCorrectionLevel ecLevel = parser.readFormatInformation().getErrorCorrectionLevel();
-
-    // Read codewords
     byte[] codewords = parser.readCodewords(keyArr);
+    int correctable = version.getECBlocksForLevel(ecLevel).getECCodewordsPerBlock() / 2;
+
+    int errors = -1;
+    int maxBlockErrors = -1;
+    byte[][] expectedBlocks = ExpectedCodewords.encode(expected, version, ecLevel);
+    if (expectedBlocks != null) {
+      DataBlock[] dataBlocks = DataBlock.getDataBlocks(codewords, version, ecLevel);
+      errors = 0;
+      maxBlockErrors = 0;
+      for (int i = 0; i < dataBlocks.length; i++) {
+        byte[] blockCodewords = dataBlocks[i].getCodewords();
+        byte[] expectedBlockCodewords = expectedBlocks[i];
+        int blockErrors = 0;
+        for (int j = 0; j < blockCodewords.length; j++) {
+          if (blockCodewords[j] != expectedBlockCodewords[j]) {
+            blockErrors++;
+          }
+        }
+        errors += blockErrors;
+        maxBlockErrors = Math.max(maxBlockErrors, blockErrors);
+      }
+      if (maxBlockErrors <= correctable) {
+        return new VerifyResult(true, errors, maxBlockErrors, correctable, null);
+      }
+    }
+
+    String text;
+    try {
+      text = decode(codewords, null, version, ecLevel, hints, keyArr, false).getText();
+    } catch (ChecksumException | FormatException e) {
+      text = null;
+    }
+    if (expected.equals(text)) {
+      return new VerifyResult(true, -1, -1, correctable, text);
+    }
+    return new VerifyResult(false, errors, maxBlockErrors, correctable, text);
+  }
+
+  private DecoderResult decode(BitMatrixParser parser, Map<DecodeHintType,?> hints, int[] keyArr, boolean mirrored)
+      throws FormatException, ChecksumException {
+    long start = stageStarted(DecodeObserver.Stage.UNMASK);
+    Version version;
+    ErrorCorrectionLevel ecLevel;
+    byte[] codewords;
+    try {
+      version = parser.readVersion();
+      ecLevel = parser.readFormatInformation().getErrorCorrectionLevel();
+
+      // Read codewords
+      codewords = parser.readCodewords(keyArr);
+    } finally {
+      stageFinished(DecodeObserver.Stage.UNMASK, start);
+    }
+    return decode(codewords, null, version, ecLevel, hints, keyArr, mirrored);
+  }
+
+  private DecoderResult decode(CodeModules modules, Map<DecodeHintType,?> hints, int[] keyArr, boolean mirrored)
+      throws FormatException, ChecksumException {
+    long start = stageStarted(DecodeObserver.Stage.UNMASK);
+    SampledCodewords codewords;
+    try {
+      codewords = SampledCodewords.read(modules, keyArr);
+    } finally {
+      stageFinished(DecodeObserver.Stage.UNMASK, start);
+    }
+    return decode(codewords.getCodewords(), codewords.getConfidences(), codewords.getVersion(),
+        codewords.getErrorCorrectionLevel(), hints, keyArr, mirrored);
+  }
+
+  private DecodeOutcome<DecoderResult> tryDecode(BitMatrixParser parser, Map<DecodeHintType,?> hints, int[] keyArr,
+                                                 boolean mirrored) {
+    long start = stageStarted(DecodeObserver.Stage.UNMASK);
+    Version version;
+    ErrorCorrectionLevel ecLevel;
+    byte[] codewords;
+    try {
+      version = parser.readVersion();
+      ecLevel = parser.readFormatInformation().getErrorCorrectionLevel();
+      codewords = parser.readCodewords(keyArr);
+    } catch (FormatException e) {
+      stageFinished(DecodeObserver.Stage.UNMASK, start);
+      return DecodeOutcome.failure(DecodeOutcome.Status.FORMAT, DecodeOutcome.Stage.FORMAT_INFORMATION);
+    }
+    stageFinished(DecodeObserver.Stage.UNMASK, start);
+    return tryDecode(codewords, null, version, ecLevel, hints, keyArr, mirrored);
+  }
+
+  private DecodeOutcome<DecoderResult> tryDecode(CodeModules modules, Map<DecodeHintType,?> hints, int[] keyArr,
+                                                 boolean mirrored) {
+    long start = stageStarted(DecodeObserver.Stage.UNMASK);
+    SampledCodewords codewords;
+    try {
+      codewords = SampledCodewords.read(modules, keyArr);
+    } catch (FormatException e) {
+      return DecodeOutcome.failure(DecodeOutcome.Status.FORMAT, DecodeOutcome.Stage.FORMAT_INFORMATION);
+    } finally {
+      stageFinished(DecodeObserver.Stage.UNMASK, start);
+    }
+    return tryDecode(codewords.getCodewords(), codewords.getConfidences(), codewords.getVersion(),
+        codewords.getErrorCorrectionLevel(), hints, keyArr, mirrored);
+  }
+
+  private DecodeOutcome<DecoderResult> tryDecode(byte[] codewords, byte[] confidences, Version version,
+                                                 ErrorCorrectionLevel ecLevel, Map<DecodeHintType,?> hints,
+                                                 int[] keyArr, boolean mirrored) {
+    long start = stageStarted(DecodeObserver.Stage.ERROR_CORRECTION);
+
+    DataBlock[] dataBlocks = DataBlock.getDataBlocks(codewords, version, ecLevel);
+    // The confidences of the codewords, de-interleaved into blocks the same way
+    DataBlock[] confidenceBlocks = confidences == null ? null : DataBlock.getDataBlocks(confidences, version, ecLevel);
+    int totalBytes = 0;
+    for (DataBlock dataBlock : dataBlocks) {
+      totalBytes += dataBlock.getNumDataCodewords();
+    }
+    byte[] resultBytes = new byte[totalBytes];
+    int resultOffset = 0;
+
+    // Keep correcting after a failed block until one succeeds, to tell a wrong key from a damaged code
+    int failedBlocks = 0;
+    int correctedBlocks = 0;
+    int correctedErrors = 0;
+    for (int b = 0; b < dataBlocks.length; b++) {
+      DataBlock dataBlock = dataBlocks[b];
+      byte[] codewordBytes = dataBlock.getCodewords();
+      int numDataCodewords = dataBlock.getNumDataCodewords();
+      int blockErrors = tryCorrectErrors(codewordBytes, numDataCodewords,
+          confidenceBlocks == null ? null : confidenceBlocks[b].getCodewords());
+      if (blockErrors < 0) {
+        failedBlocks++;
+      } else {
+        correctedBlocks++;
+        correctedErrors += blockErrors;
+      }
+      if (failedBlocks > 0 && correctedBlocks > 0) {
+        stageFinished(DecodeObserver.Stage.ERROR_CORRECTION, start);
+        return DecodeOutcome.failure(DecodeOutcome.Status.CHECKSUM, DecodeOutcome.Stage.ERROR_CORRECTION);
+      }
+      System.arraycopy(codewordBytes, 0, resultBytes, resultOffset, numDataCodewords);
+      resultOffset += numDataCodewords;
+    }
+    stageFinished(DecodeObserver.Stage.ERROR_CORRECTION, start);
+    if (failedBlocks > 0) {
+      DecodeOutcome.Status status = failedBlocks > 1 ? DecodeOutcome.Status.WRONG_KEY : DecodeOutcome.Status.CHECKSUM;
+      return DecodeOutcome.failure(status, DecodeOutcome.Stage.ERROR_CORRECTION);
+    }
+
+    start = stageStarted(DecodeObserver.Stage.BITSTREAM);
+    DecoderResult result;
+    try {
+      result = DecodedBitStreamParser.decode(resultBytes, version, ecLevel, hints, keyArr);
+    } catch (FormatException e) {
+      return DecodeOutcome.failure(DecodeOutcome.Status.FORMAT, DecodeOutcome.Stage.BITSTREAM);
+    } finally {
+      stageFinished(DecodeObserver.Stage.BITSTREAM, start);
+    }
+    observer.codeDecoded(version.getVersionNumber(), ecLevel, mirrored, correctedErrors);
+    return DecodeOutcome.success(result);
+  }
+
+  private DecoderResult decode(byte[] codewords, byte[] confidences, Version version, ErrorCorrectionLevel ecLevel,
+                               Map<DecodeHintType,?> hints, int[] keyArr, boolean mirrored)
+      throws FormatException, ChecksumException {
+    long start = stageStarted(DecodeObserver.Stage.ERROR_CORRECTION);
     // Separate into data blocks
     DataBlock[] dataBlocks = DataBlock.getDataBlocks(codewords, version, ecLevel);
+    DataBlock[] confidenceBlocks = confidences == null ? null : DataBlock.getDataBlocks(confidences, version, ecLevel);
 
     // Count total number of data bytes
     int totalBytes = 0;
@@ -131,17 +597,48 @@ public final class ScQRDecoder {
     int resultOffset = 0;
 
     // Error-correct and copy data blocks together into a stream of bytes
-    for (DataBlock dataBlock : dataBlocks) {
-      byte[] codewordBytes = dataBlock.getCodewords();
-      int numDataCodewords = dataBlock.getNumDataCodewords();
-      correctErrors(codewordBytes, numDataCodewords);
-      for (int i = 0; i < numDataCodewords; i++) {
-        resultBytes[resultOffset++] = codewordBytes[i];
+    int correctedErrors = 0;
+    try {
+      for (int b = 0; b < dataBlocks.length; b++) {
+        DataBlock dataBlock = dataBlocks[b];
+        byte[] codewordBytes = dataBlock.getCodewords();
+        int numDataCodewords = dataBlock.getNumDataCodewords();
+        int blockErrors = tryCorrectErrors(codewordBytes, numDataCodewords,
+            confidenceBlocks == null ? null : confidenceBlocks[b].getCodewords());
+        if (blockErrors < 0) {
+          throw ChecksumException.getChecksumInstance();
+        }
+        correctedErrors += blockErrors;
+        for (int i = 0; i < numDataCodewords; i++) {
+          resultBytes[resultOffset++] = codewordBytes[i];
+        }
       }
+    } finally {
+      stageFinished(DecodeObserver.Stage.ERROR_CORRECTION, start);
     }
 
     // Decode the contents of that stream of bytes
-    return DecodedBitStreamParser.decode(resultBytes, version, ecLevel, hints,keyArr);
+    start = stageStarted(DecodeObserver.Stage.BITSTREAM);
+    DecoderResult result;
+    try {
+      result = DecodedBitStreamParser.decode(resultBytes, version, ecLevel, hints, keyArr);
+    } finally {
+      stageFinished(DecodeObserver.Stage.BITSTREAM, start);
+    }
+    observer.codeDecoded(version.getVersionNumber(), ecLevel, mirrored, correctedErrors);
+    return result;
+  }
+
+  /*
+   * Reports the start of a stage to the observer, and returns its start time.
+   */
+  private long stageStarted(DecodeObserver.Stage stage) {
+    observer.stageStarted(stage);
+    return System.nanoTime();
+  }
+
+  private void stageFinished(DecodeObserver.Stage stage, long start) {
+    observer.stageFinished(stage, System.nanoTime() - start);
   }
 
   /**
@@ -150,25 +647,108 @@ public final class ScQRDecoder {
    *
    * @param codewordBytes data and error correction codewords
    * @param numDataCodewords number of codewords that are data bytes
+   * @return the number of codewords which were corrected
    * @throws ChecksumException if error correction fails
    */
-  private void correctErrors(byte[] codewordBytes, int numDataCodewords) throws ChecksumException {
+  int correctErrors(byte[] codewordBytes, int numDataCodewords) throws ChecksumException {
+    int correctedErrors = tryCorrectErrors(codewordBytes, numDataCodewords);
+    if (correctedErrors < 0) {
+      throw ChecksumException.getChecksumInstance();
+    }
+    return correctedErrors;
+  }
+
+  /**
+   * <p>Like {@link #correctErrors(byte[], int)}, but reports failure as the result.</p>
+   *
+   * @param codewordBytes data and error correction codewords
+   * @param numDataCodewords number of codewords that are data bytes
+   * @return the number of codewords which were corrected, or -1 if error correction fails
+   */
+  int tryCorrectErrors(byte[] codewordBytes, int numDataCodewords) {
+    return tryCorrectErrors(codewordBytes, numDataCodewords, null);
+  }
+
+  /**
+   * <p>Like {@link #tryCorrectErrors(byte[], int)}, but if that fails and some codewords were read unclearly,
+   * retries with the least clearly read ones as erasures, which cost half as much error correction as errors do,
+   * see {@link ErasureDecoder}.</p>
+   *
+   * @param codewordBytes data and error correction codewords
+   * @param numDataCodewords number of codewords that are data bytes
+   * @param confidences the confidence of each codeword, see {@link SampledCodewords#getConfidences()}, or null
+   * @return the number of codewords which were corrected, or -1 if error correction fails
+   */
+  private int tryCorrectErrors(byte[] codewordBytes, int numDataCodewords, byte[] confidences) {
     int numCodewords = codewordBytes.length;
+    int ecCodewords = numCodewords - numDataCodewords;
     // First read into an array of ints
     int[] codewordsInts = new int[numCodewords];
     for (int i = 0; i < numCodewords; i++) {
       codewordsInts[i] = codewordBytes[i] & 0xFF;
     }
     try {
-      rsDecoder.decode(codewordsInts, codewordBytes.length - numDataCodewords);
-    } catch (ReedSolomonException ignored) {
-      throw ChecksumException.getChecksumInstance();
+      rsDecoder.decode(codewordsInts, ecCodewords);
+    } catch (ReedSolomonException e) {
+      int[] erasures = confidences == null ? null : ErasureDecoder.findErasures(confidences, ecCodewords);
+      if (erasures == null || erasures.length == 0) {
+        return -1;
+      }
+      // The failed decoder may have left the codewords half corrected
+      for (int i = 0; i < numCodewords; i++) {
+        codewordsInts[i] = codewordBytes[i] & 0xFF;
+      }
+      try {
+        int errors = ErasureDecoder.decode(codewordsInts, ecCodewords, erasures);
+        if (2 * errors + erasures.length > ecCodewords - ErasureDecoder.SPARE_CHECK_SYMBOLS) {
+          // Too close to what the block can correct to tell a correction from noise
+          return -1;
+        }
+      } catch (ReedSolomonException ignored) {
+        return -1;
+      }
     }
     // Copy back into array of bytes -- only need to worry about the bytes that were data
-    // We don't care about errors in the error-correction codewords
+    // We don't care about errors in the error-correction codewords, other than counting them
+    int correctedErrors = 0;
     for (int i = 0; i < numDataCodewords; i++) {
-      codewordBytes[i] = (byte) codewordsInts[i];
+      if (codewordBytes[i] != (byte) codewordsInts[i]) {
+        codewordBytes[i] = (byte) codewordsInts[i];
+        correctedErrors++;
+      }
+    }
+    for (int i = numDataCodewords; i < numCodewords; i++) {
+      if (codewordBytes[i] != (byte) codewordsInts[i]) {
+        correctedErrors++;
+      }
     }
+    return correctedErrors;
+  }
+
+  /*
+   * The blocks of a batch with the same number of codewords and error correction codewords, and the
+   * code each of them belongs to.
+   */
+  private static final class BlockGroup {
+    private final int ecCodewords;
+    private final List<DataBlock> blocks = new ArrayList<>();
+    private final List<Integer> codes = new ArrayList<>();
+
+    BlockGroup(int ecCodewords) {
+      this.ecCodewords = ecCodewords;
+    }
+
+    void add(DataBlock dataBlock, int code) {
+      blocks.add(dataBlock);
+      codes.add(code);
+    }
+  }
+
+  /*
+   * A reading of the code by a parser, which is mirrored on the second attempt.
+   */
+  private interface ParserTask<T> {
+    T read(BitMatrixParser parser, boolean mirrored) throws FormatException, ChecksumException;
   }
 
 }
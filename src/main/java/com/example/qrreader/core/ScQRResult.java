@@ -0,0 +1,106 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.DecoderResult;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The payload of a decoded QR code, without the metadata map of a ZXing {@link com.google.zxing.Result}.
+ *
+ * Only the metadata a caller asks for is kept, in plain fields: the byte segments, the error
+ * correction level, structured append and the symbology identifier. Everything else reads as
+ * absent, so a scan which only needs the text allocates nothing beyond it.
+ */
+public final class ScQRResult {
+
+    private final String text;
+    private final ResultPoint[] points;
+    private final List<byte[]> byteSegments;
+    private final String ecLevel;
+    private final int structuredAppendSequence;
+    private final int structuredAppendParity;
+    private final int symbologyModifier;
+
+    private ScQRResult(String text, ResultPoint[] points, List<byte[]> byteSegments, String ecLevel,
+                       int structuredAppendSequence, int structuredAppendParity, int symbologyModifier) {
+        this.text = text;
+        this.points = points;
+        this.byteSegments = byteSegments;
+        this.ecLevel = ecLevel;
+        this.structuredAppendSequence = structuredAppendSequence;
+        this.structuredAppendParity = structuredAppendParity;
+        this.symbologyModifier = symbologyModifier;
+    }
+
+    /*
+     * Keeps the text and points of the decoded code, and of its metadata only the requested types.
+     */
+    static ScQRResult of(DecoderResult decoderResult, ResultPoint[] points, Set<ResultMetadataType> metadata) {
+        if (metadata.isEmpty()) {
+            return new ScQRResult(decoderResult.getText(), points, null, null, -1, -1, -1);
+        }
+        boolean structuredAppend = decoderResult.hasStructuredAppend()
+                && (metadata.contains(ResultMetadataType.STRUCTURED_APPEND_SEQUENCE)
+                || metadata.contains(ResultMetadataType.STRUCTURED_APPEND_PARITY));
+        return new ScQRResult(decoderResult.getText(), points,
+                metadata.contains(ResultMetadataType.BYTE_SEGMENTS) ? decoderResult.getByteSegments() : null,
+                metadata.contains(ResultMetadataType.ERROR_CORRECTION_LEVEL) ? decoderResult.getECLevel() : null,
+                structuredAppend ? decoderResult.getStructuredAppendSequenceNumber() : -1,
+                structuredAppend ? decoderResult.getStructuredAppendParity() : -1,
+                metadata.contains(ResultMetadataType.SYMBOLOGY_IDENTIFIER) ? decoderResult.getSymbologyModifier() : -1);
+    }
+
+    /**
+     * @return the QR payload message
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the finder and alignment pattern points of the code, empty if it was read off a pure image
+     */
+    public ResultPoint[] getResultPoints() {
+        return points;
+    }
+
+    /**
+     * @return the bytes of the byte segments, or null if not requested or the code has none
+     */
+    public List<byte[]> getByteSegments() {
+        return byteSegments;
+    }
+
+    /**
+     * @return the name of the error correction level, or null if not requested
+     */
+    public String getECLevel() {
+        return ecLevel;
+    }
+
+    /**
+     * @return the position of the code in its structured append sequence, or -1 if not requested
+     * or the code is not part of one
+     */
+    public int getStructuredAppendSequence() {
+        return structuredAppendSequence;
+    }
+
+    /**
+     * @return the parity of the structured append sequence, or -1 if not requested or the code is
+     * not part of one
+     */
+    public int getStructuredAppendParity() {
+        return structuredAppendParity;
+    }
+
+    /**
+     * @return the symbology identifier, e.g. "]Q1", or null if not requested
+     */
+    public String getSymbologyIdentifier() {
+        return symbologyModifier < 0 ? null : "]Q" + symbologyModifier;
+    }
+}
@@ -0,0 +1,554 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.ChecksumException;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.CharacterSetECI;
+import com.google.zxing.common.StringUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Cursor over the segments of a scrambled QR code, which decodes only as much of the code as
+ * the caller reads.
+ *
+ * The data of a code is the data codewords of its error correction blocks, one block after the
+ * other, so the start of the payload lies in the first blocks. The cursor error corrects a block
+ * only once it reads a bit from it, and characters which are skipped are neither corrected nor
+ * decoded. A caller which needs just a header at the start of the payload pays for the blocks
+ * holding the header, not for the whole code. Errors in blocks which are never read go unnoticed.
+ *
+ * Reading the first N characters gives the first N characters of the text which
+ * {@link ScQRDecoder#decode(BitMatrix, Map, int[])} returns. A cursor is not thread safe.
+ *
+ * @see ScQRDecoder#decodeLazily(BitMatrix, Map, int[])
+ */
+public final class SegmentCursor {
+
+    private static final char[] ALPHANUMERIC_CHARS =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:".toCharArray();
+    private static final int GB2312_SUBSET = 1;
+
+    private final ScQRDecoder decoder;
+    private final DataBlock[] dataBlocks;
+    private final Version version;
+    private final Map<DecodeHintType, ?> hints;
+    private final byte[] data;
+
+    private int correctedBlocks;
+    private int correctedBytes;
+    private int byteOffset;
+    private int bitOffset;
+
+    private Mode mode;
+    private int characterCount;
+    private int remaining;
+    private String pending = "";
+    private CharacterSetECI currentCharacterSetECI;
+    private boolean fc1InEffect;
+    private boolean finished;
+
+    SegmentCursor(ScQRDecoder decoder, DataBlock[] dataBlocks, Version version, Map<DecodeHintType, ?> hints)
+            throws ChecksumException {
+        this.decoder = decoder;
+        this.dataBlocks = dataBlocks;
+        this.version = version;
+        this.hints = hints;
+        int totalBytes = 0;
+        for (DataBlock dataBlock : dataBlocks) {
+            totalBytes += dataBlock.getNumDataCodewords();
+        }
+        data = new byte[totalBytes];
+        // The first segment header is always read, and a wrong key already shows in the first block
+        ensureCorrected(1);
+    }
+
+    /**
+     * Moves to the next segment which holds characters, skipping what is left of the current one.
+     *
+     * @return false if there are no more segments
+     * @throws FormatException if the segment header cannot be parsed
+     * @throws ChecksumException if a block holding the header cannot be error corrected
+     */
+    public boolean nextSegment() throws FormatException, ChecksumException {
+        if (finished) {
+            return false;
+        }
+        skipBits(segmentBits(mode, remaining));
+        remaining = 0;
+        pending = "";
+        while (true) {
+            if (available() < 4) {
+                // OK, assume we're done. Really, a TERMINATOR mode should have been recorded here
+                return finish();
+            }
+            Mode next;
+            try {
+                next = Mode.forBits(readBits(4));
+            } catch (IllegalArgumentException iae) {
+                throw FormatException.getFormatInstance();
+            }
+            switch (next) {
+                case TERMINATOR:
+                    return finish();
+                case FNC1_FIRST_POSITION:
+                case FNC1_SECOND_POSITION:
+                    fc1InEffect = true;
+                    break;
+                case STRUCTURED_APPEND:
+                    // Sequence number and parity
+                    readBits(16);
+                    break;
+                case ECI:
+                    currentCharacterSetECI = CharacterSetECI.getCharacterSetECIByValue(parseECIValue());
+                    if (currentCharacterSetECI == null) {
+                        throw FormatException.getFormatInstance();
+                    }
+                    break;
+                case HANZI:
+                    int subset = readBits(4);
+                    int countHanzi = readBits(next.getCharacterCountBits(version));
+                    // Other subsets are not decoded, as in DecodedBitStreamParser
+                    return startSegment(next, countHanzi, subset == GB2312_SUBSET ? countHanzi : 0);
+                case NUMERIC:
+                case ALPHANUMERIC:
+                case BYTE:
+                case KANJI:
+                    int count = readBits(next.getCharacterCountBits(version));
+                    return startSegment(next, count, count);
+                default:
+                    throw FormatException.getFormatInstance();
+            }
+        }
+    }
+
+    /**
+     * @return the mode of the current segment, or null before the first and after the last segment
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the character count of the current segment, which is a byte count in byte mode
+     */
+    public int getCharacterCount() {
+        return characterCount;
+    }
+
+    /**
+     * Reads characters from the current segment. Only the blocks holding them are error corrected.
+     *
+     * @param maxChars the maximum number of characters to read
+     * @return the characters read, fewer than asked for only at the end of the segment
+     * @throws FormatException if the characters cannot be parsed
+     * @throws ChecksumException if a block holding them cannot be error corrected
+     */
+    public String readText(int maxChars) throws FormatException, ChecksumException {
+        if (maxChars < 0) {
+            throw new IllegalArgumentException("maxChars must not be negative: " + maxChars);
+        }
+        StringBuilder result = new StringBuilder(Math.min(maxChars, pending.length() + remaining));
+        result.append(pending);
+        pending = "";
+        while (result.length() < maxChars && remaining > 0) {
+            // Each step decodes at least one character, and may decode more than asked for
+            int wanted = maxChars - result.length();
+            switch (mode) {
+                case NUMERIC:
+                    decodeNumeric(result, wanted);
+                    break;
+                case ALPHANUMERIC:
+                    decodeAlphanumeric(result, wanted);
+                    break;
+                case BYTE:
+                    decodeByte(result, wanted);
+                    break;
+                case KANJI:
+                    decodeDoubleByte(result, wanted, StringUtils.SHIFT_JIS_CHARSET, 0x0C0, 0x01F00, 0x08140, 0x0C140);
+                    break;
+                default:
+                    decodeDoubleByte(result, wanted, StringUtils.GB2312_CHARSET, 0x060, 0x00A00, 0x0A1A1, 0x0A6A1);
+                    break;
+            }
+        }
+        if (result.length() > maxChars) {
+            pending = result.substring(maxChars);
+            result.setLength(maxChars);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Reads the rest of the current segment as raw bytes, without guessing their character set.
+     *
+     * @return the bytes of the current byte segment which have not been read as text
+     * @throws IllegalStateException if the current segment is not a byte segment
+     * @throws FormatException if the bytes cannot be read
+     * @throws ChecksumException if a block holding the bytes cannot be error corrected
+     */
+    public byte[] readBytes() throws FormatException, ChecksumException {
+        if (mode != Mode.BYTE) {
+            throw new IllegalStateException("Not in a byte segment: " + mode);
+        }
+        pending = "";
+        return readByteArray(remaining);
+    }
+
+    /**
+     * Reads the raw bytes of the byte segments from the current position on, without guessing a
+     * character set or building text. Segments in other modes are skipped without being decoded.
+     *
+     * @return the concatenated bytes, as a read-only buffer
+     * @throws FormatException if the code cannot be parsed
+     * @throws ChecksumException if a block holding the bytes cannot be error corrected
+     */
+    public ByteBuffer readByteSegments() throws FormatException, ChecksumException {
+        byte[] bytes = new byte[data.length];
+        int length = 0;
+        if (mode == Mode.BYTE) {
+            length = readBytesInto(bytes, length);
+        }
+        while (nextSegment()) {
+            if (mode == Mode.BYTE) {
+                length = readBytesInto(bytes, length);
+            }
+        }
+        return ByteBuffer.wrap(bytes, 0, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Reads characters across segments, starting at the current position, until enough have been read.
+     *
+     * @param maxChars the maximum number of characters to read
+     * @return the characters read, fewer than asked for only at the end of the code
+     * @throws FormatException if the code cannot be parsed
+     * @throws ChecksumException if a block holding the characters cannot be error corrected
+     */
+    public String readPrefix(int maxChars) throws FormatException, ChecksumException {
+        StringBuilder result = new StringBuilder(Math.min(maxChars, data.length * 2));
+        while (result.length() < maxChars) {
+            if (remaining == 0 && pending.isEmpty() && !nextSegment()) {
+                break;
+            }
+            result.append(readText(maxChars - result.length()));
+        }
+        return result.toString();
+    }
+
+    private boolean startSegment(Mode segmentMode, int count, int characters) throws FormatException {
+        if (segmentBits(segmentMode, characters) > available()) {
+            // Don't crash trying to read more bits than we have available
+            throw FormatException.getFormatInstance();
+        }
+        mode = segmentMode;
+        characterCount = count;
+        remaining = characters;
+        return true;
+    }
+
+    private boolean finish() {
+        finished = true;
+        mode = null;
+        characterCount = 0;
+        return false;
+    }
+
+    /*
+     * The number of bits which the given number of characters take up in a segment of the mode.
+     */
+    private static int segmentBits(Mode segmentMode, int characters) {
+        if (segmentMode == null) {
+            return 0;
+        }
+        switch (segmentMode) {
+            case NUMERIC:
+                return 10 * (characters / 3) + (characters % 3 == 2 ? 7 : characters % 3 == 1 ? 4 : 0);
+            case ALPHANUMERIC:
+                return 11 * (characters / 2) + 6 * (characters % 2);
+            case BYTE:
+                return 8 * characters;
+            default:
+                return 13 * characters;
+        }
+    }
+
+    private void decodeNumeric(StringBuilder result, int wanted) throws FormatException, ChecksumException {
+        int target = result.length() + wanted;
+        while (result.length() < target && remaining > 0) {
+            if (remaining >= 3) {
+                // Each 10 bits encodes three digits
+                int threeDigitsBits = readBits(10);
+                if (threeDigitsBits >= 1000) {
+                    throw FormatException.getFormatInstance();
+                }
+                result.append(DecodedBitStreamParser.DIGIT_TRIPLES, 3 * threeDigitsBits, 3);
+                remaining -= 3;
+            } else if (remaining == 2) {
+                int twoDigitsBits = readBits(7);
+                if (twoDigitsBits >= 100) {
+                    throw FormatException.getFormatInstance();
+                }
+                result.append(DecodedBitStreamParser.DIGIT_TRIPLES, 3 * twoDigitsBits + 1, 2);
+                remaining = 0;
+            } else {
+                int digitBits = readBits(4);
+                if (digitBits >= 10) {
+                    throw FormatException.getFormatInstance();
+                }
+                result.append(DecodedBitStreamParser.DIGIT_TRIPLES, 3 * digitBits + 2, 1);
+                remaining = 0;
+            }
+        }
+    }
+
+    private void decodeAlphanumeric(StringBuilder result, int wanted) throws FormatException, ChecksumException {
+        // With FNC1, "%%" stands for one character, so the whole segment is decoded
+        int target = fc1InEffect ? Integer.MAX_VALUE : result.length() + wanted;
+        int start = result.length();
+        while (result.length() < target && remaining > 0) {
+            if (remaining >= 2) {
+                int nextTwoCharsBits = readBits(11);
+                if (nextTwoCharsBits >= 45 * 45) {
+                    throw FormatException.getFormatInstance();
+                }
+                result.append(DecodedBitStreamParser.ALPHANUMERIC_PAIRS, 2 * nextTwoCharsBits, 2);
+                remaining -= 2;
+            } else {
+                result.append(toAlphaNumericChar(readBits(6)));
+                remaining = 0;
+            }
+        }
+        // See section 6.4.8.1, 6.4.8.2
+        if (fc1InEffect) {
+            for (int i = start; i < result.length(); i++) {
+                if (result.charAt(i) == '%') {
+                    if (i < result.length() - 1 && result.charAt(i + 1) == '%') {
+                        // %% is rendered as %
+                        result.deleteCharAt(i + 1);
+                    } else {
+                        // In alpha mode, % should be converted to FNC1 separator 0x1D
+                        result.setCharAt(i, (char) 0x1D);
+                    }
+                }
+            }
+        }
+    }
+
+    private void decodeByte(StringBuilder result, int wanted) throws FormatException, ChecksumException {
+        Charset encoding = currentCharacterSetECI != null ? currentCharacterSetECI.getCharset() : hintedCharset();
+        if (encoding == null) {
+            // The character set is guessed from the whole segment, but plain ASCII reads the same
+            // whatever the guess, so a prefix of ASCII bytes need not wait for the rest
+            byte[] readBytes = readByteArray(Math.min(wanted, remaining));
+            if (isAscii(readBytes)) {
+                result.append(new String(readBytes, StandardCharsets.ISO_8859_1));
+                return;
+            }
+            byte[] rest = readByteArray(remaining);
+            byte[] segment = Arrays.copyOf(readBytes, readBytes.length + rest.length);
+            System.arraycopy(rest, 0, segment, readBytes.length, rest.length);
+            result.append(DecodedBitStreamParser.decodeWithoutECI(segment, hints));
+        } else if (encoding.canEncode() && encoding.newEncoder().maxBytesPerChar() <= 1.0f) {
+            result.append(new String(readByteArray(Math.min(wanted, remaining)), encoding));
+        } else if (StandardCharsets.UTF_8.equals(encoding)) {
+            result.append(new String(readByteArray(utf8Length(wanted)), encoding));
+        } else {
+            // Other multi-byte character sets cannot be split safely
+            result.append(new String(readByteArray(remaining), encoding));
+        }
+    }
+
+    /*
+     * The number of bytes up to the UTF-8 sequence which would take the text past the wanted
+     * number of chars, but at least one sequence. Supplementary characters take two chars.
+     */
+    private int utf8Length(int wanted) throws FormatException, ChecksumException {
+        int savedByteOffset = byteOffset;
+        int savedBitOffset = bitOffset;
+        int length = 0;
+        int chars = 0;
+        while (length < remaining) {
+            int b = readBits(8);
+            if ((b & 0xC0) != 0x80) {
+                int sequenceChars = b >= 0xF0 ? 2 : 1;
+                if (chars > 0 && chars + sequenceChars > wanted) {
+                    break;
+                }
+                chars += sequenceChars;
+            }
+            length++;
+        }
+        byteOffset = savedByteOffset;
+        bitOffset = savedBitOffset;
+        return length;
+    }
+
+    private Charset hintedCharset() {
+        if (hints != null && hints.containsKey(DecodeHintType.CHARACTER_SET)) {
+            return Charset.forName(hints.get(DecodeHintType.CHARACTER_SET).toString());
+        }
+        return null;
+    }
+
+    private static boolean isAscii(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Kanji and Hanzi: each 13 bits encodes a 2-byte character, see DecodedBitStreamParser.
+     */
+    private void decodeDoubleByte(StringBuilder result, int wanted, Charset encoding, int divisor,
+                                  int rangeSplit, int lowOffset, int highOffset)
+            throws FormatException, ChecksumException {
+        if (encoding == null) {
+            // Not supported without charset support
+            throw FormatException.getFormatInstance();
+        }
+        int count = Math.min(wanted, remaining);
+        byte[] buffer = new byte[2 * count];
+        for (int offset = 0; offset < buffer.length; offset += 2) {
+            int twoBytes = readBits(13);
+            int assembledTwoBytes = ((twoBytes / divisor) << 8) | (twoBytes % divisor);
+            assembledTwoBytes += assembledTwoBytes < rangeSplit ? lowOffset : highOffset;
+            buffer[offset] = (byte) (assembledTwoBytes >> 8);
+            buffer[offset + 1] = (byte) assembledTwoBytes;
+        }
+        remaining -= count;
+        result.append(new String(buffer, encoding));
+    }
+
+    private static char toAlphaNumericChar(int value) throws FormatException {
+        if (value >= ALPHANUMERIC_CHARS.length) {
+            throw FormatException.getFormatInstance();
+        }
+        return ALPHANUMERIC_CHARS[value];
+    }
+
+    private int parseECIValue() throws FormatException, ChecksumException {
+        int firstByte = readBits(8);
+        if ((firstByte & 0x80) == 0) {
+            // just one byte
+            return firstByte & 0x7F;
+        }
+        if ((firstByte & 0xC0) == 0x80) {
+            // two bytes
+            int secondByte = readBits(8);
+            return ((firstByte & 0x3F) << 8) | secondByte;
+        }
+        if ((firstByte & 0xE0) == 0xC0) {
+            // three bytes
+            int secondThirdBytes = readBits(16);
+            return ((firstByte & 0x1F) << 16) | secondThirdBytes;
+        }
+        throw FormatException.getFormatInstance();
+    }
+
+    private byte[] readByteArray(int count) throws FormatException, ChecksumException {
+        byte[] bytes = new byte[count];
+        for (int i = 0; i < count; i++) {
+            bytes[i] = (byte) readBits(8);
+        }
+        remaining -= count;
+        return bytes;
+    }
+
+    /*
+     * Reads the rest of the current byte segment into the array at the offset, and returns the offset after it.
+     */
+    private int readBytesInto(byte[] bytes, int offset) throws FormatException, ChecksumException {
+        pending = "";
+        int count = remaining;
+        if (count == 0) {
+            return offset;
+        }
+        // Bounds were checked when the segment started; the bytes straddle the same bit offset
+        ensureCorrected(byteOffset + count + (bitOffset > 0 ? 1 : 0));
+        int shift = bitOffset;
+        int p = byteOffset;
+        if (shift == 0) {
+            System.arraycopy(data, p, bytes, offset, count);
+        } else {
+            for (int i = 0; i < count; i++, p++) {
+                bytes[offset + i] = (byte) ((data[p] << shift) | ((data[p + 1] & 0xFF) >>> (8 - shift)));
+            }
+        }
+        byteOffset += count;
+        remaining = 0;
+        return offset + count;
+    }
+
+    private int available() {
+        return 8 * (data.length - byteOffset) - bitOffset;
+    }
+
+    private void skipBits(int numBits) {
+        int position = 8 * byteOffset + bitOffset + numBits;
+        byteOffset = position >> 3;
+        bitOffset = position & 0x07;
+    }
+
+    /*
+     * Reads up to 32 bits as BitSource does, error correcting the blocks they lie in first.
+     */
+    private int readBits(int numBits) throws FormatException, ChecksumException {
+        if (numBits > available()) {
+            throw FormatException.getFormatInstance();
+        }
+        ensureCorrected(byteOffset + (bitOffset + numBits + 7) / 8);
+
+        int result = 0;
+        // First, read remainder from current byte
+        if (bitOffset > 0) {
+            int bitsLeft = 8 - bitOffset;
+            int toRead = Math.min(numBits, bitsLeft);
+            int bitsToNotRead = bitsLeft - toRead;
+            int mask = (0xFF >> (8 - toRead)) << bitsToNotRead;
+            result = (data[byteOffset] & mask) >> bitsToNotRead;
+            numBits -= toRead;
+            bitOffset += toRead;
+            if (bitOffset == 8) {
+                bitOffset = 0;
+                byteOffset++;
+            }
+        }
+        // Next read whole bytes
+        while (numBits >= 8) {
+            result = (result << 8) | (data[byteOffset] & 0xFF);
+            byteOffset++;
+            numBits -= 8;
+        }
+        // Finally read a partial byte
+        if (numBits > 0) {
+            int bitsToNotRead = 8 - numBits;
+            int mask = (0xFF >> bitsToNotRead) << bitsToNotRead;
+            result = (result << numBits) | ((data[byteOffset] & mask) >> bitsToNotRead);
+            bitOffset += numBits;
+        }
+        return result;
+    }
+
+    /*
+     * Error corrects blocks in order until the data bytes before the given offset are corrected.
+     */
+    private void ensureCorrected(int end) throws ChecksumException {
+        while (correctedBytes < end) {
+            DataBlock dataBlock = dataBlocks[correctedBlocks++];
+            byte[] codewordBytes = dataBlock.getCodewords();
+            int numDataCodewords = dataBlock.getNumDataCodewords();
+            decoder.correctErrors(codewordBytes, numDataCodewords);
+            System.arraycopy(codewordBytes, 0, data, correctedBytes, numDataCodewords);
+            correctedBytes += numDataCodewords;
+        }
+    }
+}
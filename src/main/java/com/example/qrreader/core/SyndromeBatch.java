@@ -0,0 +1,84 @@
+package com.example.qrreader.core;
+
+import java.util.Arrays;
+
+/**
+ * The Reed-Solomon syndromes of many codeword blocks of the same length at once, to find the
+ * blocks which need error correcting.
+ *
+ * A block is intact exactly when all its syndromes are zero, which is what most blocks of a
+ * batch of clean codes are. The ZXing decoder computes the syndromes of one block at a time,
+ * multiplying through field logarithms; here the blocks are laid out position by position, so
+ * that the i-th codeword of every block is next to each other, and every syndrome of every
+ * block is evaluated in one loop over the batch with a table of the multiples of the power of
+ * the generator it is evaluated at. Only the blocks with a syndrome other than zero go on to
+ * full error correction.
+ */
+final class SyndromeBatch {
+
+    /* QR codes use GF(256) with the primitive polynomial x^8 + x^4 + x^3 + x^2 + 1, generator base 0 */
+    private static final int PRIMITIVE = 0x011D;
+
+    /* Powers of the generator, and their logarithms, also used by ErasureDecoder */
+    static final int[] EXP = new int[255];
+    static final int[] LOG = new int[256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if (x >= 0x100) {
+                x ^= PRIMITIVE;
+            }
+        }
+    }
+
+    private SyndromeBatch() {
+    }
+
+    /**
+     * @param blocks the data and error correction codewords of each block, all of the same length
+     * @param ecCodewords the number of error correction codewords at the end of each block
+     * @return for each block, true if any of its syndromes is not zero, so it holds errors
+     */
+    static boolean[] findDamaged(byte[][] blocks, int ecCodewords) {
+        int count = blocks.length;
+        boolean[] damaged = new boolean[count];
+        if (count == 0) {
+            return damaged;
+        }
+        int length = blocks[0].length;
+
+        // Position by position: codeword j of block b at j * count + b
+        byte[] codewords = new byte[length * count];
+        for (int b = 0; b < count; b++) {
+            byte[] block = blocks[b];
+            for (int j = 0, offset = b; j < length; j++, offset += count) {
+                codewords[offset] = block[j];
+            }
+        }
+
+        int[] syndromes = new int[count];
+        int[] multiples = new int[256];
+        for (int i = 0; i < ecCodewords; i++) {
+            // Multiplying by alpha^i, evaluating every block at it by Horner's rule, highest degree first
+            for (int value = 1; value < 256; value++) {
+                multiples[value] = EXP[(LOG[value] + i) % 255];
+            }
+            Arrays.fill(syndromes, 0);
+            for (int j = 0, offset = 0; j < length; j++, offset += count) {
+                for (int b = 0; b < count; b++) {
+                    syndromes[b] = multiples[syndromes[b]] ^ (codewords[offset + b] & 0xFF);
+                }
+            }
+            for (int b = 0; b < count; b++) {
+                if (syndromes[b] != 0) {
+                    damaged[b] = true;
+                }
+            }
+        }
+        return damaged;
+    }
+}
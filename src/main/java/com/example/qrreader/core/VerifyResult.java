@@ -0,0 +1,65 @@
+package com.example.qrreader.core;
+
+/**
+ * Outcome of checking a scrambled QR code against the payload it is expected to hold.
+ *
+ * Besides the yes/no answer, the number of codewords which differ from the expected ones
+ * measures print quality: a code whose blocks come close to the number of errors the block
+ * can correct is about to become unreadable.
+ */
+public final class VerifyResult {
+
+    private final boolean verified;
+    private final int codewordErrors;
+    private final int maxBlockErrors;
+    private final int correctableErrorsPerBlock;
+    private final String decodedText;
+
+    VerifyResult(boolean verified, int codewordErrors, int maxBlockErrors, int correctableErrorsPerBlock,
+                 String decodedText) {
+        this.verified = verified;
+        this.codewordErrors = codewordErrors;
+        this.maxBlockErrors = maxBlockErrors;
+        this.correctableErrorsPerBlock = correctableErrorsPerBlock;
+        this.decodedText = decodedText;
+    }
+
+    /**
+     * @return true if the code holds the expected payload
+     */
+    public boolean isVerified() {
+        return verified;
+    }
+
+    /**
+     * @return the number of codewords which differ from the expected ones, or -1 if the
+     * code was not compared codeword by codeword, e.g. because the payload was encoded
+     * differently or does not fit the version of the code
+     */
+    public int getCodewordErrors() {
+        return codewordErrors;
+    }
+
+    /**
+     * @return the largest number of differing codewords in one error correction block,
+     * or -1 if unknown
+     */
+    public int getMaxBlockErrors() {
+        return maxBlockErrors;
+    }
+
+    /**
+     * @return how many codeword errors each error correction block of the code can correct
+     */
+    public int getCorrectableErrorsPerBlock() {
+        return correctableErrorsPerBlock;
+    }
+
+    /**
+     * @return the text the code was decoded to when the codewords alone did not settle the
+     * result, or null if the code was not decoded
+     */
+    public String getDecodedText() {
+        return decodedText;
+    }
+}
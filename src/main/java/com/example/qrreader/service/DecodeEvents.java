@@ -0,0 +1,150 @@
+package com.example.qrreader.service;
+
+import com.example.qrreader.core.DecodeObserver;
+import com.example.qrreader.core.DecodeOutcome;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Emits Java Flight Recorder events for scans and their stages, so that continuous recordings
+ * show which requests were slow and where, next to the profiling samples.
+ *
+ * {@code com.example.qrreader.Scan} events are recorded by every recording which does not turn
+ * them off; {@code com.example.qrreader.ScanStage} events only by recordings which turn them on.
+ * Both are switched on and off at runtime through the event settings of a recording, from
+ * Mission Control or with a settings file passed to {@code jcmd <pid> JFR.start settings=...},
+ * and cost next to nothing while no recording wants them.
+ *
+ * The version, error correction level and corrected errors of the decoded code are filled into
+ * the scan event of the thread which decodes it, so races, which decode on pool threads, only
+ * report the outcome. The scan event of an image of a batch whose code is located spans locating
+ * it; the codes are decoded together afterwards, and the events only report their outcomes.
+ */
+@Component
+public class DecodeEvents implements DecodeObserver {
+
+    private final AtomicLong scanIds = new AtomicLong();
+
+    private final ThreadLocal<ScanEvent> currentScan = new ThreadLocal<>();
+
+    private final ThreadLocal<ScanStageEvent> currentStage = new ThreadLocal<>();
+
+    /**
+     * Begins the scan event of an image, if a recording wants it. Stage events which begin on the
+     * same thread before the scan event ends belong to it.
+     *
+     * @param imageWidth the width of the image to scan
+     * @param imageHeight the height of the image to scan
+     * @param clientId the client or tenant the image comes from, may be null
+     * @param format what the code is decoded to
+     * @return the event to pass to {@link #scanFinished}, or null if no recording wants it
+     */
+    ScanEvent scanStarted(int imageWidth, int imageHeight, String clientId, String format) {
+        ScanEvent event = new ScanEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.id = scanIds.incrementAndGet();
+        event.clientId = clientId;
+        event.format = format;
+        event.imageWidth = imageWidth;
+        event.imageHeight = imageHeight;
+        event.begin();
+        currentScan.set(event);
+        return event;
+    }
+
+    /**
+     * Ends and commits the scan event.
+     *
+     * @param event the event returned by {@link #scanStarted}, may be null
+     * @param outcome the outcome of the scan, or null if it failed unexpectedly
+     * @param degraded whether the scan ran in degraded mode
+     */
+    void scanFinished(ScanEvent event, DecodeOutcome<?> outcome, boolean degraded) {
+        if (event == null) {
+            return;
+        }
+        currentScan.remove();
+        event.end();
+        commit(event, outcome, outcome != null ? outcome.getStatus().name() : "ERROR", degraded);
+    }
+
+    /**
+     * Ends the scan event of an image of a batch once its code is located, leaving it to be
+     * committed with {@link #locatedScanDecoded} once the codes of the batch are decoded.
+     *
+     * @param event the event returned by {@link #scanStarted}, may be null
+     */
+    void scanLocated(ScanEvent event) {
+        if (event == null) {
+            return;
+        }
+        currentScan.remove();
+        event.end();
+    }
+
+    /**
+     * Commits the scan event of an image of a batch whose code was located.
+     *
+     * @param event the event passed to {@link #scanLocated}, may be null
+     * @param outcome the outcome of decoding the code, or null if admission control turned it away
+     * @param degraded whether the code was decoded in degraded mode
+     */
+    void locatedScanDecoded(ScanEvent event, DecodeOutcome<?> outcome, boolean degraded) {
+        if (event == null) {
+            return;
+        }
+        commit(event, outcome, outcome != null ? outcome.getStatus().name() : "REJECTED", degraded);
+    }
+
+    private static void commit(ScanEvent event, DecodeOutcome<?> outcome, String status, boolean degraded) {
+        if (event.shouldCommit()) {
+            event.degraded = degraded;
+            event.status = status;
+            if (outcome != null && outcome.getFailedStage() != null) {
+                event.failedStage = outcome.getFailedStage().name();
+            }
+            event.commit();
+        }
+    }
+
+    @Override
+    public void stageStarted(DecodeObserver.Stage stage) {
+        ScanStageEvent event = new ScanStageEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        ScanEvent scan = currentScan.get();
+        event.scanId = scan != null ? scan.id : 0;
+        event.stage = stage.name();
+        event.begin();
+        currentStage.set(event);
+    }
+
+    @Override
+    public void stageFinished(DecodeObserver.Stage stage, long nanos) {
+        ScanStageEvent event = currentStage.get();
+        if (event == null) {
+            return;
+        }
+        currentStage.set(null);
+        event.end();
+        if (event.shouldCommit()) {
+            event.commit();
+        }
+    }
+
+    @Override
+    public void codeDecoded(int versionNumber, ErrorCorrectionLevel ecLevel, boolean mirrored, int correctedErrors) {
+        ScanEvent scan = currentScan.get();
+        if (scan != null) {
+            scan.version = versionNumber;
+            scan.ecLevel = ecLevel.name();
+            scan.mirrored = mirrored;
+            scan.correctedErrors = correctedErrors;
+        }
+    }
+}
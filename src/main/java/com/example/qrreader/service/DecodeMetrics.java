@@ -0,0 +1,107 @@
+package com.example.qrreader.service;
+
+import com.example.qrreader.core.DecodeObserver;
+import com.example.qrreader.core.DecodeOutcome;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports what the decoder observes as Micrometer metrics: a timer per decode stage, the outcome
+ * of every scan, the version, error correction level and mirroring of every decoded code, and how
+ * many codewords error correction had to fix.
+ *
+ * All meters are looked up once, when they are first needed, so recording is a few array loads
+ * and an update of the meter, cheap enough to leave on at full load. Percentile histograms of the
+ * stage timers can be switched on with
+ * {@code management.metrics.distribution.percentiles-histogram.qrreader.decode.stage}.
+ */
+@Component
+public class DecodeMetrics implements DecodeObserver {
+
+    private static final int MAX_VERSION = 40;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Timer[] stageTimers = new Timer[DecodeObserver.Stage.values().length];
+
+    /* Outcome counters by status, and by failed stage with none or unknown last */
+    private final Counter[][] outcomes =
+            new Counter[DecodeOutcome.Status.values().length][DecodeOutcome.Stage.values().length + 1];
+
+    /* Decoded code counters by version, error correction level and mirroring, registered on first use */
+    private final Counter[] codes = new Counter[(MAX_VERSION + 1) * ErrorCorrectionLevel.values().length * 2];
+
+    private final DistributionSummary correctedErrors;
+
+    /**
+     * @param meterRegistry the registry the meters are registered with
+     */
+    public DecodeMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (DecodeObserver.Stage stage : DecodeObserver.Stage.values()) {
+            stageTimers[stage.ordinal()] = Timer.builder("qrreader.decode.stage")
+                    .description("Time spent in each stage of a scan")
+                    .tag("stage", stage.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+        DecodeOutcome.Stage[] stages = DecodeOutcome.Stage.values();
+        for (DecodeOutcome.Status status : DecodeOutcome.Status.values()) {
+            for (int stage = 0; stage <= stages.length; stage++) {
+                if (status == DecodeOutcome.Status.OK && stage < stages.length) {
+                    continue;
+                }
+                String stageTag = stage < stages.length ? stages[stage].name().toLowerCase()
+                        : status == DecodeOutcome.Status.OK ? "none" : "unknown";
+                outcomes[status.ordinal()][stage] = Counter.builder("qrreader.scan.outcomes")
+                        .description("Scans by outcome, and by the stage in which failed scans failed")
+                        .tag("status", status.name().toLowerCase())
+                        .tag("stage", stageTag)
+                        .register(meterRegistry);
+            }
+        }
+        correctedErrors = DistributionSummary.builder("qrreader.decode.corrected.errors")
+                .description("Codewords corrected by error correction per decoded code")
+                .baseUnit("codewords")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void stageFinished(DecodeObserver.Stage stage, long nanos) {
+        stageTimers[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void codeDecoded(int versionNumber, ErrorCorrectionLevel ecLevel, boolean mirrored, int correctedErrors) {
+        int index = (versionNumber * ErrorCorrectionLevel.values().length + ecLevel.ordinal()) * 2 + (mirrored ? 1 : 0);
+        Counter counter = codes[index];
+        if (counter == null) {
+            // Registering is idempotent, so threads racing here end up with the same counter
+            counter = Counter.builder("qrreader.decode.codes")
+                    .description("Decoded codes by version, error correction level and mirroring")
+                    .tag("version", String.valueOf(versionNumber))
+                    .tag("ec.level", ecLevel.name())
+                    .tag("mirrored", String.valueOf(mirrored))
+                    .register(meterRegistry);
+            codes[index] = counter;
+        }
+        counter.increment();
+        this.correctedErrors.record(correctedErrors);
+    }
+
+    /**
+     * Counts the outcome of a scan.
+     *
+     * @param outcome the outcome
+     */
+    public void scanFinished(DecodeOutcome<?> outcome) {
+        DecodeOutcome.Stage stage = outcome.getFailedStage();
+        outcomes[outcome.getStatus().ordinal()][stage != null ? stage.ordinal() : DecodeOutcome.Stage.values().length]
+                .increment();
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.qrreader.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Watches the number of scans in flight and their recent latency, and decides when the
+ * scan path should switch to its degraded mode. {@link ScanAdmission} lets no scans wait, so
+ * the scans in flight are the scans running.
+ *
+ * The monitor enters degraded mode when either the scans in flight or the moving average
+ * of their latency reach the upper thresholds. It only returns to full quality once both are
+ * back below the lower thresholds and degraded mode has lasted a minimum time, so that it
+ * does not flap around a single threshold.
+ */
+@Component
+public class LoadMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadMonitor.class);
+
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    @Autowired
+    private Environment environment;
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private boolean enabled;
+    private int enterInFlight;
+    private int exitInFlight;
+    private double enterLatencyMillis;
+    private double exitLatencyMillis;
+    private long minDegradedNanos;
+
+    private volatile double latencyMillis;
+    private volatile boolean degraded;
+    private long degradedSince;
+
+    @PostConstruct
+    void init() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        enabled = environment.getProperty("qrreader.degrade.enabled", Boolean.class, true);
+        enterInFlight = environment.getProperty("qrreader.degrade.enter-in-flight", Integer.class, cores);
+        exitInFlight = environment.getProperty("qrreader.degrade.exit-in-flight", Integer.class,
+                Math.max(1, cores / 2));
+        enterLatencyMillis = environment.getProperty("qrreader.degrade.enter-latency-ms", Double.class, 2000.0);
+        exitLatencyMillis = environment.getProperty("qrreader.degrade.exit-latency-ms", Double.class, 500.0);
+        minDegradedNanos = TimeUnit.MILLISECONDS.toNanos(
+                environment.getProperty("qrreader.degrade.min-duration-ms", Long.class, 5000L));
+    }
+
+    /**
+     * Registers the start of a scan.
+     */
+    public void scanStarted() {
+        update(running.incrementAndGet());
+    }
+
+    /**
+     * Registers the end of a scan.
+     *
+     * @param nanos how long the scan took
+     */
+    public void scanFinished(long nanos) {
+        synchronized (this) {
+            latencyMillis += LATENCY_SMOOTHING * (nanos / 1_000_000.0 - latencyMillis);
+        }
+        update(running.decrementAndGet());
+    }
+
+    /**
+     * @return true if scans should currently be run in degraded mode
+     */
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * @return the number of scans running
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    /**
+     * @return the moving average of the scan latency in milliseconds
+     */
+    public double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    private void update(int scansRunning) {
+        if (!enabled) {
+            return;
+        }
+        int scansInFlight = scansRunning;
+        double latency = latencyMillis;
+        if (!degraded) {
+            if (scansInFlight >= enterInFlight || latency >= enterLatencyMillis) {
+                enterDegraded(scansInFlight, latency);
+            }
+        } else if (scansInFlight <= exitInFlight && latency <= exitLatencyMillis) {
+            exitDegraded(scansInFlight, latency);
+        }
+    }
+
+    private synchronized void enterDegraded(int scansInFlight, double latency) {
+        if (!degraded) {
+            degraded = true;
+            degradedSince = System.nanoTime();
+            LOG.warn("Entering degraded scan mode: {} scans in flight, {} ms average latency",
+                    scansInFlight, Math.round(latency));
+        }
+    }
+
+    private synchronized void exitDegraded(int scansInFlight, double latency) {
+        if (degraded && System.nanoTime() - degradedSince >= minDegradedNanos) {
+            degraded = false;
+            LOG.info("Leaving degraded scan mode: {} scans in flight, {} ms average latency",
+                    scansInFlight, Math.round(latency));
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.qrreader.service;
+
+import com.example.qrreader.core.ScQRCodeWriter;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Service which generates scrambled QR code labels in bulk, with the same key the scan path uses.
+ *
+ * The labels are rendered to PNG on a dedicated pool and written to a ZIP stream in the order
+ * of the payloads. Only a bounded window of labels is rendered ahead of the stream, so memory
+ * stays flat however many labels are requested and a slow client slows down the rendering.
+ * PNG data is already compressed, so the entries are stored rather than deflated.
+ */
+@Service
+public class QRGenerationService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QRGenerationService.class);
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ScrambleKey scrambleKey;
+
+    private ScQRCodeWriter writer;
+
+    private ExecutorService renderPool;
+
+    private int window;
+
+    private int maxLabels;
+
+    private int maxSize;
+
+    @PostConstruct
+    void init() {
+        writer = new ScQRCodeWriter(scrambleKey.getKeyArr());
+        int threads = environment.getProperty("qrreader.generate.threads", Integer.class,
+                Runtime.getRuntime().availableProcessors());
+        window = environment.getProperty("qrreader.generate.window", Integer.class, 4 * threads);
+        maxLabels = environment.getProperty("qrreader.generate.max-labels", Integer.class, 500_000);
+        maxSize = environment.getProperty("qrreader.generate.max-size", Integer.class, 4000);
+        renderPool = Executors.newFixedThreadPool(threads, new NamedThreadFactory("qr-generate-"));
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        renderPool.shutdownNow();
+        renderPool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return the largest number of labels one request may generate
+     */
+    public int getMaxLabels() {
+        return maxLabels;
+    }
+
+    /**
+     * @return the largest width and height of a label, in pixels
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Renders one PNG label per payload and writes them to a ZIP stream, named by their
+     * position in the list starting at 1. Payloads which cannot be encoded, e.g. because they
+     * are too long, are listed in a final {@code errors.txt} entry instead.
+     *
+     * @param payloads the label contents
+     * @param size the width and height of each label, in pixels
+     * @param ecLevel the error correction level
+     * @param out the stream to write the ZIP file to
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeZip(List<String> payloads, int size, ErrorCorrectionLevel ecLevel, OutputStream out)
+            throws IOException {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.ERROR_CORRECTION, ecLevel);
+
+        String nameFormat = "%0" + String.valueOf(payloads.size()).length() + "d.png";
+        StringBuilder errors = new StringBuilder();
+        Deque<Future<Label>> pending = new ArrayDeque<>(window);
+        long start = System.nanoTime();
+        ZipOutputStream zip = new ZipOutputStream(out);
+        try {
+            int next = 0;
+            while (next < payloads.size() || !pending.isEmpty()) {
+                while (next < payloads.size() && pending.size() < window) {
+                    String payload = payloads.get(next);
+                    String name = String.format(nameFormat, next + 1);
+                    pending.add(renderPool.submit(() -> render(name, payload, size, hints)));
+                    next++;
+                }
+                Label label = await(pending.poll());
+                if (label.png != null) {
+                    writeStored(zip, label.name, label.png, label.crc);
+                } else {
+                    errors.append(label.name).append(": ").append(label.error).append('\n');
+                }
+            }
+            if (errors.length() > 0) {
+                byte[] errorBytes = errors.toString().getBytes(StandardCharsets.UTF_8);
+                CRC32 crc = new CRC32();
+                crc.update(errorBytes);
+                writeStored(zip, "errors.txt", errorBytes, crc.getValue());
+            }
+            zip.finish();
+        } finally {
+            // Stop rendering labels nobody will write any more, e.g. after the client went away
+            for (Future<Label> future : pending) {
+                future.cancel(true);
+            }
+        }
+        LOG.info("Generated {} labels in {} ms", payloads.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private Label render(String name, String payload, int size, Map<EncodeHintType, ?> hints) {
+        BitMatrix matrix;
+        try {
+            matrix = writer.encode(payload, BarcodeFormat.QR_CODE, size, size, hints);
+        } catch (WriterException | IllegalArgumentException e) {
+            return new Label(name, null, 0, e.getMessage());
+        }
+        byte[] pngBytes = LabelPngEncoder.encode(matrix);
+        CRC32 crc = new CRC32();
+        crc.update(pngBytes);
+        return new Label(name, pngBytes, crc.getValue(), null);
+    }
+
+    private static Label await(Future<Label> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating labels", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Label could not be rendered", e.getCause());
+        }
+    }
+
+    private static void writeStored(ZipOutputStream zip, String name, byte[] data, long crc) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc);
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    /*
+     * A rendered label, or the reason it could not be rendered.
+     */
+    private static final class Label {
+
+        private final String name;
+        private final byte[] png;
+        private final long crc;
+        private final String error;
+
+        Label(String name, byte[] png, long crc, String error) {
+            this.name = name;
+            this.png = png;
+            this.crc = crc;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,683 @@
+package com.example.qrreader.service;
+
+import com.example.qrreader.core.DecodeObserver;
+import com.example.qrreader.core.DecodeOutcome;
+import com.example.qrreader.core.DecodeStrategy;
+import com.example.qrreader.core.LuminanceConverter;
+import com.example.qrreader.core.ScQRCodeRacer;
+import com.example.qrreader.core.ScQRCodeReader;
+import com.example.qrreader.core.ScQRResult;
+import com.example.qrreader.core.VerifyResult;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ChecksumException;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.DetectorResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service which scans QR code images with the configured 256-bit key.
+ *
+ * By default the configured {@link DecodeStrategy} variants of an image are tried one after
+ * the other, in the order which {@link StrategyStatistics} expects to succeed soonest for the
+ * requesting client, and at most {@code qrreader.strategy.max-attempts} of them, so that an
+ * image without a readable code costs a bounded number of binarizations. When
+ * {@code qrreader.race.enabled} is set, the variants are instead raced against each other on a
+ * shared pool, and the first successful decode wins.
+ *
+ * While the {@link LoadMonitor} reports overload, scans run in a degraded mode instead: the
+ * image is scaled down to a pixel budget, only {@link DecodeStrategy#HYBRID} is tried and the
+ * decoder does not retry mirrored codes. Such scans are flagged, so that clients whose image
+ * could not be read can retry later.
+ *
+ * Uploaded images pass {@link ScanAdmission} before they are decoded into pixels, so that an
+ * overloaded node turns requests away quickly instead of queueing unbounded work.
+ *
+ * Images can also be checked against the payload they are expected to hold, which is faster
+ * than scanning them and measures how many codewords are damaged.
+ *
+ * Codes which carry binary data can be scanned to the raw bytes of their byte segments, which
+ * skips guessing a character set and building text. Binary scans try the strategies in turn
+ * even when racing is enabled.
+ *
+ * Byte segments without an ECI are decoded in the character set {@code qrreader.decode.charset}
+ * when it is set, instead of guessing one, for deployments whose clients all use a known one.
+ *
+ * Failing to read a code is normal, so scans report failures in the {@link ScanReport} instead
+ * of throwing: the status says why the scan failed and in which stage. With
+ * {@code qrreader.scan.timeout-ms} set, a scan which tries its strategies in turn gives up at
+ * the next stage boundary once that time has passed.
+ *
+ * Every stage of a scan is timed, and outcomes and decoded codes are counted, by {@link DecodeMetrics}.
+ * Scans and their stages are also recorded as flight recorder events by {@link DecodeEvents}.
+ * A scan can ask for its own {@link ScanTiming} breakdown, and a fraction
+ * {@code qrreader.scan.timing.sample-rate} of all scans logs one; the others collect nothing.
+ *
+ * Text scans of images with at least {@code qrreader.pyramid.min-pixels} pixels first look for
+ * the code on copies at a half and a quarter of the resolution, and only read its modules at
+ * full resolution, so that high resolution photos cost little more to scan than small ones.
+ * The strategies are tried when that fails.
+ *
+ * When error correction fails on the modules a strategy sampled, text scans read them again off
+ * the luminance and erase the least clearly read codewords, see {@link ScQRCodeReader}.
+ */
+@Service
+public class QRScanService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QRScanService.class);
+
+    private static final Decoding<ScQRResult> TEXT = (reader, bitmap, luminance, hints, keyArr, deadlineNanos) ->
+            reader.tryDecode(bitmap, luminance, hints, keyArr, Set.of(), deadlineNanos);
+
+    private static final Decoding<ByteBuffer> BINARY = (reader, bitmap, luminance, hints, keyArr, deadlineNanos) -> {
+        try {
+            return DecodeOutcome.success(reader.decodeBinary(bitmap, hints, keyArr));
+        } catch (NotFoundException | ChecksumException | FormatException e) {
+            return DecodeOutcome.failure(e);
+        }
+    };
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ScrambleKey scrambleKey;
+
+    @Autowired
+    private StrategyStatistics strategyStatistics;
+
+    @Autowired
+    private LoadMonitor loadMonitor;
+
+    @Autowired
+    private ScanAdmission admission;
+
+    @Autowired
+    private DecodeMetrics decodeMetrics;
+
+    @Autowired
+    private DecodeEvents decodeEvents;
+
+    /* Both the metrics and the flight recorder events */
+    private DecodeObserver observer;
+
+    private int[] keyArr;
+
+    private Map<DecodeHintType, ?> hints;
+
+    private List<DecodeStrategy> strategies;
+
+    private int maxAttempts;
+
+    private ExecutorService racePool;
+
+    private ScQRCodeRacer racer;
+
+    private long degradedPixelBudget;
+
+    private long timeoutNanos;
+
+    private double timingSampleRate;
+
+    private long pyramidMinPixels;
+
+    private int maxBatchImages;
+
+    @PostConstruct
+    void init() {
+        keyArr = scrambleKey.getKeyArr();
+        observer = DecodeObserver.combine(decodeMetrics, decodeEvents);
+
+        String charset = environment.getProperty("qrreader.decode.charset");
+        if (charset != null && !charset.isBlank()) {
+            hints = Map.of(DecodeHintType.CHARACTER_SET, Charset.forName(charset.trim()).name());
+        }
+
+        degradedPixelBudget = environment.getProperty("qrreader.degrade.pixel-budget", Long.class, 2_000_000L);
+        timeoutNanos = TimeUnit.MILLISECONDS.toNanos(environment.getProperty("qrreader.scan.timeout-ms", Long.class, 0L));
+        timingSampleRate = environment.getProperty("qrreader.scan.timing.sample-rate", Double.class, 0.0);
+        pyramidMinPixels = environment.getProperty("qrreader.pyramid.enabled", Boolean.class, true)
+                ? environment.getProperty("qrreader.pyramid.min-pixels", Long.class, 2_000_000L)
+                : Long.MAX_VALUE;
+
+        strategies = new ArrayList<>();
+        for (String name : environment.getProperty("qrreader.strategies", String[].class,
+                new String[]{"HYBRID", "GLOBAL_HISTOGRAM", "INVERTED", "ROTATED_90"})) {
+            strategies.add(DecodeStrategy.valueOf(name.trim()));
+        }
+        maxAttempts = Math.max(1, environment.getProperty("qrreader.strategy.max-attempts", Integer.class, 2));
+        maxBatchImages = environment.getProperty("qrreader.batch.max-images", Integer.class, 100);
+
+        if (environment.getProperty("qrreader.race.enabled", Boolean.class, false)) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            int threads = environment.getProperty("qrreader.race.threads", Integer.class, cores);
+            int maxConcurrent = environment.getProperty("qrreader.race.max-concurrent", Integer.class,
+                    Math.max(1, cores / strategies.size()));
+            racePool = Executors.newFixedThreadPool(threads, new NamedThreadFactory("qr-race-"));
+            racer = new ScQRCodeRacer(racePool, maxConcurrent, strategies, observer);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (racePool != null) {
+            racePool.shutdownNow();
+            racePool.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Scans the QR code in an uploaded image, once admission control lets it through, and
+     * optionally reports how long each stage of the scan took.
+     * Only the image header is read before admission; the pixels are decoded after it.
+     *
+     * @param input the uploaded image file
+     * @param clientId the client or tenant the image comes from, may be null
+     * @param caller the authenticated principal or remote address of the request, which admission
+     *               control limits the scans in flight of, may be null
+     * @param timed whether the report should carry a {@link ScanTiming} breakdown
+     * @return the QR payload message or why no code could be read, and whether it was scanned in degraded mode
+     * @throws IOException if the image cannot be read
+     * @throws ScanRejectedException if admission control turns the scan away
+     */
+    public ScanReport scan(ImageInputStream input, String clientId, String caller, boolean timed)
+            throws IOException {
+        ScanTiming timing = startTiming(timed);
+        if (timing == null) {
+            return readAdmitted(input, clientId, "text", caller, observer,
+                    (image, event) -> scan(image, clientId, observer, null, event));
+        }
+        DecodeObserver scanObserver = DecodeObserver.combine(observer, timing);
+        return finishTiming(timing, timed, clientId,
+                readAdmitted(input, clientId, "text", caller, scanObserver,
+                        (image, event) -> scan(image, clientId, scanObserver, timing, event)));
+    }
+
+    /**
+     * Scans the QR code in an uploaded image to the raw bytes of its byte segments, once
+     * admission control lets it through, and optionally reports how long each stage took.
+     *
+     * @param input the uploaded image file
+     * @param clientId the client or tenant the image comes from, may be null
+     * @param caller the authenticated principal or remote address of the request, may be null
+     * @param timed whether the report should carry a {@link ScanTiming} breakdown
+     * @return the payload bytes or why no code could be read, and whether they were scanned in degraded mode
+     * @throws IOException if the image cannot be read
+     * @throws ScanRejectedException if admission control turns the scan away
+     */
+    public ScanReport scanBinary(ImageInputStream input, String clientId, String caller, boolean timed)
+            throws IOException {
+        ScanTiming timing = startTiming(timed);
+        if (timing == null) {
+            return readAdmitted(input, clientId, "binary", caller, observer,
+                    (image, event) -> scanBinary(image, clientId, observer, null, event));
+        }
+        DecodeObserver scanObserver = DecodeObserver.combine(observer, timing);
+        return finishTiming(timing, timed, clientId,
+                readAdmitted(input, clientId, "binary", caller, scanObserver,
+                        (image, event) -> scanBinary(image, clientId, scanObserver, timing, event)));
+    }
+
+    /**
+     * Scans the QR codes in many uploaded images, for batch and archive workloads whose codes are
+     * mostly intact. The images are admitted and read one at a time, and only the modules of the
+     * code each one holds are kept; the codes are then decoded together, so that only the error
+     * correction blocks which hold errors are corrected, see {@link ScQRCodeReader#tryDecodeAll}.
+     * Decoding them together is admitted into the large lane, as one scan. An image in which the
+     * hybrid binarizer finds no code, or any image while the node is in degraded mode, is scanned
+     * like {@link #scan} right away, while it is still in memory.
+     *
+     * @param images the uploaded image files, at most {@link #getMaxBatchImages()} of them
+     * @param clientId the client or tenant the images come from, may be null
+     * @param caller the authenticated principal or remote address of the request, may be null
+     * @return for each image in order, the QR payload message, why no code could be read, or that
+     *         admission control turned it away; null for an image which cannot be read
+     */
+    public List<ScanReport> scanBatch(List<? extends InputStreamSource> images, String clientId, String caller) {
+        ScanReport[] reports = new ScanReport[images.size()];
+        List<DetectorResult> located = new ArrayList<>();
+        List<ScanEvent> locatedEvents = new ArrayList<>();
+        List<Integer> locatedImages = new ArrayList<>();
+        for (int i = 0; i < reports.length; i++) {
+            try (ImageInputStream input = ImageIO.createImageInputStream(images.get(i).getInputStream())) {
+                reports[i] = readAdmitted(input, clientId, "batch", caller, observer,
+                        (image, event) -> locate(image, clientId, event, located, locatedEvents));
+            } catch (IOException e) {
+                continue;
+            } catch (ScanRejectedException e) {
+                reports[i] = new ScanReport(e);
+                continue;
+            }
+            if (reports[i] == null) {
+                locatedImages.add(i);
+            }
+        }
+        if (located.isEmpty()) {
+            return Arrays.asList(reports);
+        }
+
+        List<DecodeOutcome<ScQRResult>> outcomes;
+        boolean degraded;
+        try (ScanAdmission.Ticket ignored = admission.admit(ScanAdmission.Lane.LARGE, caller)) {
+            loadMonitor.scanStarted();
+            long start = System.nanoTime();
+            degraded = loadMonitor.isDegraded();
+            try {
+                // Under load, a code which cannot be decoded is not retried as a mirrored one
+                outcomes = new ScQRCodeReader(!degraded, observer).tryDecodeAll(located, hints, keyArr, Set.of());
+            } finally {
+                loadMonitor.scanFinished(System.nanoTime() - start);
+            }
+        } catch (ScanRejectedException e) {
+            for (int j = 0; j < located.size(); j++) {
+                decodeEvents.locatedScanDecoded(locatedEvents.get(j), null, false);
+                reports[locatedImages.get(j)] = new ScanReport(e);
+            }
+            return Arrays.asList(reports);
+        }
+        for (int j = 0; j < outcomes.size(); j++) {
+            DecodeOutcome<ScQRResult> outcome = outcomes.get(j);
+            decodeMetrics.scanFinished(outcome);
+            decodeEvents.locatedScanDecoded(locatedEvents.get(j), outcome, degraded);
+            reports[locatedImages.get(j)] = outcome.isSuccess()
+                    ? new ScanReport(outcome.getResult().getText(), degraded) : new ScanReport(outcome, degraded);
+        }
+        return Arrays.asList(reports);
+    }
+
+    /**
+     * @return the most images {@link #scanBatch} scans at once, {@code qrreader.batch.max-images}
+     */
+    public int getMaxBatchImages() {
+        return maxBatchImages;
+    }
+
+    /*
+     * Locates the code in an image of a batch and adds it and its scan event to the located codes,
+     * answering null, or scans the image on its own if no code is found or the node is degraded.
+     */
+    private ScanReport locate(BufferedImage image, String clientId, ScanEvent event, List<DetectorResult> located,
+                              List<ScanEvent> locatedEvents) {
+        if (loadMonitor.isDegraded()) {
+            return scan(image, clientId, observer, null, event);
+        }
+        loadMonitor.scanStarted();
+        long start = System.nanoTime();
+        DecodeOutcome<DetectorResult> outcome;
+        try {
+            LuminanceSource source = luminance(image, observer);
+            outcome = new ScQRCodeReader(true, observer).tryLocate(DecodeStrategy.HYBRID.toBitmap(source), hints);
+        } finally {
+            loadMonitor.scanFinished(System.nanoTime() - start);
+        }
+        if (!outcome.isSuccess()) {
+            return scan(image, clientId, observer, null, event);
+        }
+        decodeEvents.scanLocated(event);
+        located.add(outcome.getResult());
+        locatedEvents.add(event);
+        return null;
+    }
+
+    /*
+     * Starts a breakdown if the scan asks for one or is sampled for logging, and otherwise returns null.
+     */
+    private ScanTiming startTiming(boolean timed) {
+        if (timed || timingSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < timingSampleRate) {
+            return new ScanTiming();
+        }
+        return null;
+    }
+
+    /*
+     * Logs the breakdown of a sampled scan, and hands it to the caller if it asked for it.
+     */
+    private ScanReport finishTiming(ScanTiming timing, boolean timed, String clientId, ScanReport report) {
+        timing.finished();
+        if (!timed) {
+            LOG.info("Sampled scan for client {} finished {}: {}", clientId, report.getStatus(), timing);
+            return report;
+        }
+        return report.withTiming(timing);
+    }
+
+    /**
+     * Checks that the QR code in an uploaded image holds the expected payload, once admission
+     * control lets it through. The configured strategies are tried in turn, at most
+     * {@code qrreader.strategy.max-attempts} of them, until one of them finds a code which holds
+     * the payload.
+     *
+     * @param input the uploaded image file
+     * @param expected the payload the code should hold
+     * @param caller the authenticated principal or remote address of the request, may be null
+     * @return whether the code holds the payload, and how many of its codewords differ
+     * @throws IOException if the image cannot be read
+     * @throws ScanRejectedException if admission control turns the scan away
+     * @throws NotFoundException if no QR code is found in the image
+     * @throws FormatException if the version or format information of the code cannot be read
+     */
+    public VerifyResult verify(ImageInputStream input, String expected, String caller)
+            throws IOException, ReaderException {
+        return readAdmitted(input, null, null, caller, observer, (image, event) -> verify(image, expected));
+    }
+
+    private VerifyResult verify(BufferedImage image, String expected) throws NotFoundException, FormatException {
+        loadMonitor.scanStarted();
+        long start = System.nanoTime();
+        try {
+            LuminanceSource source = luminance(image, observer);
+            ScQRCodeReader reader = new ScQRCodeReader(true, observer);
+            VerifyResult result = null;
+            FormatException formatException = null;
+            int attempts = 0;
+            for (DecodeStrategy strategy : strategies) {
+                if (!strategy.supports(source)) {
+                    continue;
+                }
+                if (attempts++ == maxAttempts) {
+                    break;
+                }
+                try {
+                    result = reader.verify(strategy.toBitmap(source), expected, hints, keyArr);
+                    if (result.isVerified()) {
+                        return result;
+                    }
+                } catch (NotFoundException e) {
+                    // Try the next strategy
+                } catch (FormatException e) {
+                    formatException = e;
+                }
+            }
+            if (result != null) {
+                return result;
+            }
+            if (formatException != null) {
+                throw formatException;
+            }
+            throw NotFoundException.getNotFoundInstance();
+        } finally {
+            loadMonitor.scanFinished(System.nanoTime() - start);
+        }
+    }
+
+    /*
+     * Reads the image header, is admitted or rejected, and then reads the pixels and processes them.
+     * The scan event, if the image is decoded to a format, begins before the pixels are read, so
+     * that it spans reading them and the stage event of reading them belongs to it.
+     */
+    private <T, E extends Exception> T readAdmitted(ImageInputStream input, String clientId, String format,
+                                                    String caller, DecodeObserver observer, ImageTask<T, E> task)
+            throws IOException, E {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            try (ScanAdmission.Ticket ignored = admission.admit((long) width * height, caller)) {
+                ScanEvent event = format != null ? decodeEvents.scanStarted(width, height, clientId, format) : null;
+                observer.stageStarted(DecodeObserver.Stage.IMAGE_READ);
+                long start = System.nanoTime();
+                BufferedImage image;
+                try {
+                    image = reader.read(0);
+                } catch (IOException | RuntimeException e) {
+                    decodeEvents.scanFinished(event, null, false);
+                    throw e;
+                } finally {
+                    observer.stageFinished(DecodeObserver.Stage.IMAGE_READ, System.nanoTime() - start);
+                }
+                return task.run(image, event);
+            }
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Scans the QR code in the given image.
+     *
+     * @param image the uploaded image
+     * @param clientId the client or tenant the image comes from, may be null
+     * @return the QR payload message or why no code could be read, and whether it was scanned in degraded mode
+     */
+    public ScanReport scan(BufferedImage image, String clientId) {
+        return scan(image, clientId, observer, null);
+    }
+
+    private ScanReport scan(BufferedImage image, String clientId, DecodeObserver observer, ScanTiming timing) {
+        return scan(image, clientId, observer, timing,
+                decodeEvents.scanStarted(image.getWidth(), image.getHeight(), clientId, "text"));
+    }
+
+    private ScanReport scan(BufferedImage image, String clientId, DecodeObserver observer, ScanTiming timing,
+                            ScanEvent event) {
+        loadMonitor.scanStarted();
+        long start = System.nanoTime();
+        boolean degraded = false;
+        DecodeOutcome<ScQRResult> outcome = null;
+        if (timing != null) {
+            timing.imageRead(image.getWidth(), image.getHeight());
+        }
+        try {
+            degraded = loadMonitor.isDegraded();
+            if (degraded) {
+                outcome = decodeDegraded(image, deadline(start), observer, TEXT);
+            } else {
+                LuminanceSource source = luminance(image, observer);
+                outcome = decodePyramid(source, deadline(start), observer);
+                if (!outcome.isSuccess() && outcome.getStatus() != DecodeOutcome.Status.TIMEOUT) {
+                    outcome = racer != null ? race(source, observer)
+                            : decodeInTurn(source, clientId, deadline(start), observer, TEXT);
+                }
+            }
+            decodeMetrics.scanFinished(outcome);
+            if (!outcome.isSuccess()) {
+                return new ScanReport(outcome, degraded);
+            }
+            return new ScanReport(outcome.getResult().getText(), degraded);
+        } finally {
+            decodeEvents.scanFinished(event, outcome, degraded);
+            loadMonitor.scanFinished(System.nanoTime() - start);
+        }
+    }
+
+    private ScanReport scanBinary(BufferedImage image, String clientId, DecodeObserver observer, ScanTiming timing,
+                                  ScanEvent event) {
+        loadMonitor.scanStarted();
+        long start = System.nanoTime();
+        boolean degraded = false;
+        DecodeOutcome<ByteBuffer> outcome = null;
+        if (timing != null) {
+            timing.imageRead(image.getWidth(), image.getHeight());
+        }
+        try {
+            degraded = loadMonitor.isDegraded();
+            if (degraded) {
+                outcome = decodeDegraded(image, deadline(start), observer, BINARY);
+            } else {
+                LuminanceSource source = luminance(image, observer);
+                outcome = decodeInTurn(source, clientId, deadline(start), observer, BINARY);
+            }
+            decodeMetrics.scanFinished(outcome);
+            if (!outcome.isSuccess()) {
+                return new ScanReport(outcome, degraded);
+            }
+            return new ScanReport(outcome.getResult(), degraded);
+        } finally {
+            decodeEvents.scanFinished(event, outcome, degraded);
+            loadMonitor.scanFinished(System.nanoTime() - start);
+        }
+    }
+
+    /*
+     * Tries to locate the code of a large image on downsampled copies of it first, which is much
+     * cheaper than binarizing and searching it at full resolution. The strategies are the
+     * fallback, so a failure here is not recorded in their statistics.
+     */
+    private DecodeOutcome<ScQRResult> decodePyramid(LuminanceSource source, long deadlineNanos,
+                                                    DecodeObserver observer) {
+        if ((long) source.getWidth() * source.getHeight() < pyramidMinPixels) {
+            return DecodeOutcome.failure(DecodeOutcome.Status.NOT_FOUND, null);
+        }
+        return new ScQRCodeReader(true, observer).tryDecodePyramid(source, hints, keyArr, Set.of(), deadlineNanos);
+    }
+
+    private DecodeOutcome<ScQRResult> race(LuminanceSource source, DecodeObserver observer) {
+        try {
+            return DecodeOutcome.success(racer.race(source, hints, keyArr, Set.of(), observer));
+        } catch (NotFoundException | ChecksumException | FormatException e) {
+            return DecodeOutcome.failure(e);
+        }
+    }
+
+    private long deadline(long start) {
+        return timeoutNanos > 0 ? start + timeoutNanos : Long.MAX_VALUE;
+    }
+
+    private static LuminanceSource luminance(BufferedImage image, DecodeObserver observer) {
+        observer.stageStarted(DecodeObserver.Stage.LUMINANCE);
+        long start = System.nanoTime();
+        LuminanceSource source = new BufferedImageLuminanceSource(LuminanceConverter.toGray(image));
+        observer.stageFinished(DecodeObserver.Stage.LUMINANCE, System.nanoTime() - start);
+        return source;
+    }
+
+    /**
+     * @return true if scans currently run in degraded mode
+     */
+    public boolean isDegraded() {
+        return loadMonitor.isDegraded();
+    }
+
+    private <T> DecodeOutcome<T> decodeDegraded(BufferedImage image, long deadlineNanos, DecodeObserver observer,
+                                                Decoding<T> decoding) {
+        LuminanceSource source = luminance(scaleToBudget(image, degradedPixelBudget), observer);
+        ScQRCodeReader reader = new ScQRCodeReader(false, observer);
+        // Under load, a code whose sampled modules cannot be corrected is not read a second time
+        DecodeOutcome<T> outcome =
+                decoding.decode(reader, DecodeStrategy.HYBRID.toBitmap(source), null, hints, keyArr, deadlineNanos);
+        if (outcome.isSuccess()) {
+            observer.strategySucceeded(DecodeStrategy.HYBRID);
+        }
+        return outcome;
+    }
+
+    /*
+     * Scales the image down to at most the given number of pixels. The scaled image is drawn
+     * straight into grey scale, which is what the luminance source would convert it to anyway.
+     */
+    private static BufferedImage scaleToBudget(BufferedImage image, long pixelBudget) {
+        long pixels = (long) image.getWidth() * image.getHeight();
+        if (pixels <= pixelBudget) {
+            return image;
+        }
+        double scale = Math.sqrt((double) pixelBudget / pixels);
+        int width = Math.max(1, (int) (image.getWidth() * scale));
+        int height = Math.max(1, (int) (image.getHeight() * scale));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            // Transparent pixels count as white, as in BufferedImageLuminanceSource
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    /*
+     * Tries the strategies in the order expected to succeed soonest, up to the maximum number of
+     * attempts, and feeds the outcome of every attempt back into the statistics. Attempts cut short
+     * by the deadline say nothing about the strategy and are not recorded. A deadline which passes
+     * between attempts is reported with the stage the last attempt ended in.
+     */
+    private <T> DecodeOutcome<T> decodeInTurn(LuminanceSource source, String clientId, long deadlineNanos,
+                                              DecodeObserver observer, Decoding<T> decoding) {
+        ScQRCodeReader reader = new ScQRCodeReader(true, observer);
+        DecodeOutcome<T> failure = null;
+        int attempts = 0;
+        for (DecodeStrategy strategy : strategyStatistics.order(clientId, strategies)) {
+            if (!strategy.supports(source)) {
+                continue;
+            }
+            if (attempts++ == maxAttempts) {
+                break;
+            }
+            long start = System.nanoTime();
+            if (deadlineNanos != Long.MAX_VALUE && start - deadlineNanos > 0) {
+                return DecodeOutcome.failure(DecodeOutcome.Status.TIMEOUT,
+                        failure != null ? failure.getFailedStage() : null);
+            }
+            LuminanceSource luminance = strategy.luminance(source);
+            DecodeOutcome<T> outcome = decoding.decode(reader, new BinaryBitmap(strategy.binarizer(luminance)),
+                    luminance, hints, keyArr, deadlineNanos);
+            if (outcome.getStatus() == DecodeOutcome.Status.TIMEOUT) {
+                return outcome;
+            }
+            strategyStatistics.record(clientId, strategy, outcome.isSuccess(), System.nanoTime() - start);
+            if (outcome.isSuccess()) {
+                observer.strategySucceeded(strategy);
+                return outcome;
+            }
+            // Prefer reporting a code which was found over one which was not
+            failure = failure == null ? outcome : failure.moreSpecific(outcome);
+        }
+        return failure != null ? failure : DecodeOutcome.failure(DecodeOutcome.Status.NOT_FOUND, null);
+    }
+
+    /*
+     * What a scan decodes a located code to, giving up once the deadline has passed. The luminance
+     * the bitmap is binarized from, if given, lets text scans read the modules again when error
+     * correction fails.
+     */
+    private interface Decoding<T> {
+        DecodeOutcome<T> decode(ScQRCodeReader reader, BinaryBitmap bitmap, LuminanceSource luminance,
+                                Map<DecodeHintType, ?> hints, int[] keyArr, long deadlineNanos);
+    }
+
+    /*
+     * Work on an admitted image, with its scan event, which is null if no recording wants it.
+     */
+    private interface ImageTask<T, E extends Exception> {
+        T run(BufferedImage image, ScanEvent event) throws E;
+    }
+}
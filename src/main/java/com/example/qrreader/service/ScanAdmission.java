@@ -0,0 +1,194 @@
+package com.example.qrreader.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control in front of the CPU-bound scan path.
+ *
+ * Scans are admitted into one of two lanes by image size, so that small images are not stuck
+ * behind very large ones. Each lane runs a bounded number of scans at a time, sized to the
+ * number of cores. Nothing waits for admission: waiting would park a request thread, and
+ * running out of request threads is what admission control is there to prevent. A scan which
+ * finds its lane full, or whose caller already has too many scans in flight, is rejected
+ * straight away with a {@link ScanRejectedException}, for the client to retry later.
+ *
+ * Scans in flight are limited per caller, which is the authenticated principal or the remote
+ * address of the request, never an identifier the client chooses itself.
+ *
+ * Running scans and rejections are exported as metrics.
+ */
+@Component
+public class ScanAdmission {
+
+    /**
+     * The lanes scans are admitted into.
+     */
+    public enum Lane {
+        SMALL,
+        LARGE
+    }
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+
+    private final ConcurrentMap<String, AtomicInteger> callerScans = new ConcurrentHashMap<>();
+
+    private long largePixels;
+    private int maxScansPerCaller;
+    private long retryAfterSeconds;
+    private Counter callerLimitRejections;
+
+    @PostConstruct
+    void init() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        largePixels = environment.getProperty("qrreader.admission.large-pixels", Long.class, 4_000_000L);
+        maxScansPerCaller = environment.getProperty("qrreader.admission.max-scans-per-caller", Integer.class, cores);
+        retryAfterSeconds = environment.getProperty("qrreader.admission.retry-after-seconds", Long.class, 1L);
+
+        lanes.put(Lane.SMALL, new LaneState(Lane.SMALL,
+                environment.getProperty("qrreader.admission.small.concurrency", Integer.class, cores)));
+        lanes.put(Lane.LARGE, new LaneState(Lane.LARGE,
+                environment.getProperty("qrreader.admission.large.concurrency", Integer.class, Math.max(1, cores / 2))));
+
+        callerLimitRejections = Counter.builder("qrreader.admission.rejections")
+                .description("Scans rejected by admission control")
+                .tag("lane", "any")
+                .tag("reason", "caller-limit")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Admits the scan of an image of the given size if its lane has room, without waiting.
+     *
+     * @param pixels the number of pixels in the image
+     * @param caller the authenticated principal or remote address of the request, may be null
+     * @return the ticket to close once the scan has finished
+     * @throws ScanRejectedException if the scan is not admitted
+     */
+    public Ticket admit(long pixels, String caller) {
+        return admit(pixels >= largePixels ? Lane.LARGE : Lane.SMALL, caller);
+    }
+
+    /**
+     * Admits a scan into the given lane if it has room, without waiting, for work which is not
+     * the scan of a single image.
+     *
+     * @param lane the lane to admit the scan into
+     * @param caller the authenticated principal or remote address of the request, may be null
+     * @return the ticket to close once the scan has finished
+     * @throws ScanRejectedException if the scan is not admitted
+     */
+    public Ticket admit(Lane lane, String caller) {
+        AtomicInteger callerCount = null;
+        if (caller != null) {
+            callerCount = callerScans.computeIfAbsent(caller, id -> new AtomicInteger());
+            if (callerCount.incrementAndGet() > maxScansPerCaller) {
+                releaseCaller(caller, callerCount);
+                callerLimitRejections.increment();
+                throw new ScanRejectedException("Too many scans in flight for caller", retryAfterSeconds);
+            }
+        }
+        LaneState state = lanes.get(lane);
+        try {
+            state.enter();
+        } catch (ScanRejectedException e) {
+            if (callerCount != null) {
+                releaseCaller(caller, callerCount);
+            }
+            throw e;
+        }
+        return new Ticket(state, caller, callerCount);
+    }
+
+    private void releaseCaller(String caller, AtomicInteger callerCount) {
+        if (callerCount.decrementAndGet() <= 0) {
+            callerScans.remove(caller, callerCount);
+        }
+    }
+
+    /**
+     * An admitted scan. Closing the ticket makes room for the next scan.
+     */
+    public final class Ticket implements AutoCloseable {
+
+        private final LaneState lane;
+        private final String caller;
+        private final AtomicInteger callerCount;
+        private boolean closed;
+
+        private Ticket(LaneState lane, String caller, AtomicInteger callerCount) {
+            this.lane = lane;
+            this.caller = caller;
+            this.callerCount = callerCount;
+        }
+
+        /**
+         * @return the lane the scan was admitted into
+         */
+        public Lane getLane() {
+            return lane.lane;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lane.running.release();
+            if (callerCount != null) {
+                releaseCaller(caller, callerCount);
+            }
+        }
+    }
+
+    /*
+     * The running permits of one lane, with its meters.
+     */
+    private final class LaneState {
+
+        private final Lane lane;
+        private final Semaphore running;
+        private final Counter fullRejections;
+
+        LaneState(Lane lane, int concurrency) {
+            this.lane = lane;
+            this.running = new Semaphore(concurrency);
+            String tag = lane.name().toLowerCase();
+            Gauge.builder("qrreader.admission.running", running, permits -> concurrency - permits.availablePermits())
+                    .description("Scans admitted and running")
+                    .tag("lane", tag)
+                    .register(meterRegistry);
+            fullRejections = Counter.builder("qrreader.admission.rejections")
+                    .description("Scans rejected by admission control")
+                    .tag("lane", tag)
+                    .tag("reason", "lane-full")
+                    .register(meterRegistry);
+        }
+
+        void enter() {
+            if (!running.tryAcquire()) {
+                fullRejections.increment();
+                throw new ScanRejectedException("All scan slots of the lane are busy", retryAfterSeconds);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.qrreader.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event spanning the scan of one uploaded image, from reading its pixels to
+ * the outcome, with what was learnt about the image and the code in it.
+ */
+@Name("com.example.qrreader.Scan")
+@Label("QR Scan")
+@Category({"QR Reader", "Scan"})
+@Description("Scan of one uploaded image")
+@StackTrace(false)
+class ScanEvent extends Event {
+
+    @Label("Scan Id")
+    @Description("Identifies the stage events of this scan")
+    long id;
+
+    @Label("Client Id")
+    String clientId;
+
+    @Label("Format")
+    @Description("What the code is decoded to: text or binary, or batch for an image of a batch")
+    String format;
+
+    @Label("Image Width")
+    int imageWidth;
+
+    @Label("Image Height")
+    int imageHeight;
+
+    @Label("Degraded")
+    boolean degraded;
+
+    @Label("Status")
+    String status;
+
+    @Label("Failed Stage")
+    String failedStage;
+
+    @Label("Version")
+    @Description("Version of the decoded code, 0 if none was decoded")
+    int version;
+
+    @Label("Error Correction Level")
+    String ecLevel;
+
+    @Label("Mirrored")
+    boolean mirrored;
+
+    @Label("Corrected Errors")
+    @Description("Codewords error correction had to correct")
+    int correctedErrors;
+}
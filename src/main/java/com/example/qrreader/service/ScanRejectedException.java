@@ -0,0 +1,25 @@
+package com.example.qrreader.service;
+
+/**
+ * Thrown when admission control turns a scan away because the node is at capacity.
+ */
+public class ScanRejectedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    /**
+     * @param message why the scan was rejected
+     * @param retryAfterSeconds how long the client should wait before retrying
+     */
+    public ScanRejectedException(String message, long retryAfterSeconds) {
+        super(message, null, false, false);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return how long the client should wait before retrying, in seconds
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
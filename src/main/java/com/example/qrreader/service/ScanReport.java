@@ -0,0 +1,119 @@
+package com.example.qrreader.service;
+
+import com.example.qrreader.core.DecodeOutcome;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The outcome of a scan, as reported by {@link QRScanService}: the payload of a successful
+ * scan, why and in which stage the scan failed, or that admission control turned it away.
+ */
+public final class ScanReport {
+
+    private final String text;
+    private final ByteBuffer bytes;
+    private final DecodeOutcome.Status status;
+    private final DecodeOutcome.Stage failedStage;
+    private final boolean degraded;
+    private final ScanTiming timing;
+    private final ScanRejectedException rejection;
+
+    ScanReport(String text, boolean degraded) {
+        this(text, null, DecodeOutcome.Status.OK, null, degraded);
+    }
+
+    ScanReport(ByteBuffer bytes, boolean degraded) {
+        this(null, bytes, DecodeOutcome.Status.OK, null, degraded);
+    }
+
+    ScanReport(DecodeOutcome<?> failure, boolean degraded) {
+        this(null, null, failure.getStatus(), failure.getFailedStage(), degraded);
+    }
+
+    ScanReport(ScanRejectedException rejection) {
+        this(null, null, null, null, false, null, rejection);
+    }
+
+    private ScanReport(String text, ByteBuffer bytes, DecodeOutcome.Status status, DecodeOutcome.Stage failedStage,
+                       boolean degraded) {
+        this(text, bytes, status, failedStage, degraded, null, null);
+    }
+
+    private ScanReport(String text, ByteBuffer bytes, DecodeOutcome.Status status, DecodeOutcome.Stage failedStage,
+                       boolean degraded, ScanTiming timing, ScanRejectedException rejection) {
+        this.text = text;
+        this.bytes = bytes;
+        this.status = status;
+        this.failedStage = failedStage;
+        this.degraded = degraded;
+        this.timing = timing;
+        this.rejection = rejection;
+    }
+
+    ScanReport withTiming(ScanTiming timing) {
+        return new ScanReport(text, bytes, status, failedStage, degraded, timing, rejection);
+    }
+
+    /**
+     * @return true if a QR code was scanned
+     */
+    public boolean isSuccess() {
+        return status == DecodeOutcome.Status.OK;
+    }
+
+    /**
+     * @return true if admission control turned the scan away before it ran
+     */
+    public boolean isRejected() {
+        return rejection != null;
+    }
+
+    /**
+     * @return how long the client should wait before retrying a rejected scan, in seconds
+     */
+    public long getRetryAfterSeconds() {
+        return rejection != null ? rejection.getRetryAfterSeconds() : 0;
+    }
+
+    /**
+     * @return {@link DecodeOutcome.Status#OK}, why the scan failed, or null if it was rejected
+     */
+    public DecodeOutcome.Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the stage in which the scan failed, or null if it succeeded or the stage is unknown
+     */
+    public DecodeOutcome.Stage getFailedStage() {
+        return failedStage;
+    }
+
+    /**
+     * @return the QR payload message, or null for a binary or failed scan
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the raw bytes of the byte segments as a read-only buffer, or null for a text or failed scan
+     */
+    public ByteBuffer getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return true if the scan ran in degraded mode because the node was overloaded
+     */
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * @return how long each stage of the scan took, or null if the scan did not ask for it
+     */
+    public ScanTiming getTiming() {
+        return timing;
+    }
+}
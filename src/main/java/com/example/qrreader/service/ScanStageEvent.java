@@ -0,0 +1,29 @@
+package com.example.qrreader.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event spanning one stage of a scan. Off unless a recording enables it, since
+ * a scan has several stages and races decode several variants of the image at once.
+ */
+@Name("com.example.qrreader.ScanStage")
+@Label("QR Scan Stage")
+@Category({"QR Reader", "Scan"})
+@Description("One stage of a scan, e.g. binarization or error correction")
+@Enabled(false)
+@StackTrace(false)
+class ScanStageEvent extends Event {
+
+    @Label("Scan Id")
+    @Description("Id of the scan event this stage belongs to, 0 if the stage ran on a race thread")
+    long scanId;
+
+    @Label("Stage")
+    String stage;
+}
@@ -0,0 +1,141 @@
+package com.example.qrreader.service;
+
+import com.example.qrreader.core.DecodeObserver;
+import com.example.qrreader.core.DecodeStrategy;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The time one scan spent in each stage, the strategy which decoded its code and what is known
+ * about its image and code. Only scans which ask for a breakdown, or are sampled for logging,
+ * collect one; all other scans observe nothing beyond the shared metrics.
+ *
+ * Stages which run more than once, because several strategies were tried or raced, add up, so
+ * a raced scan can spend more time in its stages than it took in total.
+ */
+public final class ScanTiming implements DecodeObserver {
+
+    private static final String[] STAGE_NAMES = {"read", "luminance", "binarize", "detect", "unmask", "rs", "parse"};
+
+    private final long start = System.nanoTime();
+    private final AtomicLongArray stageNanos = new AtomicLongArray(DecodeObserver.Stage.values().length);
+    private volatile long totalNanos;
+    private volatile DecodeStrategy strategy;
+    private volatile int imageWidth;
+    private volatile int imageHeight;
+    private volatile int version;
+    private volatile ErrorCorrectionLevel ecLevel;
+    private volatile boolean mirrored;
+    private volatile int correctedErrors;
+
+    ScanTiming() {
+    }
+
+    @Override
+    public void stageFinished(DecodeObserver.Stage stage, long nanos) {
+        stageNanos.addAndGet(stage.ordinal(), nanos);
+    }
+
+    @Override
+    public void codeDecoded(int versionNumber, ErrorCorrectionLevel ecLevel, boolean mirrored, int correctedErrors) {
+        this.version = versionNumber;
+        this.ecLevel = ecLevel;
+        this.mirrored = mirrored;
+        this.correctedErrors = correctedErrors;
+    }
+
+    @Override
+    public void strategySucceeded(DecodeStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    void imageRead(int width, int height) {
+        imageWidth = width;
+        imageHeight = height;
+    }
+
+    void finished() {
+        totalNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * @param stage the stage
+     * @return the time spent in the stage, in nanoseconds
+     */
+    public long getStageNanos(DecodeObserver.Stage stage) {
+        return stageNanos.get(stage.ordinal());
+    }
+
+    /**
+     * @return the time from the arrival of the image to the end of the scan, admission included, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the strategy which decoded the code, or null if none did
+     */
+    public DecodeStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * The breakdown as milliseconds per stage and in total, followed by the strategy, image and
+     * code facts which are known.
+     *
+     * @return the breakdown, in a stable order
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (DecodeObserver.Stage stage : DecodeObserver.Stage.values()) {
+            map.put(STAGE_NAMES[stage.ordinal()], millis(getStageNanos(stage)));
+        }
+        map.put("total", millis(totalNanos));
+        if (strategy != null) {
+            map.put("strategy", strategy.name());
+        }
+        if (imageWidth > 0) {
+            map.put("width", imageWidth);
+            map.put("height", imageHeight);
+        }
+        if (ecLevel != null) {
+            map.put("version", version);
+            map.put("ecLevel", ecLevel.name());
+            map.put("mirrored", mirrored);
+            map.put("correctedErrors", correctedErrors);
+        }
+        return map;
+    }
+
+    /**
+     * @return the stage and total times as the value of a Server-Timing header
+     */
+    public String toServerTiming() {
+        StringBuilder header = new StringBuilder();
+        for (DecodeObserver.Stage stage : DecodeObserver.Stage.values()) {
+            header.append(STAGE_NAMES[stage.ordinal()]).append(";dur=").append(millis(getStageNanos(stage))).append(", ");
+        }
+        return header.append("total;dur=").append(millis(totalNanos)).toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<String, Object> entry : toMap().entrySet()) {
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            line.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return line.toString();
+    }
+
+    /* Milliseconds with microsecond precision */
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+}
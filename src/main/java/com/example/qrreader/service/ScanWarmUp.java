@@ -0,0 +1,183 @@
+package com.example.qrreader.service;
+
+import com.example.qrreader.core.DecodeOutcome;
+import com.example.qrreader.core.DecodeStrategy;
+import com.example.qrreader.core.LuminanceConverter;
+import com.example.qrreader.core.ScQRCodeReader;
+import com.example.qrreader.core.ScQRCodeWriter;
+import com.example.qrreader.core.ScQRResult;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.WriterException;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes a built-in set of scrambled codes at startup, so that the decoder is compiled by the
+ * JIT before the first real scans arrive instead of while they are being answered.
+ *
+ * The set holds a code of every version the key can mask and every error correction level in numeric, alphanumeric and
+ * byte mode, each of them also mirrored, encoded with the configured key by {@link ScQRCodeWriter}.
+ * They are decoded through {@link ScQRCodeReader} with every {@link DecodeStrategy} in turn, as
+ * text and as bytes, until {@code qrreader.warmup.iterations} decodes are done or
+ * {@code qrreader.warmup.max-ms} has passed. Strategies which find nothing in a plain code, such
+ * as the inverted one, warm up the failure paths. Warm-up scans are not counted in the metrics or
+ * the strategy statistics.
+ *
+ * The application runs the warm-up before it reports itself ready, so the readiness probe stays
+ * down, and a load balancer sends no traffic, until it is finished.
+ */
+@Component
+public class ScanWarmUp implements ApplicationRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScanWarmUp.class);
+
+    /* Contents which fit even a version 1 code at level H, in numeric, alphanumeric and byte mode */
+    private static final String[] CONTENTS = {"31415926535", "QR-42", "qr:é!"};
+
+    private static final ErrorCorrectionLevel[] EC_LEVELS = ErrorCorrectionLevel.values();
+
+    private static final int MODULE_PIXELS = 2;
+
+    private static final int QUIET_ZONE = 4;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private ScrambleKey scrambleKey;
+
+    @Override
+    public void run(ApplicationArguments args) throws WriterException {
+        if (!environment.getProperty("qrreader.warmup.enabled", Boolean.class, true)) {
+            return;
+        }
+        int iterations = environment.getProperty("qrreader.warmup.iterations", Integer.class, 5000);
+        long budgetNanos = TimeUnit.MILLISECONDS.toNanos(
+                environment.getProperty("qrreader.warmup.max-ms", Long.class, 30_000L));
+
+        // Readiness is only reported once the application is ready, but say so explicitly
+        AvailabilityChangeEvent.publish(context, ReadinessState.REFUSING_TRAFFIC);
+        long start = System.nanoTime();
+
+        int[] keyArr = scrambleKey.getKeyArr();
+        ScQRCodeWriter writer = new ScQRCodeWriter(keyArr);
+        // Every content at every version and error correction level, plain and mirrored
+        int codeCount = writer.getMaxVersion() * EC_LEVELS.length * CONTENTS.length * 2;
+        BitMatrix[] codes = new BitMatrix[codeCount];
+        ScQRCodeReader reader = new ScQRCodeReader(true);
+        DecodeStrategy[] strategies = DecodeStrategy.values();
+        int done = 0;
+        int failed = 0;
+        while (done < iterations && System.nanoTime() - start < budgetNanos) {
+            int index = done % codeCount;
+            if (codes[index] == null) {
+                codes[index] = buildCode(writer, index);
+            }
+            LuminanceSource source = new BufferedImageLuminanceSource(LuminanceConverter.toGray(render(codes[index])));
+            DecodeStrategy strategy = strategies[(done / codeCount) % strategies.length];
+            if (!strategy.supports(source)) {
+                strategy = DecodeStrategy.HYBRID;
+            }
+            // Codes alternate with their mirror images, so alternate text and bytes in pairs
+            if (!decode(reader, strategy, source, keyArr, done / 2 % 2 == 1)) {
+                failed++;
+            }
+            done++;
+        }
+        LOG.info("Warm-up decoded {} codes ({} failed) in {} ms",
+                done, failed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /*
+     * Decodes the code to text or to bytes, and answers whether it was read.
+     */
+    private static boolean decode(ScQRCodeReader reader, DecodeStrategy strategy, LuminanceSource source,
+                                  int[] keyArr, boolean binary) {
+        if (!binary) {
+            DecodeOutcome<ScQRResult> outcome =
+                    reader.tryDecode(strategy.toBitmap(source), null, keyArr, Set.of(), Long.MAX_VALUE);
+            return outcome.isSuccess();
+        }
+        try {
+            reader.decodeBinary(strategy.toBitmap(source), null, keyArr);
+            return true;
+        } catch (ReaderException e) {
+            return false;
+        }
+    }
+
+    /*
+     * Encodes the code at the given index of the set: by version, then error correction level,
+     * then content, each one followed by its mirror image, which the decoder only reads after its
+     * first attempt fails. Codes are built when first decoded, so a short warm-up builds few.
+     */
+    private static BitMatrix buildCode(ScQRCodeWriter writer, int index) throws WriterException {
+        int version = index / (2 * CONTENTS.length * EC_LEVELS.length) + 1;
+        ErrorCorrectionLevel ecLevel = EC_LEVELS[index / (2 * CONTENTS.length) % EC_LEVELS.length];
+        String contents = CONTENTS[index / 2 % CONTENTS.length];
+        BitMatrix modules = writer.encodeModules(contents, ecLevel, Map.of(EncodeHintType.QR_VERSION, version));
+        return index % 2 == 0 ? modules : mirror(modules);
+    }
+
+    private static BitMatrix mirror(BitMatrix modules) {
+        int dimension = modules.getWidth();
+        BitMatrix mirrored = new BitMatrix(dimension);
+        for (int y = 0; y < dimension; y++) {
+            for (int x = 0; x < dimension; x++) {
+                if (modules.get(x, y)) {
+                    mirrored.set(y, x);
+                }
+            }
+        }
+        return mirrored;
+    }
+
+    /*
+     * Renders the modules with a quiet zone, the way an upload of a printed label looks at best.
+     * Codes are rendered when they are decoded, so that the set stays small in memory, and in
+     * colour, as most uploads decode to, so that their conversion to luminance is warmed up too.
+     */
+    private static BufferedImage render(BitMatrix modules) {
+        int dimension = modules.getWidth();
+        BitMatrix image = new BitMatrix((dimension + 2 * QUIET_ZONE) * MODULE_PIXELS);
+        for (int y = 0; y < dimension; y++) {
+            for (int x = 0; x < dimension; x++) {
+                if (modules.get(x, y)) {
+                    image.setRegion((x + QUIET_ZONE) * MODULE_PIXELS, (y + QUIET_ZONE) * MODULE_PIXELS,
+                            MODULE_PIXELS, MODULE_PIXELS);
+                }
+            }
+        }
+        BufferedImage colour = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = colour.createGraphics();
+        try {
+            graphics.drawImage(MatrixToImageWriter.toBufferedImage(image), 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return colour;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.qrreader.service;
+
+import com.example.qrreader.core.KeyUtil;
+import org.apache.commons.codec.binary.Hex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * The configured 256-bit key, converted once into the bit array which the scrambled QR
+ * reader and writer work with.
+ */
+@Component
+public class ScrambleKey {
+
+    @Autowired
+    private Environment environment;
+
+    private int[] keyArr;
+
+    @PostConstruct
+    void init() {
+        String keyStr = environment.getProperty("key");
+        String keyAsHex = Hex.encodeHexString(keyStr.getBytes());
+        keyArr = KeyUtil.hexToBinary(keyAsHex);
+    }
+
+    /**
+     * @return the key as an array of 0s and 1s
+     */
+    public int[] getKeyArr() {
+        return keyArr;
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.qrreader.service;
+
+import com.example.qrreader.core.DecodeStrategy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Online success and cost statistics of the {@link DecodeStrategy} variants, used to order
+ * the attempts of a scan so that the expected time to the first successful decode is minimal.
+ *
+ * For attempts tried one after the other, the expected time is smallest when they are sorted
+ * by cost divided by success rate. Both are kept as exponentially weighted moving averages,
+ * so that the order follows a drifting client population. Statistics are kept globally and,
+ * for a bounded number of clients, per client. A client's own statistics are used once it
+ * has enough samples. A strategy not tried yet is expected to cost what the tried ones cost
+ * on average, at an undecided success rate, so that a fresh or reset node keeps trying the
+ * configured first strategy first. With a small probability a random strategy is moved up to
+ * the second place, so that strategies which fell behind keep being measured while the best
+ * one is still tried first, however few attempts a scan may make.
+ */
+@Component
+public class StrategyStatistics {
+
+    /**
+     * The name under which the statistics over all clients are reported.
+     */
+    public static final String ALL_CLIENTS = "*";
+
+    @Autowired
+    private Environment environment;
+
+    private final ConcurrentMap<String, Map<DecodeStrategy, Stats>> clients = new ConcurrentHashMap<>();
+
+    private final Map<DecodeStrategy, Stats> global = newStatsMap();
+
+    private double smoothing;
+    private double exploration;
+    private int minClientSamples;
+    private int maxClients;
+
+    @PostConstruct
+    void init() {
+        smoothing = environment.getProperty("qrreader.strategy.smoothing", Double.class, 0.02);
+        exploration = environment.getProperty("qrreader.strategy.exploration", Double.class, 0.05);
+        minClientSamples = environment.getProperty("qrreader.strategy.min-client-samples", Integer.class, 50);
+        maxClients = environment.getProperty("qrreader.strategy.max-clients", Integer.class, 1000);
+    }
+
+    /**
+     * Orders the candidate strategies by increasing expected cost per success.
+     *
+     * @param clientId the client or tenant the image comes from, may be null
+     * @param candidates the strategies to order
+     * @return a new list with the candidates in the order they should be tried
+     */
+    public List<DecodeStrategy> order(String clientId, List<DecodeStrategy> candidates) {
+        Map<DecodeStrategy, Stats> stats = global;
+        if (clientId != null) {
+            Map<DecodeStrategy, Stats> clientStats = clients.get(clientId);
+            if (clientStats != null && samples(clientStats) >= minClientSamples) {
+                stats = clientStats;
+            }
+        }
+        // Take the scores once, other threads keep updating them while we sort
+        double priorNanos = meanNanosOfTried(stats);
+        Map<DecodeStrategy, Double> scores = new EnumMap<>(DecodeStrategy.class);
+        for (DecodeStrategy strategy : candidates) {
+            scores.put(strategy, stats.get(strategy).score(priorNanos));
+        }
+        List<DecodeStrategy> ordered = new ArrayList<>(candidates);
+        ordered.sort(Comparator.comparingDouble(scores::get));
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (ordered.size() > 2 && random.nextDouble() < exploration) {
+            // Never the first place, which a scan capped at few attempts must keep trying
+            ordered.add(1, ordered.remove(1 + random.nextInt(ordered.size() - 1)));
+        }
+        return ordered;
+    }
+
+    /**
+     * Records the outcome of one decode attempt.
+     *
+     * @param clientId the client or tenant the image comes from, may be null
+     * @param strategy the strategy which was tried
+     * @param success whether the attempt decoded the QR code
+     * @param nanos how long the attempt took
+     */
+    public void record(String clientId, DecodeStrategy strategy, boolean success, long nanos) {
+        global.get(strategy).record(success, nanos, smoothing);
+        if (clientId != null) {
+            Map<DecodeStrategy, Stats> clientStats = clients.get(clientId);
+            if (clientStats == null && clients.size() < maxClients) {
+                clientStats = clients.computeIfAbsent(clientId, id -> newStatsMap());
+            }
+            if (clientStats != null) {
+                clientStats.get(strategy).record(success, nanos, smoothing);
+            }
+        }
+    }
+
+    /**
+     * @return the current statistics, over all clients first and then per client
+     */
+    public Map<String, Map<DecodeStrategy, Map<String, Object>>> snapshot() {
+        Map<String, Map<DecodeStrategy, Map<String, Object>>> snapshot = new LinkedHashMap<>();
+        snapshot.put(ALL_CLIENTS, snapshot(global));
+        clients.forEach((clientId, stats) -> snapshot.put(clientId, snapshot(stats)));
+        return snapshot;
+    }
+
+    /**
+     * Forgets the statistics of one client, or of all clients and the global ones.
+     *
+     * @param clientId the client to reset, or null to reset everything
+     */
+    public void reset(String clientId) {
+        if (clientId != null && !ALL_CLIENTS.equals(clientId)) {
+            clients.remove(clientId);
+            return;
+        }
+        clients.clear();
+        global.values().forEach(Stats::reset);
+    }
+
+    private static Map<String, Object> describe(Stats stats) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        synchronized (stats) {
+            description.put("attempts", stats.attempts);
+            description.put("successRate", stats.successRate);
+            description.put("meanMillis", stats.meanNanos / 1_000_000.0);
+        }
+        return description;
+    }
+
+    private static Map<DecodeStrategy, Map<String, Object>> snapshot(Map<DecodeStrategy, Stats> stats) {
+        Map<DecodeStrategy, Map<String, Object>> snapshot = new EnumMap<>(DecodeStrategy.class);
+        stats.forEach((strategy, strategyStats) -> snapshot.put(strategy, describe(strategyStats)));
+        return snapshot;
+    }
+
+    private static long samples(Map<DecodeStrategy, Stats> stats) {
+        long samples = 0;
+        for (Stats strategyStats : stats.values()) {
+            samples += strategyStats.attempts;
+        }
+        return samples;
+    }
+
+    /* The mean cost of the strategies tried so far, 0 if none was */
+    private static double meanNanosOfTried(Map<DecodeStrategy, Stats> stats) {
+        double sum = 0;
+        int tried = 0;
+        for (Stats strategyStats : stats.values()) {
+            synchronized (strategyStats) {
+                if (strategyStats.attempts > 0) {
+                    sum += strategyStats.meanNanos;
+                    tried++;
+                }
+            }
+        }
+        return tried == 0 ? 0 : sum / tried;
+    }
+
+    private static Map<DecodeStrategy, Stats> newStatsMap() {
+        Map<DecodeStrategy, Stats> stats = new EnumMap<>(DecodeStrategy.class);
+        for (DecodeStrategy strategy : DecodeStrategy.values()) {
+            stats.put(strategy, new Stats());
+        }
+        return stats;
+    }
+
+    /*
+     * Moving averages of one strategy. Until a strategy has been tried it scores as a strategy
+     * with the given prior cost and an undecided success rate.
+     */
+    private static final class Stats {
+
+        private static final double MIN_SUCCESS_RATE = 0.01;
+        private static final double PRIOR_SUCCESS_RATE = 0.5;
+
+        private volatile long attempts;
+        private double successRate;
+        private double meanNanos;
+
+        synchronized void record(boolean success, long nanos, double smoothing) {
+            if (attempts == 0) {
+                // Start from an undecided success rate rather than from a single outcome
+                successRate = PRIOR_SUCCESS_RATE;
+                meanNanos = nanos;
+            }
+            successRate += smoothing * ((success ? 1.0 : 0.0) - successRate);
+            meanNanos += smoothing * (nanos - meanNanos);
+            attempts++;
+        }
+
+        synchronized double score(double priorNanos) {
+            if (attempts == 0) {
+                return priorNanos / PRIOR_SUCCESS_RATE;
+            }
+            return meanNanos / Math.max(successRate, MIN_SUCCESS_RATE);
+        }
+
+        synchronized void reset() {
+            attempts = 0;
+            successRate = 0;
+            meanNanos = 0;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.qrreader.core;
+
+/**
+ * The kernels which convert RGB pixels to luminance, for JDK 17 and later. It converts
+ * them with the Vector API if the JVM was started with {@code --add-modules jdk.incubator.vector},
+ * and one by one otherwise, like the Java 11 version.
+ */
+final class LumaKernel {
+
+    /* The incubating module is only in the boot layer if it was added on the command line */
+    private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private LumaKernel() {
+    }
+
+    /**
+     * @return whether pixels are converted with SIMD instructions
+     */
+    static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    /**
+     * @see LuminanceConverter#packedToLumaScalar
+     */
+    static void packedToLuma(int[] rgb, int rgbOffset, byte[] luma, int lumaOffset, int count, boolean alpha) {
+        if (VECTORIZED) {
+            VectorLumaKernel.packedToLuma(rgb, rgbOffset, luma, lumaOffset, count, alpha);
+        } else {
+            LuminanceConverter.packedToLumaScalar(rgb, rgbOffset, luma, lumaOffset, count, alpha);
+        }
+    }
+
+    /**
+     * @see LuminanceConverter#interleavedToLumaScalar
+     */
+    static void interleavedToLuma(byte[] bgr, int bgrOffset, int pixelStride, byte[] luma, int lumaOffset, int count) {
+        if (VECTORIZED) {
+            VectorLumaKernel.interleavedToLuma(bgr, bgrOffset, pixelStride, luma, lumaOffset, count);
+        } else {
+            LuminanceConverter.interleavedToLumaScalar(bgr, bgrOffset, pixelStride, luma, lumaOffset, count);
+        }
+    }
+}
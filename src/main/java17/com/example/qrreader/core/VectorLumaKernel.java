@@ -0,0 +1,107 @@
+package com.example.qrreader.core;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Converts packed RGB pixels to luminance with the Vector API. Only loaded by {@link LumaKernel}
+ * when the incubating module is there.
+ *
+ * Pixels are converted a byte vector of them at a time: each int vector of the same shape holds
+ * a quarter of them, and is narrowed into its quarter of the byte vector, so that every store
+ * is a whole vector on any hardware. Interleaved pixels are first shuffled into packed ones. The
+ * pixels left over are converted one by one.
+ */
+final class VectorLumaKernel {
+
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, BYTES.vectorShape());
+
+    private static final int PARTS = BYTES.length() / INTS.length();
+
+    /* Gather the blue, green, red and alpha bytes of each interleaved pixel into one int lane */
+    private static final VectorShuffle<Byte> BGR_TO_LANES = toLanes(3);
+    private static final VectorShuffle<Byte> ABGR_TO_LANES = toLanes(4);
+
+    private VectorLumaKernel() {
+    }
+
+    /**
+     * @see LuminanceConverter#packedToLumaScalar
+     */
+    static void packedToLuma(int[] rgb, int rgbOffset, byte[] luma, int lumaOffset, int count, boolean alpha) {
+        int i = 0;
+        int bound = BYTES.loopBound(count);
+        for (; i < bound; i += BYTES.length()) {
+            ByteVector bytes = (ByteVector) luma(rgb, rgbOffset + i, alpha)
+                    .convertShape(VectorOperators.I2B, BYTES, 0);
+            for (int part = 1; part < PARTS; part++) {
+                bytes = bytes.or((ByteVector) luma(rgb, rgbOffset + i + part * INTS.length(), alpha)
+                        .convertShape(VectorOperators.I2B, BYTES, -part));
+            }
+            bytes.intoArray(luma, lumaOffset + i);
+        }
+        LuminanceConverter.packedToLumaScalar(rgb, rgbOffset + i, luma, lumaOffset + i, count - i, alpha);
+    }
+
+    /**
+     * @see LuminanceConverter#interleavedToLumaScalar
+     */
+    static void interleavedToLuma(byte[] bgr, int bgrOffset, int pixelStride, byte[] luma, int lumaOffset, int count) {
+        VectorShuffle<Byte> toLanes = pixelStride == 4 ? ABGR_TO_LANES : BGR_TO_LANES;
+        boolean alpha = pixelStride == 4;
+        // Each int vector of pixels is gathered from a whole byte vector, which reaches past them
+        int lastLoad = (BYTES.length() - INTS.length()) * pixelStride + BYTES.length();
+        int i = 0;
+        int bound = BYTES.loopBound(count);
+        for (; i < bound && bgrOffset + i * pixelStride + lastLoad <= bgr.length; i += BYTES.length()) {
+            ByteVector bytes = (ByteVector) luma(gather(bgr, bgrOffset + i * pixelStride, toLanes), alpha)
+                    .convertShape(VectorOperators.I2B, BYTES, 0);
+            for (int part = 1; part < PARTS; part++) {
+                IntVector pixels = gather(bgr, bgrOffset + (i + part * INTS.length()) * pixelStride, toLanes);
+                bytes = bytes.or((ByteVector) luma(pixels, alpha).convertShape(VectorOperators.I2B, BYTES, -part));
+            }
+            bytes.intoArray(luma, lumaOffset + i);
+        }
+        LuminanceConverter.interleavedToLumaScalar(bgr, bgrOffset + i * pixelStride, pixelStride, luma,
+                lumaOffset + i, count - i);
+    }
+
+    /* Lanes hold the pixels as 0xAARRGGBB, since byte vectors are reinterpreted in little-endian order */
+    private static IntVector gather(byte[] bgr, int offset, VectorShuffle<Byte> toLanes) {
+        return ByteVector.fromArray(BYTES, bgr, offset).rearrange(toLanes).reinterpretAsInts();
+    }
+
+    private static VectorShuffle<Byte> toLanes(int pixelStride) {
+        int[] indexes = new int[BYTES.length()];
+        for (int lane = 0; lane < indexes.length; lane++) {
+            int pixel = lane / 4;
+            int channel = lane % 4;
+            // Blue, green and red follow alpha in pixels with alpha, which moves to the top byte;
+            // pixels without it repeat red there, which is never read
+            indexes[lane] = pixel * pixelStride + (pixelStride == 4 ? (channel + 1) % 4 : Math.min(channel, 2));
+        }
+        return VectorShuffle.fromArray(BYTES, indexes, 0);
+    }
+
+    private static IntVector luma(int[] rgb, int offset, boolean alpha) {
+        return luma(IntVector.fromArray(INTS, rgb, offset), alpha);
+    }
+
+    private static IntVector luma(IntVector pixels, boolean alpha) {
+        IntVector red = pixels.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+        IntVector green = pixels.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+        IntVector blue = pixels.and(0xFF);
+        IntVector luma = red.mul(306).add(green.mul(601)).add(blue.mul(117)).add(0x200)
+                .lanewise(VectorOperators.LSHR, 10);
+        if (alpha) {
+            // Fully transparent pixels are white, as ZXing reads them
+            luma = luma.blend(0xFF, pixels.lanewise(VectorOperators.LSHR, 24).eq(0));
+        }
+        return luma;
+    }
+}
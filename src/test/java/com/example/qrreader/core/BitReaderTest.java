@@ -0,0 +1,63 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.common.BitSource;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that {@link BitReader} reads the same bits as the ZXing {@link BitSource}, for reads of
+ * every width starting at every offset of its 64-bit window, up to the end of arrays of every
+ * length around the size of the window.
+ */
+class BitReaderTest {
+
+    @Test
+    void readsWhatBitSourceReads() {
+        Random random = new Random(64);
+        for (int length = 0; length <= 40; length++) {
+            for (int run = 0; run < 200; run++) {
+                byte[] bytes = new byte[length];
+                random.nextBytes(bytes);
+                BitReader reader = new BitReader(bytes);
+                BitSource source = new BitSource(bytes);
+                while (source.available() > 0) {
+                    assertEquals(source.available(), reader.available());
+                    int numBits = 1 + random.nextInt(Math.min(32, source.available()));
+                    if (random.nextInt(8) == 0 && source.available() >= 8) {
+                        byte[] expected = new byte[random.nextInt(source.available() / 8 + 1)];
+                        for (int i = 0; i < expected.length; i++) {
+                            expected[i] = (byte) source.readBits(8);
+                        }
+                        byte[] actual = new byte[expected.length];
+                        reader.readBytes(actual);
+                        assertArrayEquals(expected, actual);
+                    } else {
+                        assertEquals(source.readBits(numBits), reader.readBits(numBits), numBits + " bits");
+                    }
+                }
+                assertEquals(0, reader.available());
+            }
+        }
+    }
+
+    @Test
+    void rejectsReadsPastTheEnd() {
+        BitReader reader = new BitReader(new byte[9]);
+        reader.readBits(32);
+        reader.readBits(32);
+        reader.readBits(5);
+
+        assertThrows(IllegalArgumentException.class, () -> reader.readBits(4));
+        assertThrows(IllegalArgumentException.class, () -> reader.readBytes(new byte[1]));
+        // The bits which are left can still be read
+        assertEquals(0, reader.readBits(3));
+        assertEquals(0, reader.available());
+        assertThrows(IllegalArgumentException.class, () -> reader.readBits(0));
+        assertThrows(IllegalArgumentException.class, () -> new BitReader(new byte[8]).readBits(33));
+    }
+}
@@ -0,0 +1,387 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.DecoderResult;
+import com.google.zxing.common.StringUtils;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that {@link DecodedBitStreamParser} decodes bit streams to the same text, byte segments
+ * and symbology modifier as the ZXing parser, with segments of every length and at every bit
+ * offset, and that a byte segment without ECI decodes as it does in the character set
+ * {@link StringUtils#guessCharset} guesses for it.
+ */
+class DecodedBitStreamParserTest {
+
+    private static final Method ZXING_DECODE;
+
+    static {
+        try {
+            ZXING_DECODE = Class.forName("com.google.zxing.qrcode.decoder.DecodedBitStreamParser")
+                    .getDeclaredMethod("decode", byte[].class, com.google.zxing.qrcode.decoder.Version.class,
+                            ErrorCorrectionLevel.class, Map.class);
+            ZXING_DECODE.setAccessible(true);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final String ALPHANUMERIC_CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+
+    /* The first version of each width of the character count */
+    private static final int[] VERSIONS = {1, 10, 27};
+
+    private static final List<Charset> HINTED_CHARSETS =
+            List.of(StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StringUtils.SHIFT_JIS_CHARSET);
+
+    static Stream<Arguments> byteSegments() {
+        return Stream.of(
+                Arguments.of("empty", bytes()),
+                Arguments.of("ASCII", "Hello, World! ~{|}".getBytes(StandardCharsets.US_ASCII)),
+                Arguments.of("ASCII with control characters", bytes(0x00, 0x09, 0x1D, 0x7F, 'A')),
+                Arguments.of("UTF-8 of two, three and four bytes", "é €😀 ok".getBytes(StandardCharsets.UTF_8)),
+                Arguments.of("UTF-8 starting with a multi-byte sequence", "ünï".getBytes(StandardCharsets.UTF_8)),
+                Arguments.of("UTF-8 with a byte order mark", bytes(0xEF, 0xBB, 0xBF, 'a', 0xC3, 0xA9)),
+                Arguments.of("UTF-8 at the edges of each length", bytes(0xC2, 0x80, 0xDF, 0xBF, 0xE0, 0xA0, 0x80,
+                        0xEF, 0xBF, 0xBF, 0xF0, 0x90, 0x80, 0x80, 0xF4, 0x8F, 0xBF, 0xBF)),
+                Arguments.of("Latin-1", "café crème, ½ ¿".getBytes(StandardCharsets.ISO_8859_1)),
+                Arguments.of("Latin-1 which is UTF-8 up to its last byte", bytes('a', 0xC3, 0xA9, 0xE9)),
+                Arguments.of("C1 controls and no-break space", bytes(0x85, 0xA0, 'x')),
+                Arguments.of("Shift_JIS", "テスト漢字です".getBytes(StringUtils.SHIFT_JIS_CHARSET)),
+                Arguments.of("overlong two-byte form", bytes('a', 0xC0, 0xAF)),
+                Arguments.of("overlong two-byte form of C1", bytes(0xC1, 0xBF)),
+                Arguments.of("overlong three-byte form", bytes(0xE0, 0x80, 0xAF)),
+                Arguments.of("overlong three-byte form just below U+0800", bytes(0xE0, 0x9F, 0xBF)),
+                Arguments.of("overlong four-byte form", bytes(0xF0, 0x80, 0x80, 0xAF)),
+                Arguments.of("overlong four-byte form just below U+10000", bytes(0xF0, 0x8F, 0xBF, 0xBF)),
+                Arguments.of("high surrogate", bytes('a', 0xED, 0xA0, 0x80)),
+                Arguments.of("low surrogate", bytes(0xED, 0xBF, 0xBF, 'b')),
+                Arguments.of("surrogate pair encoded one by one", bytes(0xED, 0xA0, 0xBD, 0xED, 0xB8, 0x80)),
+                Arguments.of("just below the surrogates", bytes(0xED, 0x9F, 0xBF)),
+                Arguments.of("above U+10FFFF", bytes(0xF4, 0x90, 0x80, 0x80)),
+                Arguments.of("lead byte F5", bytes(0xF5, 0x80, 0x80, 0x80)),
+                Arguments.of("lead bytes FE and FF", bytes(0xFE, 0xFF)),
+                Arguments.of("lone continuation byte", bytes('a', 0x80, 'b')),
+                Arguments.of("two-byte sequence truncated at the end", bytes('a', 0xC3)),
+                Arguments.of("three-byte sequence truncated at the end", bytes('a', 0xE2, 0x82)),
+                Arguments.of("four-byte sequence truncated at the end", bytes(0xF0, 0x9F, 0x98)),
+                Arguments.of("sequence truncated by ASCII", bytes(0xE2, 0x82, 'a', 'b')),
+                Arguments.of("sequence truncated by a lead byte", bytes(0xE2, 0xC3, 0xA9)));
+    }
+
+    static Stream<Arguments> versionsAndLengths() {
+        return Arrays.stream(VERSIONS).boxed()
+                .flatMap(version -> IntStream.rangeClosed(0, 24).mapToObj(length -> Arguments.of(version, length)));
+    }
+
+    @ParameterizedTest(name = "version {0}, {1} digits")
+    @MethodSource("versionsAndLengths")
+    void decodesNumericSegments(int versionNumber, int length) throws FormatException {
+        Random random = new Random(versionNumber * 100L + length);
+        for (String digits : new String[]{randomString("0123456789", length, random), "9".repeat(length),
+                "0".repeat(length)}) {
+            BitArray stream = new BitArray();
+            appendNumericSegment(stream, digits, versionNumber);
+            assertEquals(digits, assertParsesLikeZXing(stream, versionNumber).getText());
+        }
+    }
+
+    @ParameterizedTest(name = "version {0}, {1} characters")
+    @MethodSource("versionsAndLengths")
+    void decodesAlphanumericSegments(int versionNumber, int length) throws FormatException {
+        Random random = new Random(versionNumber * 100L + length);
+        for (String chars : new String[]{randomString(ALPHANUMERIC_CHARS, length, random), ":".repeat(length),
+                "0".repeat(length)}) {
+            BitArray stream = new BitArray();
+            appendAlphanumericSegment(stream, chars, versionNumber);
+            assertEquals(chars, assertParsesLikeZXing(stream, versionNumber).getText());
+        }
+    }
+
+    static Stream<Arguments> fnc1Segments() {
+        return Stream.of(
+                Arguments.of("%", "\u001D"),
+                Arguments.of("%%", "%"),
+                Arguments.of("%%%", "%\u001D"),
+                Arguments.of("%%%%", "%%"),
+                Arguments.of("A%B", "A\u001DB"),
+                Arguments.of("A%%B", "A%B"),
+                Arguments.of("%%A%", "%A\u001D"),
+                Arguments.of("01%%9%10ABC%%%", "01%9\u001D10ABC%\u001D"),
+                Arguments.of("NO PERCENT", "NO PERCENT"));
+    }
+
+    @ParameterizedTest(name = "\"{0}\"")
+    @MethodSource("fnc1Segments")
+    void decodesPercentSignsAfterFNC1(String chars, String expected) throws FormatException {
+        // FNC1 in the first and in the second position
+        for (int fnc1Mode : new int[]{0x5, 0x9}) {
+            BitArray stream = new BitArray();
+            stream.appendBits(fnc1Mode, 4);
+            appendAlphanumericSegment(stream, chars, 1);
+            appendNumericSegment(stream, "100", 1);
+            assertEquals(expected + "100", assertParsesLikeZXing(stream, 1).getText());
+        }
+    }
+
+    @Test
+    void rejectsGroupsOutOfRange() {
+        int[][] groups = {
+                // A three-digit group of 1000 and more, in the first or a later group of nine digits
+                {0x1, 3, 1000, 10}, {0x1, 9, (999 << 20) | (999 << 10) | 1023, 30},
+                // Two digits of 100 and more, one digit of 10 and more
+                {0x1, 2, 100, 7}, {0x1, 1, 10, 4},
+                // Two alphanumeric characters of 45 * 45 and more, in a group of four or alone
+                {0x2, 4, (2025 << 11) | 5, 22}, {0x2, 2, 2047, 11},
+                // One alphanumeric character of 45 and more
+                {0x2, 1, 45, 6}};
+        for (int[] group : groups) {
+            BitArray stream = new BitArray();
+            stream.appendBits(group[0], 4);
+            stream.appendBits(group[1], group[0] == 0x1 ? 10 : 9);
+            stream.appendBits(group[2], group[3]);
+
+            assertThrows(FormatException.class, () -> parseWithZXing(stream, 1));
+            assertThrows(FormatException.class, () -> parse(stream, 1), () -> Arrays.toString(group));
+        }
+    }
+
+    @Test
+    void decodesRandomStreamsOfSegments() throws FormatException {
+        Random random = new Random(37);
+        for (int i = 0; i < 3000; i++) {
+            int versionNumber = VERSIONS[random.nextInt(VERSIONS.length)];
+            BitArray stream = new BitArray();
+            if (random.nextInt(8) == 0) {
+                // Structured append: sequence number and parity
+                stream.appendBits(0x3, 4);
+                stream.appendBits(random.nextInt(256), 16);
+            }
+            // Segments of every mode and length start at every bit offset of the 64-bit window
+            for (int segments = random.nextInt(8); segments > 0; segments--) {
+                switch (random.nextInt(3)) {
+                    case 0:
+                        appendNumericSegment(stream, randomString("0123456789", random.nextInt(40), random),
+                                versionNumber);
+                        break;
+                    case 1:
+                        appendAlphanumericSegment(stream, randomString(ALPHANUMERIC_CHARS, random.nextInt(30), random),
+                                versionNumber);
+                        break;
+                    default:
+                        appendByteSegment(stream, randomText(random).getBytes(StandardCharsets.UTF_8), versionNumber);
+                }
+            }
+            assertParsesLikeZXing(stream, versionNumber);
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("byteSegments")
+    void decodesByteSegmentsInTheGuessedCharset(String name, byte[] segment) throws FormatException {
+        assertEquals(new String(segment, StringUtils.guessCharset(segment, null)),
+                DecodedBitStreamParser.decodeWithoutECI(segment, null));
+        for (Charset charset : HINTED_CHARSETS) {
+            Map<DecodeHintType, ?> hints = Map.of(DecodeHintType.CHARACTER_SET, charset.name());
+            assertEquals(new String(segment, charset), DecodedBitStreamParser.decodeWithoutECI(segment, hints),
+                    "Hinted " + charset);
+        }
+
+        BitArray stream = new BitArray();
+        appendByteSegment(stream, segment, 1);
+        assertParsesLikeZXing(stream, 1);
+        // The same bytes after a 4-bit mode indicator with the 16-bit count of versions 10 and up
+        stream = new BitArray();
+        appendByteSegment(stream, segment, 10);
+        assertParsesLikeZXing(stream, 10);
+    }
+
+    @Test
+    void decodesRandomByteSegmentsInTheGuessedCharset() throws FormatException {
+        Random random = new Random(36);
+        for (int i = 0; i < 5000; i++) {
+            byte[] segment = randomText(random).getBytes(StandardCharsets.UTF_8);
+            // Most segments are well-formed UTF-8, the others have a byte or two changed
+            for (int changes = random.nextInt(4) - 1; changes > 0 && segment.length > 0; changes--) {
+                segment[random.nextInt(segment.length)] = (byte) random.nextInt(256);
+            }
+            assertEquals(new String(segment, StringUtils.guessCharset(segment, null)),
+                    DecodedBitStreamParser.decodeWithoutECI(segment, null), () -> "Bytes " + hex(segment));
+        }
+    }
+
+    @Test
+    void decodesByteSegmentsAfterAnECIInItsCharset() throws FormatException {
+        byte[] latin1 = "crème".getBytes(StandardCharsets.ISO_8859_1);
+        BitArray stream = new BitArray();
+        stream.appendBits(0x7, 4);
+        stream.appendBits(26, 8);
+        appendByteSegment(stream, "€😀".getBytes(StandardCharsets.UTF_8), 1);
+        stream.appendBits(0x7, 4);
+        stream.appendBits(3, 8);
+        appendByteSegment(stream, latin1, 1);
+
+        assertEquals("€😀crème", assertParsesLikeZXing(stream, 1).getText());
+    }
+
+    @Test
+    void rejectsByteSegmentsLongerThanTheStream() {
+        BitArray stream = new BitArray();
+        stream.appendBits(0x4, 4);
+        stream.appendBits(3, 8);
+        stream.appendBits('a', 8);
+
+        assertThrows(FormatException.class, () -> parse(stream, 1));
+        assertThrows(FormatException.class, () -> parseWithZXing(stream, 1));
+    }
+
+    /*
+     * Parses the stream, padded to whole bytes, with both parsers, checks that they agree, and
+     * returns what this one decoded.
+     */
+    static DecoderResult assertParsesLikeZXing(BitArray stream, int versionNumber) throws FormatException {
+        DecoderResult expected = parseWithZXing(stream, versionNumber);
+        DecoderResult actual = parse(stream, versionNumber);
+        assertEquals(expected.getText(), actual.getText());
+        if (expected.getByteSegments() == null) {
+            assertNull(actual.getByteSegments());
+        } else {
+            assertEquals(expected.getByteSegments().size(), actual.getByteSegments().size());
+            for (int i = 0; i < expected.getByteSegments().size(); i++) {
+                assertArrayEquals(expected.getByteSegments().get(i), actual.getByteSegments().get(i));
+            }
+        }
+        assertEquals(expected.getSymbologyModifier(), actual.getSymbologyModifier());
+        assertEquals(expected.getStructuredAppendSequenceNumber(), actual.getStructuredAppendSequenceNumber());
+        assertEquals(expected.getStructuredAppendParity(), actual.getStructuredAppendParity());
+        return actual;
+    }
+
+    static DecoderResult parse(BitArray stream, int versionNumber) throws FormatException {
+        return DecodedBitStreamParser.decode(toBytes(stream), Version.getVersionForNumber(versionNumber),
+                ErrorCorrectionLevel.L, null, null);
+    }
+
+    static DecoderResult parseWithZXing(BitArray stream, int versionNumber) throws FormatException {
+        try {
+            return (DecoderResult) ZXING_DECODE.invoke(null, toBytes(stream),
+                    com.google.zxing.qrcode.decoder.Version.getVersionForNumber(versionNumber),
+                    ErrorCorrectionLevel.L, null);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof FormatException) {
+                throw (FormatException) e.getCause();
+            }
+            throw new AssertionError(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void appendNumericSegment(BitArray stream, String digits, int versionNumber) {
+        stream.appendBits(0x1, 4);
+        stream.appendBits(digits.length(), versionNumber < 10 ? 10 : versionNumber < 27 ? 12 : 14);
+        int i = 0;
+        for (; i + 3 <= digits.length(); i += 3) {
+            stream.appendBits(Integer.parseInt(digits.substring(i, i + 3)), 10);
+        }
+        if (i < digits.length()) {
+            stream.appendBits(Integer.parseInt(digits.substring(i)), digits.length() - i == 2 ? 7 : 4);
+        }
+    }
+
+    private static void appendAlphanumericSegment(BitArray stream, String chars, int versionNumber) {
+        stream.appendBits(0x2, 4);
+        stream.appendBits(chars.length(), versionNumber < 10 ? 9 : versionNumber < 27 ? 11 : 13);
+        int i = 0;
+        for (; i + 2 <= chars.length(); i += 2) {
+            stream.appendBits(45 * ALPHANUMERIC_CHARS.indexOf(chars.charAt(i))
+                    + ALPHANUMERIC_CHARS.indexOf(chars.charAt(i + 1)), 11);
+        }
+        if (i < chars.length()) {
+            stream.appendBits(ALPHANUMERIC_CHARS.indexOf(chars.charAt(i)), 6);
+        }
+    }
+
+    private static void appendByteSegment(BitArray stream, byte[] segment, int versionNumber) {
+        stream.appendBits(0x4, 4);
+        stream.appendBits(segment.length, versionNumber < 10 ? 8 : 16);
+        for (byte b : segment) {
+            stream.appendBits(b & 0xFF, 8);
+        }
+    }
+
+    private static byte[] toBytes(BitArray stream) {
+        byte[] bytes = new byte[stream.getSizeInBytes()];
+        stream.toBytes(0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private static String randomString(String alphabet, int length, Random random) {
+        StringBuilder string = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            string.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return string.toString();
+    }
+
+    /* Text of random code points: ASCII, Latin-1, other BMP characters and supplementary ones */
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int length = random.nextInt(24); length > 0; length--) {
+            int codePoint;
+            switch (random.nextInt(4)) {
+                case 0:
+                    codePoint = random.nextInt(0x80);
+                    break;
+                case 1:
+                    codePoint = 0x80 + random.nextInt(0x780);
+                    break;
+                case 2:
+                    codePoint = 0x800 + random.nextInt(0xD800 - 0x800);
+                    break;
+                default:
+                    codePoint = 0x10000 + random.nextInt(0x100000);
+            }
+            text.appendCodePoint(codePoint);
+        }
+        return text.toString();
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02X ", b & 0xFF));
+        }
+        return hex.toString().trim();
+    }
+}
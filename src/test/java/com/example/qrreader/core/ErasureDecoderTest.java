@@ -0,0 +1,96 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.common.reedsolomon.GenericGF;
+import com.google.zxing.common.reedsolomon.ReedSolomonEncoder;
+import com.google.zxing.common.reedsolomon.ReedSolomonException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that {@link ErasureDecoder} corrects every block with v errors and e erasures for which
+ * 2v + e is at most the number of error correction codewords, up to and including that bound,
+ * for the block geometry of every version and error correction level.
+ */
+class ErasureDecoderTest {
+
+    /* The number of codewords and of error correction codewords of every kind of block there is */
+    static Stream<Arguments> blockGeometries() {
+        return IntStream.rangeClosed(1, 40).boxed()
+                .flatMap(version -> Stream.of(ErrorCorrectionLevel.values())
+                        .map(ecLevel -> Version.getVersionForNumber(version).getECBlocksForLevel(ecLevel)))
+                .flatMap(ecBlocks -> Stream.of(ecBlocks.getECBlocks())
+                        .map(ecb -> Arrays.asList(ecb.getDataCodewords() + ecBlocks.getECCodewordsPerBlock(),
+                                ecBlocks.getECCodewordsPerBlock())))
+                .distinct()
+                .map(geometry -> Arguments.of(geometry.get(0), geometry.get(1)));
+    }
+
+    @ParameterizedTest(name = "{0} codewords, {1} for error correction")
+    @MethodSource("blockGeometries")
+    void correctsErrorsAndErasuresUpToCapacity(int codewords, int ecCodewords) throws ReedSolomonException {
+        Random random = new Random(codewords * 31L + ecCodewords);
+        for (int errors = 0; 2 * errors <= ecCodewords; errors++) {
+            int maxErasures = ecCodewords - 2 * errors;
+            // No erasures, one short of the bound, and right at it
+            for (int erased : new int[]{0, Math.max(0, maxErasures - 1), maxErasures}) {
+                int[] block = encode(codewords, ecCodewords, random);
+                int[] received = block.clone();
+                int[] positions = shuffledPositions(codewords, random);
+                int[] erasures = Arrays.copyOf(positions, erased);
+                for (int i = 0; i < erased; i++) {
+                    // Most erased codewords are wrong, but some were read right after all
+                    if (random.nextInt(4) != 0) {
+                        received[erasures[i]] ^= 1 + random.nextInt(255);
+                    }
+                }
+                for (int i = erased; i < erased + errors; i++) {
+                    received[positions[i]] ^= 1 + random.nextInt(255);
+                }
+
+                assertEquals(errors, ErasureDecoder.decode(received, ecCodewords, erasures),
+                        errors + " errors, " + erased + " erasures");
+                assertArrayEquals(block, received, errors + " errors, " + erased + " erasures");
+            }
+        }
+    }
+
+    @Test
+    void erasesTheLeastCertainCodewordsFirst() {
+        byte[] confidences = {(byte) 200, 3, 15, 16, 0, 3, (byte) 255, 9};
+
+        assertArrayEquals(new int[]{4, 1, 5, 7, 2}, ErasureDecoder.findErasures(confidences, 10));
+        // No more than leave the spare error correction codewords unused
+        assertArrayEquals(new int[]{4, 1}, ErasureDecoder.findErasures(confidences, 2 + ErasureDecoder.SPARE_CHECK_SYMBOLS));
+    }
+
+    private static int[] encode(int codewords, int ecCodewords, Random random) {
+        int[] block = new int[codewords];
+        for (int i = 0; i < codewords - ecCodewords; i++) {
+            block[i] = random.nextInt(256);
+        }
+        new ReedSolomonEncoder(GenericGF.QR_CODE_FIELD_256).encode(block, ecCodewords);
+        return block;
+    }
+
+    private static int[] shuffledPositions(int codewords, Random random) {
+        int[] positions = IntStream.range(0, codewords).toArray();
+        for (int i = codewords - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = positions[i];
+            positions[i] = positions[j];
+            positions[j] = swap;
+        }
+        return positions;
+    }
+}
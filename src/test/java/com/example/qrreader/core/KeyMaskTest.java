@@ -0,0 +1,98 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.FormatException;
+import com.google.zxing.common.BitMatrix;
+import org.apache.commons.codec.binary.Hex;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the combined masks of {@link KeyMask} against the data mask and every round of the key
+ * mask removed one module at a time, the way the parser did before it combined them.
+ */
+class KeyMaskTest {
+
+    // The key shipped in application.properties
+    static final String KEY = "t6w9z$C&F)J@NcRfUjXnZr4u7x!A%D*G";
+
+    static final int[] KEY_ARR = KeyUtil.hexToBinary(Hex.encodeHexString(KEY.getBytes()));
+
+    static Stream<Arguments> versionsAndMasks() {
+        return IntStream.rangeClosed(1, 40).boxed()
+                .flatMap(version -> IntStream.range(0, DataMask.values().length)
+                        .mapToObj(dataMask -> Arguments.of(version, dataMask)));
+    }
+
+    @ParameterizedTest(name = "version {0}, data mask {1}")
+    @MethodSource("versionsAndMasks")
+    void combinedMaskFlipsWhatTheRoundsFlip(int versionNumber, int dataMask) throws FormatException {
+        Version version = Version.getVersionForNumber(versionNumber);
+        BitMatrix modules = randomModules(version.getDimensionForVersion(), versionNumber * 8L + dataMask);
+
+        if (versionNumber > KeyMask.maxVersion(KEY_ARR.length)) {
+            // The rounds run past the end of the key, which the parser never could unmask
+            assertThrows(ArrayIndexOutOfBoundsException.class,
+                    () -> unmaskModuleByModule(modules.clone(), dataMask, KEY_ARR));
+            assertThrows(FormatException.class, () -> KeyMask.forKey(KEY_ARR).get(version, dataMask));
+            return;
+        }
+        BitMatrix combined = modules.clone();
+        combined.xor(KeyMask.forKey(KEY_ARR).get(version, dataMask));
+        assertEquals(unmaskModuleByModule(modules.clone(), dataMask, KEY_ARR), combined);
+    }
+
+    static BitMatrix randomModules(int dimension, long seed) {
+        Random random = new Random(seed);
+        BitMatrix modules = new BitMatrix(dimension);
+        for (int y = 0; y < dimension; y++) {
+            for (int x = 0; x < dimension; x++) {
+                if (random.nextBoolean()) {
+                    modules.set(x, y);
+                }
+            }
+        }
+        return modules;
+    }
+
+    /*
+     * The data mask as ZXing removes it, then every round of the key mask.
+     */
+    static BitMatrix unmaskModuleByModule(BitMatrix bits, int dataMask, int[] keyArr) {
+        DataMask mask = DataMask.values()[dataMask];
+        int dimension = bits.getHeight();
+        for (int i = 0; i < dimension; i++) {
+            for (int j = 0; j < dimension; j++) {
+                if (mask.isMasked(i, j)) {
+                    bits.flip(j, i);
+                }
+            }
+        }
+        int sum = bits.getWidth() + bits.getHeight();
+        for (int i = 0; i < dimension; i++) {
+            for (int j = 0; j < dimension; j++) {
+                int noOfRounds = 1;
+                if (sum <= 42) {
+                    noOfRounds = 5;
+                } else if (sum <= 82) {
+                    noOfRounds = 3;
+                } else if (sum <= 122) {
+                    noOfRounds = 2;
+                }
+                for (int count = 0; count < noOfRounds; count++) {
+                    if (keyArr[i + j + count * sum] == 1) {
+                        bits.flip(i, j);
+                    }
+                }
+            }
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link LuminanceConverter} and its kernels give exactly the luminance ZXing gives.
+ *
+ * Run on the compiled classes, {@link LumaKernel} is the Java 11 one. The vector profile runs the
+ * test again on the multi-release jar, with the incubating Vector API added, to check the SIMD
+ * kernels as well.
+ */
+class LuminanceConverterTest {
+
+    private static final int[] IMAGE_TYPES = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR};
+
+    /* Widths which leave pixels over after whole vectors of any length */
+    private static final int[] WIDTHS = {1, 7, 67, 640};
+
+    static Stream<Arguments> imageTypesAndWidths() {
+        return IntStream.of(IMAGE_TYPES).boxed()
+                .flatMap(imageType -> IntStream.of(WIDTHS).mapToObj(width -> Arguments.of(imageType, width)));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "qrreader.test.vectorized", matches = "true")
+    void kernelsAreVectorized() {
+        assertTrue(LumaKernel.isVectorized());
+    }
+
+    @ParameterizedTest(name = "image type {0}, width {1}")
+    @MethodSource("imageTypesAndWidths")
+    void convertsLikeZxing(int imageType, int width) {
+        BufferedImage image = randomImage(imageType, width, 9);
+        byte[] expected = new BufferedImageLuminanceSource(image).getMatrix();
+
+        assertArrayEquals(expected, new BufferedImageLuminanceSource(LuminanceConverter.toGray(image)).getMatrix());
+        assertArrayEquals(expected, kernel(image, false));
+        assertArrayEquals(expected, kernel(image, true));
+    }
+
+    @ParameterizedTest(name = "image type {0}, width {1}")
+    @MethodSource("imageTypesAndWidths")
+    void convertsSubImagesLikeZxing(int imageType, int width) {
+        BufferedImage image = randomImage(imageType, width + 3, 12).getSubimage(2, 1, width, 9);
+        byte[] expected = new BufferedImageLuminanceSource(image).getMatrix();
+
+        assertArrayEquals(expected, new BufferedImageLuminanceSource(LuminanceConverter.toGray(image)).getMatrix());
+    }
+
+    private static BufferedImage randomImage(int imageType, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        Random random = new Random(width * 31L + imageType);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // Some fully transparent pixels, which read as white
+                int pixel = random.nextInt();
+                image.setRGB(x, y, random.nextInt(8) == 0 ? pixel & 0x00FFFFFF : pixel);
+            }
+        }
+        return image;
+    }
+
+    /*
+     * Converts all pixels of the image in one call to the scalar kernel, or to the kernel the JVM runs.
+     */
+    private static byte[] kernel(BufferedImage image, boolean scalar) {
+        int count = image.getWidth() * image.getHeight();
+        byte[] luma = new byte[count];
+        if (image.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            int[] packed = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            boolean alpha = image.getType() == BufferedImage.TYPE_INT_ARGB;
+            if (scalar) {
+                LuminanceConverter.packedToLumaScalar(packed, 0, luma, 0, count, alpha);
+            } else {
+                LumaKernel.packedToLuma(packed, 0, luma, 0, count, alpha);
+            }
+        } else {
+            byte[] interleaved = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            int pixelStride = interleaved.length / count;
+            if (scalar) {
+                LuminanceConverter.interleavedToLumaScalar(interleaved, 0, pixelStride, luma, 0, count);
+            } else {
+                LumaKernel.interleavedToLuma(interleaved, 0, pixelStride, luma, 0, count);
+            }
+        }
+        return luma;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that {@link ParallelHybridBinarizer}, binarizing every image it can in parallel bands,
+ * gives exactly the black matrix of the ZXing {@link HybridBinarizer}, on random images with both
+ * flat and contrasted blocks.
+ */
+class ParallelHybridBinarizerTest {
+
+    /* More threads than the bands of the smaller images, so that bands run side by side */
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterAll
+    static void shutDown() {
+        POOL.shutdown();
+    }
+
+    static Stream<Arguments> sizes() {
+        return Stream.of(
+                // Below 40 pixels in either direction, left to the hybrid binarizer
+                Arguments.of(39, 39),
+                Arguments.of(39, 300),
+                Arguments.of(300, 17),
+                // The smallest image binarized in bands, and a single band with a partial last row
+                Arguments.of(40, 40),
+                Arguments.of(45, 43),
+                // Multiples of 8, split into bands
+                Arguments.of(256, 264),
+                Arguments.of(64, 1024),
+                // Neither width nor height a multiple of 8: the last block row, moved up to the
+                // bottom of the image, overlaps the row above it within the last band
+                Arguments.of(301, 269),
+                Arguments.of(123, 517),
+                Arguments.of(517, 1031),
+                Arguments.of(47, 2049));
+    }
+
+    @ParameterizedTest(name = "{0}x{1}")
+    @MethodSource("sizes")
+    void givesTheBlackMatrixOfTheHybridBinarizer(int width, int height) throws NotFoundException {
+        Random random = new Random(width * 31L + height);
+        for (int image = 0; image < 3; image++) {
+            LuminanceSource source = randomImage(width, height, random);
+
+            BitMatrix expected = new HybridBinarizer(source).getBlackMatrix();
+            BitMatrix actual = new ParallelHybridBinarizer(source, POOL, 1).getBlackMatrix();
+            assertEquals(expected, actual, "Image " + image);
+        }
+    }
+
+    /*
+     * Rectangles of random size and luminance, each either flat, with less noise than the hybrid
+     * binarizer takes for contrast, or noisy over the whole range, drawn over one another.
+     */
+    private static LuminanceSource randomImage(int width, int height, Random random) {
+        byte[] pixels = new byte[width * height];
+        int rectangles = 4 + width * height / 400;
+        for (int r = 0; r < rectangles; r++) {
+            int left = random.nextInt(width);
+            int top = random.nextInt(height);
+            int right = Math.min(width, left + 1 + random.nextInt(60));
+            int bottom = Math.min(height, top + 1 + random.nextInt(60));
+            int noise = random.nextBoolean() ? 1 + random.nextInt(16) : 256;
+            int base = random.nextInt(257 - noise);
+            for (int y = top; y < bottom; y++) {
+                for (int x = left; x < right; x++) {
+                    pixels[y * width + x] = (byte) (base + random.nextInt(noise));
+                }
+            }
+        }
+        return new PlanarYUVLuminanceSource(pixels, width, height, 0, 0, width, height, false);
+    }
+}
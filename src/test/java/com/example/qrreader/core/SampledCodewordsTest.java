@@ -0,0 +1,91 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Map;
+import java.util.Random;
+
+import static com.example.qrreader.core.KeyMaskTest.KEY_ARR;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that reading the codewords straight off the modules with {@link SampledCodewords} gives
+ * the codewords {@link BitMatrixParser} reads off the matrix after the masks were removed module
+ * by module, for every version and data mask.
+ */
+class SampledCodewordsTest {
+
+    @ParameterizedTest(name = "version {0}, data mask {1}")
+    @MethodSource("com.example.qrreader.core.KeyMaskTest#versionsAndMasks")
+    void readsTheCodewordsOfTheUnmaskedMatrix(int versionNumber, int dataMask) throws Exception {
+        Version version = Version.getVersionForNumber(versionNumber);
+        BitMatrix modules = noisyModules(version, dataMask);
+
+        if (versionNumber > KeyMask.maxVersion(KEY_ARR.length)) {
+            assertThrows(FormatException.class, () -> SampledCodewords.read(CodeModules.of(modules), KEY_ARR));
+            return;
+        }
+        byte[] expected = readUnmaskedModuleByModule(modules.clone());
+        assertArrayEquals(expected, SampledCodewords.read(CodeModules.of(modules), KEY_ARR).getCodewords());
+        // A mirrored code read mirrored again
+        assertArrayEquals(expected,
+                SampledCodewords.read(CodeModules.of(transpose(modules)).transposed(), KEY_ARR).getCodewords());
+    }
+
+    private static byte[] readUnmaskedModuleByModule(BitMatrix bits) throws FormatException {
+        BitMatrixParser parser = new BitMatrixParser(bits);
+        FormatInformation formatInfo = parser.readFormatInformation();
+        // The key mask flips the version information too, so the parser reads it first
+        parser.readVersion();
+        KeyMaskTest.unmaskModuleByModule(bits, formatInfo.getDataMask(), KEY_ARR);
+        return parser.readUnmaskedCodewords();
+    }
+
+    /*
+     * A code of the version and data mask, whose data modules are then flipped at random. Which
+     * codewords it holds does not matter, only that its format and version information are valid.
+     */
+    private static BitMatrix noisyModules(Version version, int dataMask) throws WriterException {
+        ByteMatrix matrix = Encoder.encode("SAMPLED CODEWORDS", ErrorCorrectionLevel.M,
+                Map.of(EncodeHintType.QR_VERSION, version.getVersionNumber(),
+                        EncodeHintType.QR_MASK_PATTERN, dataMask)).getMatrix();
+        BitMatrix functionPattern = version.buildFunctionPattern();
+        Random random = new Random(version.getVersionNumber() * 8L + dataMask);
+        int dimension = matrix.getWidth();
+        BitMatrix modules = new BitMatrix(dimension);
+        for (int y = 0; y < dimension; y++) {
+            for (int x = 0; x < dimension; x++) {
+                boolean dark = matrix.get(x, y) == 1;
+                if (!functionPattern.get(x, y) && random.nextInt(4) == 0) {
+                    dark = !dark;
+                }
+                if (dark) {
+                    modules.set(x, y);
+                }
+            }
+        }
+        return modules;
+    }
+
+    private static BitMatrix transpose(BitMatrix modules) {
+        int dimension = modules.getWidth();
+        BitMatrix transposed = new BitMatrix(dimension);
+        for (int y = 0; y < dimension; y++) {
+            for (int x = 0; x < dimension; x++) {
+                if (modules.get(x, y)) {
+                    transposed.set(y, x);
+                }
+            }
+        }
+        return transposed;
+    }
+}
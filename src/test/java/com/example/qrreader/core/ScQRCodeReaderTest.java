@@ -0,0 +1,82 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static com.example.qrreader.core.KeyMaskTest.KEY_ARR;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a code whose sampled modules cannot be corrected is read again off the luminance,
+ * and decoded with its least clearly read codewords erased, when the luminance is given.
+ */
+class ScQRCodeReaderTest {
+
+    private static final String PAYLOAD = "ERASURE RETRY ON THE DEFAULT PATH 0123456789";
+
+    private static final int VERSION = 4;
+
+    private static final int SCALE = 6;
+
+    private static final int QUIET_ZONE = 4;
+
+    @Test
+    void decodesSmudgedCodesWithErasures() throws Exception {
+        BitMatrix modules = new ScQRCodeWriter(KEY_ARR).encodeModules(PAYLOAD, ErrorCorrectionLevel.H,
+                Map.of(EncodeHintType.QR_VERSION, VERSION));
+        int onlyWithErasures = 0;
+        for (int seed = 0; seed < 50; seed++) {
+            LuminanceSource luminance = smudged(modules, 0.06, new Random(seed));
+            DecodeOutcome<ScQRResult> sampled = new ScQRCodeReader().tryDecode(
+                    DecodeStrategy.HYBRID.toBitmap(luminance), null, KEY_ARR, Set.of(), Long.MAX_VALUE);
+            DecodeOutcome<ScQRResult> reread = new ScQRCodeReader().tryDecode(
+                    DecodeStrategy.HYBRID.toBitmap(luminance), luminance, null, KEY_ARR, Set.of(), Long.MAX_VALUE);
+
+            if (sampled.isSuccess()) {
+                assertTrue(reread.isSuccess(), "Seed " + seed + " no longer decodes with the luminance given");
+            } else if (reread.isSuccess()) {
+                assertEquals(DecodeOutcome.Status.CHECKSUM, sampled.getStatus());
+                onlyWithErasures++;
+            }
+            if (reread.isSuccess()) {
+                assertEquals(PAYLOAD, reread.getResult().getText());
+            }
+        }
+        assertTrue(onlyWithErasures > 0, "No code needed its modules read again");
+    }
+
+    /*
+     * The code rendered upright, with a fraction of its data modules a grey close to the threshold
+     * they are binarized with, so that they read either way.
+     */
+    private static LuminanceSource smudged(BitMatrix modules, double fraction, Random random) {
+        BitMatrix functionPattern = Version.getVersionForNumber(VERSION).buildFunctionPattern();
+        int dimension = modules.getWidth();
+        int size = (dimension + 2 * QUIET_ZONE) * SCALE;
+        byte[] pixels = new byte[size * size];
+        Arrays.fill(pixels, (byte) 215);
+        for (int y = 0; y < dimension; y++) {
+            for (int x = 0; x < dimension; x++) {
+                int value = modules.get(x, y) ? 40 : 215;
+                if (!functionPattern.get(x, y) && random.nextDouble() < fraction) {
+                    value = 122 + random.nextInt(13);
+                }
+                for (int dy = 0; dy < SCALE; dy++) {
+                    int offset = ((y + QUIET_ZONE) * SCALE + dy) * size + (x + QUIET_ZONE) * SCALE;
+                    Arrays.fill(pixels, offset, offset + SCALE, (byte) value);
+                }
+            }
+        }
+        return new PlanarYUVLuminanceSource(pixels, size, size, 0, 0, size, size, false);
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.ChecksumException;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.DecoderResult;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static com.example.qrreader.core.KeyMaskTest.KEY_ARR;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that what a {@link SegmentCursor} reads, by prefix, by segment or as raw bytes, is what
+ * {@link ScQRDecoder#decode(BitMatrix, Map, int[])} decodes, for segments of every mode and codes
+ * of one or many error correction blocks, and that blocks the cursor never reads are never
+ * corrected.
+ */
+class SegmentCursorTest {
+
+    private static final int[] PREFIX_LENGTHS = {0, 1, 2, 3, 4, 5, 7, 8, 13, 40};
+
+    /* A payload of each mode, repeated to fill codes of one block up to codes of many */
+    static Stream<Arguments> payloads() {
+        return Stream.of(
+                payload("numeric", "31415926535897932384626433832795028841971", Map.of()),
+                payload("alphanumeric", "HELLO WORLD $%*+-./: 0123456789", Map.of()),
+                payload("Latin-1 bytes", "Grüße aus Köln, café crème & ½ ¿", Map.of()),
+                payload("UTF-8 bytes with ECI", "日本語のテキスト ünïcödé 😀 ok", Map.of()),
+                payload("Kanji", "漢字点茗テスト", Map.of(EncodeHintType.CHARACTER_SET, "Shift_JIS")),
+                payload("mixed modes", "HTTPS://EXAMPLE.COM/0123456789012345?q=café&x=日本",
+                        Map.of(EncodeHintType.QR_COMPACT, true)),
+                payload("FNC1", "0104912345123459%%15970331%3020", Map.of(EncodeHintType.GS1_FORMAT, true)))
+                .flatMap(payload -> payload);
+    }
+
+    @ParameterizedTest(name = "{0}, level {2}")
+    @MethodSource("payloads")
+    void readsWhatDecodeDecodes(String name, String contents, ErrorCorrectionLevel ecLevel,
+                                Map<EncodeHintType, ?> hints) throws Exception {
+        BitMatrix modules = new ScQRCodeWriter(KEY_ARR).encodeModules(contents, ecLevel, hints);
+        ScQRDecoder decoder = new ScQRDecoder();
+        // The decoder unmasks the modules in place, so each read gets a copy
+        DecoderResult expected = decoder.decode(modules.clone(), null, KEY_ARR);
+        String text = expected.getText();
+
+        for (int length : PREFIX_LENGTHS) {
+            assertEquals(text.substring(0, Math.min(length, text.length())),
+                    cursor(decoder, modules).readPrefix(length), "Prefix of " + length);
+        }
+        assertEquals(text, cursor(decoder, modules).readPrefix(text.length() + 1));
+
+        // Short reads one after the other, across segment boundaries
+        SegmentCursor cursor = cursor(decoder, modules);
+        StringBuilder read = new StringBuilder();
+        for (int step = 1; read.length() < text.length(); step = step % 7 + 1) {
+            read.append(cursor.readPrefix(step));
+        }
+        assertEquals(text, read.toString());
+        assertEquals("", cursor.readPrefix(1));
+
+        cursor = cursor(decoder, modules);
+        read.setLength(0);
+        while (cursor.nextSegment()) {
+            read.append(cursor.readText(Integer.MAX_VALUE));
+        }
+        assertEquals(text, read.toString());
+        assertEquals(null, cursor.getMode());
+
+        assertArrayEquals(byteSegments(expected), bytes(cursor(decoder, modules).readByteSegments()));
+        assertArrayEquals(byteSegments(expected), bytes(decoder.decodeBinary(modules.clone(), null, KEY_ARR)));
+    }
+
+    @Test
+    void leavesACorruptedTrailingBlockUnnoticedUntilItIsRead() throws Exception {
+        // Version 5-Q holds 87 alphanumeric characters in four blocks, the last of them data too
+        StringBuilder contents = new StringBuilder();
+        Random random = new Random(5);
+        while (contents.length() < 87) {
+            contents.append((char) ('A' + random.nextInt(26)));
+        }
+        BitMatrix modules = new ScQRCodeWriter(KEY_ARR).encodeModules(contents.toString(), ErrorCorrectionLevel.Q,
+                Map.of(EncodeHintType.QR_VERSION, 5));
+        SampledCodewords read = SampledCodewords.read(CodeModules.of(modules), KEY_ARR);
+        DataBlock[] dataBlocks = DataBlock.getDataBlocks(read.getCodewords(), read.getVersion(),
+                read.getErrorCorrectionLevel());
+        assertEquals(4, dataBlocks.length);
+        byte[] trailing = dataBlocks[dataBlocks.length - 1].getCodewords();
+        for (int i = 0; i < trailing.length; i++) {
+            trailing[i] ^= 1 + random.nextInt(255);
+        }
+
+        SegmentCursor cursor = new SegmentCursor(new ScQRDecoder(), dataBlocks, read.getVersion(), null);
+        assertEquals(contents.substring(0, 20), cursor.readPrefix(20));
+        assertThrows(ChecksumException.class, () -> cursor.readPrefix(Integer.MAX_VALUE));
+    }
+
+    private static Stream<Arguments> payload(String name, String contents, Map<EncodeHintType, ?> hints) {
+        return Stream.of(1, 6, 30)
+                .flatMap(repeats -> Stream.of(ErrorCorrectionLevel.values())
+                        .filter(ecLevel -> fits(contents.repeat(repeats), ecLevel, hints))
+                        .map(ecLevel -> Arguments.of(name + " x" + repeats, contents.repeat(repeats), ecLevel, hints)));
+    }
+
+    /* Whether the contents fit a version the key can mask */
+    private static boolean fits(String contents, ErrorCorrectionLevel ecLevel, Map<EncodeHintType, ?> hints) {
+        try {
+            new ScQRCodeWriter(KEY_ARR).encodeModules(contents, ecLevel, hints);
+            return true;
+        } catch (WriterException e) {
+            return false;
+        }
+    }
+
+    private static SegmentCursor cursor(ScQRDecoder decoder, BitMatrix modules) throws Exception {
+        return decoder.decodeLazily(modules.clone(), null, KEY_ARR);
+    }
+
+    private static byte[] byteSegments(DecoderResult result) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (result.getByteSegments() != null) {
+            for (byte[] segment : result.getByteSegments()) {
+                bytes.writeBytes(segment);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
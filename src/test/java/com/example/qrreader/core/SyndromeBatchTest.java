@@ -0,0 +1,117 @@
+package com.example.qrreader.core;
+
+import com.google.zxing.common.reedsolomon.GenericGF;
+import com.google.zxing.common.reedsolomon.ReedSolomonDecoder;
+import com.google.zxing.common.reedsolomon.ReedSolomonEncoder;
+import com.google.zxing.common.reedsolomon.ReedSolomonException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link SyndromeBatch} finds exactly the blocks which the ZXing Reed-Solomon decoder,
+ * run on one block at a time, corrects or fails to correct, for the block geometry of every
+ * version and error correction level.
+ */
+class SyndromeBatchTest {
+
+    /* Intact blocks, blocks with one error, as many errors as can be corrected, and more */
+    private static final int DAMAGES = 4;
+
+    static Stream<Arguments> versionsAndLevels() {
+        return IntStream.rangeClosed(1, 40).boxed()
+                .flatMap(version -> Stream.of(ErrorCorrectionLevel.values())
+                        .map(ecLevel -> Arguments.of(version, ecLevel)));
+    }
+
+    @ParameterizedTest(name = "version {0}, level {1}")
+    @MethodSource("versionsAndLevels")
+    void findsTheBlocksTheDecoderCorrects(int versionNumber, ErrorCorrectionLevel ecLevel) {
+        Version.ECBlocks ecBlocks = Version.getVersionForNumber(versionNumber).getECBlocksForLevel(ecLevel);
+        int ecCodewords = ecBlocks.getECCodewordsPerBlock();
+        Random random = new Random(versionNumber * 4L + ecLevel.ordinal());
+        for (Version.ECB ecb : ecBlocks.getECBlocks()) {
+            byte[][] blocks = new byte[ecb.getCount() * DAMAGES][];
+            for (int b = 0; b < blocks.length; b++) {
+                blocks[b] = damage(encode(ecb.getDataCodewords(), ecCodewords, random), b % DAMAGES, ecCodewords, random);
+            }
+
+            boolean[] expected = new boolean[blocks.length];
+            for (int b = 0; b < blocks.length; b++) {
+                expected[b] = correctedByDecoder(blocks[b], ecCodewords);
+            }
+            boolean[] damaged = SyndromeBatch.findDamaged(blocks, ecCodewords);
+            assertArrayEquals(expected, damaged);
+            for (int b = 0; b < blocks.length; b++) {
+                if (b % DAMAGES != 0) {
+                    assertTrue(damaged[b], "A damaged block was taken for intact");
+                }
+            }
+        }
+    }
+
+    private static byte[] encode(int dataCodewords, int ecCodewords, Random random) {
+        int[] block = new int[dataCodewords + ecCodewords];
+        for (int i = 0; i < dataCodewords; i++) {
+            block[i] = random.nextInt(256);
+        }
+        new ReedSolomonEncoder(GenericGF.QR_CODE_FIELD_256).encode(block, ecCodewords);
+        byte[] bytes = new byte[block.length];
+        for (int i = 0; i < block.length; i++) {
+            bytes[i] = (byte) block[i];
+        }
+        return bytes;
+    }
+
+    /*
+     * Changes distinct codewords of the block: none, one, as many as can be corrected, or more.
+     */
+    private static byte[] damage(byte[] block, int damage, int ecCodewords, Random random) {
+        int errors;
+        switch (damage) {
+            case 0:
+                errors = 0;
+                break;
+            case 1:
+                errors = 1;
+                break;
+            case 2:
+                errors = ecCodewords / 2;
+                break;
+            default:
+                errors = Math.min(block.length, ecCodewords / 2 + 1 + random.nextInt(ecCodewords / 2));
+        }
+        int[] positions = IntStream.range(0, block.length).toArray();
+        for (int i = 0; i < errors; i++) {
+            int j = i + random.nextInt(positions.length - i);
+            int position = positions[j];
+            positions[j] = positions[i];
+            block[position] ^= 1 + random.nextInt(255);
+        }
+        return block;
+    }
+
+    /* Whether the ZXing decoder changes the block, or finds it cannot be corrected */
+    private static boolean correctedByDecoder(byte[] block, int ecCodewords) {
+        int[] received = new int[block.length];
+        for (int i = 0; i < block.length; i++) {
+            received[i] = block[i] & 0xFF;
+        }
+        int[] corrected = received.clone();
+        try {
+            new ReedSolomonDecoder(GenericGF.QR_CODE_FIELD_256).decode(corrected, ecCodewords);
+        } catch (ReedSolomonException e) {
+            return true;
+        }
+        return !Arrays.equals(received, corrected);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.qrreader.service;
+
+import com.example.qrreader.core.DecodeStrategy;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the order {@link StrategyStatistics} gives always starts with the best-ranked
+ * strategy, so that a scan capped at any number of attempts tries it, while exploration still
+ * gets every other strategy tried.
+ */
+class StrategyStatisticsTest {
+
+    private static final List<DecodeStrategy> CONFIGURED = Arrays.asList(DecodeStrategy.values());
+
+    @Test
+    void exploresWithoutPushingTheBestStrategyOutOfTheFirstPlace() {
+        StrategyStatistics statistics = statistics(1.0);
+        // GLOBAL_HISTOGRAM decodes cheaply, HYBRID is expensive and every other strategy fails
+        for (int i = 0; i < 100; i++) {
+            statistics.record(null, DecodeStrategy.GLOBAL_HISTOGRAM, true, 1_000_000);
+            statistics.record(null, DecodeStrategy.HYBRID, true, 5_000_000);
+            statistics.record(null, DecodeStrategy.INVERTED, false, 1_000_000);
+            statistics.record(null, DecodeStrategy.ROTATED_90, false, 1_000_000);
+        }
+
+        Set<DecodeStrategy> explored = EnumSet.noneOf(DecodeStrategy.class);
+        for (int i = 0; i < 1000; i++) {
+            List<DecodeStrategy> order = statistics.order(null, CONFIGURED);
+            assertEquals(DecodeStrategy.GLOBAL_HISTOGRAM, order.get(0));
+            assertEquals(EnumSet.allOf(DecodeStrategy.class), EnumSet.copyOf(order));
+            explored.add(order.get(1));
+        }
+        assertEquals(EnumSet.complementOf(EnumSet.of(DecodeStrategy.GLOBAL_HISTOGRAM)), explored);
+    }
+
+    @Test
+    void untriedStrategiesDoNotOutrankOneWhichDecodes() {
+        StrategyStatistics statistics = statistics(0);
+        assertEquals(CONFIGURED, statistics.order(null, CONFIGURED));
+
+        statistics.record(null, DecodeStrategy.HYBRID, true, 2_000_000);
+        assertEquals(DecodeStrategy.HYBRID, statistics.order(null, CONFIGURED).get(0));
+
+        statistics.reset(null);
+        assertEquals(CONFIGURED, statistics.order(null, CONFIGURED));
+    }
+
+    @Test
+    void untriedStrategiesOutrankOneWhichKeepsFailing() {
+        StrategyStatistics statistics = statistics(0);
+        for (int i = 0; i < 100; i++) {
+            statistics.record(null, DecodeStrategy.HYBRID, false, 2_000_000);
+        }
+
+        assertEquals(DecodeStrategy.HYBRID, statistics.order(null, CONFIGURED).get(CONFIGURED.size() - 1));
+    }
+
+    private static StrategyStatistics statistics(double exploration) {
+        StrategyStatistics statistics = new StrategyStatistics();
+        ReflectionTestUtils.setField(statistics, "environment",
+                new MockEnvironment().withProperty("qrreader.strategy.exploration", String.valueOf(exploration)));
+        statistics.init();
+        return statistics;
+    }
+}